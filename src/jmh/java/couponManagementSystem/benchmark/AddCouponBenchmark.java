@@ -0,0 +1,71 @@
+package couponManagementSystem.benchmark;
+
+import java.sql.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import couponManagementSystem.beans.CategoryType;
+import couponManagementSystem.beans.Company;
+import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.db.CompanyRepository;
+
+/**
+ * CompanyFacade.addCoupon - the title lookup on the (company_id, title) index, the insert and the catalog cache
+ * invalidation. Every invocation adds a coupon with a new title, so the coupons table grows during the run.
+ */
+
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AddCouponBenchmark {
+
+	private static final AtomicInteger PUBLISHERS = new AtomicInteger();
+
+	/**
+	 * A seeded company per benchmark thread, adding coupons titled after the thread and a counter.
+	 */
+	@State(Scope.Thread)
+	public static class Publisher {
+		Company company;
+		int publisher;
+		int count;
+		Date startDate;
+		Date endDate;
+
+		@Setup(Level.Trial)
+		public void create(CouponSystemState system) {
+			publisher = PUBLISHERS.incrementAndGet();
+			int companyId = system.companyIds.get(publisher % system.companyIds.size());
+			company = system.getBean(CompanyRepository.class).findById(companyId).orElseThrow();
+			long now = System.currentTimeMillis();
+			startDate = new Date(now);
+			endDate = new Date(now + TimeUnit.DAYS.toMillis(30));
+		}
+
+		Coupon nextCoupon() {
+			count++;
+			return new Coupon(company, CategoryType.values()[count % CategoryType.values().length],
+					"Added " + publisher + "-" + count, startDate, endDate, 100, "Added by the benchmark", 9.99,
+					"added.png");
+		}
+	}
+
+	@Benchmark
+	public Coupon addCoupon(CouponSystemState system, Publisher publisher) throws Exception {
+		return system.companyFacade.addCoupon(publisher.nextCoupon());
+	}
+}
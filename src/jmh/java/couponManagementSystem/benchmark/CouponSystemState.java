@@ -0,0 +1,137 @@
+package couponManagementSystem.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import couponManagementSystem.CouponManagementSystemApplication;
+import couponManagementSystem.DataGenerator;
+import couponManagementSystem.DataGenerator.GeneratedData;
+import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.db.CouponRepository;
+import couponManagementSystem.facades.CompanyFacade;
+import couponManagementSystem.facades.CustomerFacade;
+import couponManagementSystem.login.LoginManager;
+
+/**
+ * The application context shared by all threads of a benchmark: the application is started without a web server
+ * against an in-memory H2 database (MySQL mode), seeded by the DataGenerator with companies, coupons, customers and
+ * purchases. Coupons have enough stock to never sell out during a benchmark. The data volumes are JMH parameters and
+ * can be changed from the command line, e.g. -p couponsPerCompany=10000. -p profile=default,perf compares the settings
+ * of the perf profile, -p url=jdbc:mysql://... runs against an empty MySQL database with the credentials of
+ * application.properties. -p inventory=database,memory compares the inventory modes, the purchase log of the memory
+ * inventory is written to a temporary directory. -p sessionStore=memory,database,signed compares the session stores, the
+ * signed store with a fixed signing key.
+ * System.out is discarded while the benchmark runs, so that the application's console log doesn't flood the JMH output.
+ */
+
+@State(Scope.Benchmark)
+public class CouponSystemState {
+
+	public static final String PASSWORD = "benchmark";
+	private static final String H2_URL = "jdbc:h2:mem:benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1";
+	private static final String SIGNING_KEY = Base64.getEncoder()
+			.encodeToString("coupon-system-benchmark-key-0032".getBytes(StandardCharsets.US_ASCII));
+
+	@Param("10")
+	public int companies;
+	@Param("1000")
+	public int couponsPerCompany;
+	@Param("1000")
+	public int customers;
+	@Param("20")
+	public int purchasesPerCustomer;
+	@Param("310000")
+	public int hashIterations;
+	@Param("default")
+	public String profile;
+	@Param(H2_URL)
+	public String url;
+	@Param("database")
+	public String inventory;
+	@Param("memory")
+	public String sessionStore;
+
+	public ConfigurableApplicationContext ctx;
+	public TransactionTemplate transactionTemplate;
+	public CompanyFacade companyFacade;
+	public CustomerFacade customerFacade;
+	public CouponRepository coupRepo;
+	public LoginManager loginManager;
+	public List<Integer> companyIds;
+	public List<Integer> customerIds;
+	public List<String> customerEmails = new ArrayList<String>();
+	public List<Coupon> coupons;
+
+	private PrintStream out;
+
+	@Setup(Level.Trial)
+	public void start() throws IOException {
+		out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+		// command line arguments, to override the MySQL settings of application.properties
+		List<String> args = new ArrayList<String>(Arrays.asList("--spring.profiles.active=" + profile,
+				"--spring.datasource.url=" + url, "--spring.jpa.hibernate.ddl-auto=create", "--logging.level.root=WARN",
+				"--coupon.expiration.initial-delay=" + TimeUnit.DAYS.toMillis(1),
+				"--password.hash.iterations=" + hashIterations, "--seed.password=" + PASSWORD,
+				"--inventory.mode=" + inventory, "--session.store=" + sessionStore,
+				"--session.signing-key=" + SIGNING_KEY));
+		if (inventory.equals("memory"))
+			args.add("--inventory.log.dir=" + Files.createTempDirectory("inventory-log"));
+		if (url.startsWith("jdbc:h2:"))
+			args.addAll(Arrays.asList("--spring.datasource.driver-class-name=org.h2.Driver",
+					"--spring.datasource.username=sa", "--spring.datasource.password="));
+		ctx = new SpringApplicationBuilder(CouponManagementSystemApplication.class)
+				.web(WebApplicationType.NONE)
+				.run(args.toArray(new String[0]));
+		transactionTemplate = new TransactionTemplate(ctx.getBean(PlatformTransactionManager.class));
+		companyFacade = ctx.getBean(CompanyFacade.class);
+		customerFacade = ctx.getBean(CustomerFacade.class);
+		coupRepo = ctx.getBean(CouponRepository.class);
+		loginManager = ctx.getBean(LoginManager.class);
+		seed();
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		ctx.close();
+		System.setOut(out);
+	}
+
+	private void seed() {
+		GeneratedData data = ctx.getBean(DataGenerator.class).generate(companies, customers,
+				companies * couponsPerCompany, purchasesPerCustomer, Integer.MAX_VALUE / 2);
+		companyIds = data.getCompanyIds();
+		customerIds = data.getCustomerIds();
+		for (int i = 0; i < customers; i++)
+			customerEmails.add(DataGenerator.customerEmail(i));
+		coupons = coupRepo.findAll();
+	}
+
+	public <T> T getBean(Class<T> type) {
+		return ctx.getBean(type);
+	}
+}
@@ -0,0 +1,157 @@
+package couponManagementSystem.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Hibernate;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import couponManagementSystem.beans.Company;
+import couponManagementSystem.beans.CompanyView;
+import couponManagementSystem.beans.Customer;
+import couponManagementSystem.beans.CustomerView;
+import couponManagementSystem.db.CompanyRepository;
+import couponManagementSystem.db.CustomerRepository;
+import couponManagementSystem.db.QueryCounter;
+import couponManagementSystem.facades.AdminFacade;
+
+/**
+ * Heap and SQL statements per request of the customer and company reads, with the coupons of the customers and
+ * companies loaded (the eager fetch of Customer.coupons and Company.coupons before they were made lazy) and with the
+ * lazy associations and the list projections of today. The statements of each request are counted by the QueryCounter
+ * and reported as the statements and repositoryCalls counters, run with -prof gc for the bytes allocated per request
+ * (gc.alloc.rate.norm). Each request is one operation, timed on its own.
+ * The volumes of the request, 100k customers holding 200 coupons each:
+ * -Djmh.args="EntityLoadingBenchmark -prof gc -p customers=100000 -p purchasesPerCustomer=200 -p companies=100
+ * -p couponsPerCompany=1000 -p hashIterations=1000 -jvmArgsAppend -Xmx12g"
+ */
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EntityLoadingBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Reads {
+		AdminFacade adminFacade;
+		CustomerRepository custRepo;
+		CompanyRepository compRepo;
+		int next;
+
+		@Setup(Level.Trial)
+		public void beans(CouponSystemState system) {
+			adminFacade = system.getBean(AdminFacade.class);
+			custRepo = system.getBean(CustomerRepository.class);
+			compRepo = system.getBean(CompanyRepository.class);
+		}
+
+		int nextCustomer(CouponSystemState system) {
+			next = (next + 1) % system.customerIds.size();
+			return system.customerIds.get(next);
+		}
+	}
+
+	/**
+	 * JMH adds up the counters of the measurement iterations, each count is divided by the number of measured
+	 * requests so that the sum is the average per request.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Statements {
+		public double statements;
+		public double repositoryCalls;
+		private double perRequest;
+
+		@Setup(Level.Trial)
+		public void requests(BenchmarkParams params) {
+			perRequest = 1.0 / (params.getMeasurement().getCount() * params.getMeasurement().getBatchSize());
+		}
+
+		@Setup(Level.Invocation)
+		public void start() {
+			QueryCounter.start();
+		}
+
+		@TearDown(Level.Invocation)
+		public void stop() {
+			int[] counts = QueryCounter.stop();
+			repositoryCalls += counts[0] * perRequest;
+			statements += counts[1] * perRequest;
+		}
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			repositoryCalls = 0;
+			statements = 0;
+		}
+	}
+
+	/**
+	 * /customers with the coupons of every customer loaded, one select of the coupons per customer.
+	 */
+	@Benchmark
+	public List<Customer> allCustomersWithCoupons(CouponSystemState system, Reads reads, Statements statements) {
+		return system.transactionTemplate.execute(status -> {
+			List<Customer> customers = reads.custRepo.findAll();
+			for (Customer customer : customers)
+				Hibernate.initialize(customer.getCoupons());
+			return customers;
+		});
+	}
+
+	@Benchmark
+	public List<CustomerView> allCustomers(Reads reads, Statements statements) {
+		return reads.adminFacade.getAllCustomers();
+	}
+
+	/**
+	 * /companies with the coupons of every company loaded.
+	 */
+	@Benchmark
+	public List<Company> allCompaniesWithCoupons(CouponSystemState system, Reads reads, Statements statements) {
+		return system.transactionTemplate.execute(status -> {
+			List<Company> companies = reads.compRepo.findAll();
+			for (Company company : companies)
+				Hibernate.initialize(company.getCoupons());
+			return companies;
+		});
+	}
+
+	@Benchmark
+	public List<CompanyView> allCompanies(Reads reads, Statements statements) {
+		return reads.adminFacade.getAllCompanies();
+	}
+
+	/**
+	 * A customer read by id (the login and customer details) with its purchase history.
+	 */
+	@Benchmark
+	public Customer customerWithCoupons(CouponSystemState system, Reads reads, Statements statements) {
+		int customerId = reads.nextCustomer(system);
+		return system.transactionTemplate.execute(status -> {
+			Customer customer = reads.custRepo.findById(customerId).get();
+			Hibernate.initialize(customer.getCoupons());
+			return customer;
+		});
+	}
+
+	@Benchmark
+	public Customer customer(CouponSystemState system, Reads reads, Statements statements) {
+		return system.customerFacade.getCustomerById(reads.nextCustomer(system));
+	}
+}
@@ -0,0 +1,132 @@
+package couponManagementSystem.benchmark;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import couponManagementSystem.CouponManagementSystemApplication;
+import couponManagementSystem.DataGenerator;
+import couponManagementSystem.web.VirtualThreadConfig;
+
+/**
+ * Compares the request execution modes, concurrency limits and session stores under the same load. For each run the application is
+ * started in this JVM on a random port against its own in-memory H2 database, seeded by the DataGenerator, and the
+ * LoadDriver runs against it; the throughput and tail latencies of the served requests and the rejected (503) requests
+ * of the runs are printed side by side. The load driver shares the CPUs with the server, so compare the runs with each other rather than with
+ * production numbers, or run the LoadDriver against separately started servers.
+ *
+ * Run with the benchmark profile, options are key=value arguments:
+ * mvn -P benchmark compile exec:java@execution-modes -Dexec.args="users=400 duration=30 sessions=memory,database,signed"
+ * <ul>
+ * <li>runs - comma separated request.execution-mode[:request.concurrency.limit] runs, a missing limit is 0
+ * (platform,platform:40,virtual,virtual:100000). Virtual runs are skipped before Java 21.</li>
+ * <li>sessions - comma separated session.store values, every run is repeated with each of them (memory). The signed
+ * store uses a fixed session.signing-key, so all its runs verify the tokens with the same key.</li>
+ * <li>pool - maximum connection pool size, spring.datasource.hikari.maximum-pool-size (10).</li>
+ * <li>threads - server.tomcat.max-threads of the platform runs (200).</li>
+ * <li>companies, customers, coupons - generated data (20, 2000, 5000).</li>
+ * <li>out - a file to write the results to as JSON (none).</li>
+ * <li>users, warmup, duration, think, mix - options of the LoadDriver (400, 10, 30, 0, its default mix).</li>
+ * </ul>
+ */
+
+public class ExecutionModeComparison {
+
+	private static final String PASSWORD = "password";
+	private static final String SIGNING_KEY = Base64.getEncoder()
+			.encodeToString("execution-mode-comparison-key-32".getBytes(StandardCharsets.US_ASCII));
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("users", "400");
+		options.put("duration", "30");
+		options.put("customers", "2000");
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator < 0)
+				throw new IllegalArgumentException("Expected key=value arguments, got " + arg);
+			options.put(arg.substring(0, separator), arg.substring(separator + 1));
+		}
+		options.put("password", PASSWORD);
+		System.setProperty("http.maxConnections", options.get("users"));
+
+		List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+		int run = 0;
+		String[] sessions = options.getOrDefault("sessions", "memory").split(",");
+		for (String spec : options.getOrDefault("runs", "platform,platform:40,virtual,virtual:100000").split(",")) {
+			String[] parts = spec.trim().split(":");
+			String mode = parts[0];
+			int limit = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+			if (mode.equals("virtual") && VirtualThreadConfig.newVirtualThreadPerTaskExecutor() == null) {
+				System.out.println("Skipping " + spec + ", virtual threads need Java 21 or later");
+				continue;
+			}
+			for (String session : sessions) {
+				session = session.trim();
+				System.out.println();
+				System.out.println("=== " + mode + " threads, concurrency limit " + (limit > 0 ? limit : "0 (default)")
+						+ ", " + session + " sessions");
+				List<Map<String, Object>> rows = run(options, mode, limit, session, run++);
+				Map<String, Object> result = new LinkedHashMap<String, Object>();
+				result.put("mode", mode);
+				result.put("limit", limit);
+				result.put("session", session);
+				result.put("total", rows.get(rows.size() - 1));
+				result.put("endpoints", rows);
+				results.add(result);
+			}
+		}
+
+		System.out.println();
+		System.out.println(String.format("%-10s %7s %-9s %9s %9s %9s %9s %9s %9s", "mode", "limit", "session", "req/s",
+				"rejected", "5xx+err", "p50 ms", "p99 ms", "max ms"));
+		for (Map<String, Object> result : results) {
+			@SuppressWarnings("unchecked")
+			Map<String, Object> total = (Map<String, Object>) result.get("total");
+			System.out.println(String.format("%-10s %7d %-9s %9.1f %9d %9d %9.2f %9.2f %9.2f", result.get("mode"),
+					result.get("limit"), result.get("session"), total.get("throughput"), total.get("rejected"),
+					total.get("serverErrors"), total.get("p50"), total.get("p99"), total.get("max")));
+		}
+		String out = options.get("out");
+		if (out != null) {
+			new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(new File(out), results);
+			System.out.println("Results written to " + out);
+		}
+	}
+
+	private static List<Map<String, Object>> run(Map<String, String> options, String mode, int limit, String session,
+			int run) throws Exception {
+		// command line arguments, to override the MySQL settings of application.properties
+		ConfigurableApplicationContext ctx = new SpringApplicationBuilder(CouponManagementSystemApplication.class)
+				.run("--server.port=0", "--spring.datasource.url=jdbc:h2:mem:modes" + run + ";MODE=MySQL;DB_CLOSE_DELAY=-1",
+						"--spring.datasource.driver-class-name=org.h2.Driver", "--spring.datasource.username=sa",
+						"--spring.datasource.password=", "--spring.jpa.hibernate.ddl-auto=create",
+						"--spring.datasource.hikari.maximum-pool-size=" + options.getOrDefault("pool", "10"),
+						"--server.tomcat.max-threads=" + options.getOrDefault("threads", "200"),
+						"--logging.level.root=WARN", "--coupon.expiration.initial-delay=" + TimeUnit.DAYS.toMillis(1),
+						"--password.hash.iterations=1000", "--seed.password=" + PASSWORD,
+						"--request.execution-mode=" + mode, "--request.concurrency.limit=" + limit,
+						"--session.store=" + session, "--session.signing-key=" + SIGNING_KEY);
+		try {
+			ctx.getBean(DataGenerator.class).generate(Integer.parseInt(options.getOrDefault("companies", "20")),
+					Integer.parseInt(options.get("customers")), Integer.parseInt(options.getOrDefault("coupons", "5000")),
+					5, Integer.MAX_VALUE / 2);
+			Map<String, String> driverOptions = new HashMap<String, String>(options);
+			driverOptions.put("url", "http://localhost:" + ctx.getEnvironment().getProperty("local.server.port"));
+			return new LoadDriver(driverOptions).run(null);
+		} finally {
+			ctx.close();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package couponManagementSystem.benchmark;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import couponManagementSystem.beans.CategoryType;
+import couponManagementSystem.beans.Coupon;
+
+/**
+ * The category and price filters of the company and customer facades, each invocation with a random company or
+ * customer, category and price. Company coupons by category are served by the catalog cache once warmed up, the
+ * other filters query the database every time (repository* benchmarks query it without the facade).
+ */
+
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FilterBenchmark {
+
+	private static final CategoryType[] CATEGORIES = CategoryType.values();
+
+	@State(Scope.Thread)
+	public static class Picker {
+		final SplittableRandom random = new SplittableRandom(42);
+
+		int company(CouponSystemState system) {
+			return system.companyIds.get(random.nextInt(system.companyIds.size()));
+		}
+
+		int customer(CouponSystemState system) {
+			return system.customerIds.get(random.nextInt(system.customerIds.size()));
+		}
+
+		CategoryType category() {
+			return CATEGORIES[random.nextInt(CATEGORIES.length)];
+		}
+
+		double price() {
+			return 1 + random.nextInt(100);
+		}
+	}
+
+	@Benchmark
+	public List<Coupon> companyCouponsByCategory(CouponSystemState system, Picker picker) {
+		return system.companyFacade.getAllCompanyCouponsByCategory(picker.company(system), picker.category());
+	}
+
+	@Benchmark
+	public List<Coupon> companyCouponsByMaxPrice(CouponSystemState system, Picker picker) {
+		return system.companyFacade.getAllCompanyCouponsByMaxPrice(picker.company(system), picker.price());
+	}
+
+	@Benchmark
+	public List<Coupon> companyCouponsByFilter(CouponSystemState system, Picker picker) {
+		double maxPrice = picker.price();
+		return system.companyFacade.getCompanyCouponsByFilter(picker.company(system), picker.category(),
+				maxPrice / 2, maxPrice, null, null);
+	}
+
+	@Benchmark
+	public List<Coupon> repositoryCompanyCouponsByCategory(CouponSystemState system, Picker picker) {
+		return system.coupRepo.findByCompanyIdAndCategory(picker.company(system), picker.category());
+	}
+
+	@Benchmark
+	public Collection<Coupon> customerCouponsByCategory(CouponSystemState system, Picker picker) {
+		return system.customerFacade.getAllCustomerCouponsByCategory(picker.customer(system), picker.category());
+	}
+
+	@Benchmark
+	public Collection<Coupon> customerCouponsByMaxPrice(CouponSystemState system, Picker picker) {
+		return system.customerFacade.getAllCustomerCouponsByMaxPrice(picker.customer(system), picker.price());
+	}
+
+	@Benchmark
+	public List<Coupon> customerCouponsByFilter(CouponSystemState system, Picker picker) {
+		double maxPrice = picker.price();
+		return system.customerFacade.getCustomerCouponsByFilter(picker.customer(system), picker.category(),
+				maxPrice / 2, maxPrice, null, null);
+	}
+}
@@ -0,0 +1,73 @@
+package couponManagementSystem.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.exceptions.DoubleCouponPurchseException;
+
+/**
+ * CustomerFacade.purchaseCoupon of one coupon by all threads at once, a flash sale. Compare the inventory modes with
+ * -p inventory=database,memory,batch: the database inventory serializes the purchases on the coupon's row lock, the
+ * memory inventory takes them from a striped counter and writes them behind, the batch inventory commits them in
+ * groups. Each thread buys the coupon with its own share of the customers, then all move on to the next coupon, so
+ * -p customers sets how long a coupon stays hot.
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class HotCouponBenchmark {
+
+	private static final AtomicInteger BUYERS = new AtomicInteger();
+
+	@State(Scope.Thread)
+	public static class Buyer {
+		List<Integer> customerIds;
+		int next;
+		int coupon;
+
+		@Setup(Level.Trial)
+		public void share(CouponSystemState system, BenchmarkParams params) {
+			int buyer = BUYERS.getAndIncrement() % params.getThreads();
+			int share = system.customerIds.size() / params.getThreads();
+			customerIds = system.customerIds.subList(buyer * share, (buyer + 1) * share);
+		}
+
+		Coupon nextCoupon(CouponSystemState system) {
+			if (next == customerIds.size()) {
+				next = 0;
+				coupon = (coupon + 1) % system.coupons.size();
+			}
+			return system.coupons.get(coupon);
+		}
+	}
+
+	@Benchmark
+	public void purchaseHotCoupon(CouponSystemState system, Buyer buyer) throws Exception {
+		Coupon coupon = buyer.nextCoupon(system);
+		try {
+			system.customerFacade.purchaseCoupon(buyer.customerIds.get(buyer.next++), coupon);
+		} catch (DoubleCouponPurchseException e) {
+			// one of the purchases of the seed data
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package couponManagementSystem.benchmark;
+
+import java.sql.Date;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import couponManagementSystem.beans.CategoryType;
+import couponManagementSystem.beans.Company;
+import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.db.CompanyRepository;
+import couponManagementSystem.facades.CouponImporter;
+import couponManagementSystem.facades.ImportReport;
+import couponManagementSystem.facades.ImportRow;
+
+/**
+ * CouponImporter.importCoupons - a bulk import of couponsPerImport coupons in JDBC batch inserts, with their ids from
+ * the IdAllocator. Every invocation imports into a new company, so the title check starts from an empty company.
+ * Compare the settings of the perf profile with -p profile=default,perf (the MySQL driver settings need a MySQL url).
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ImportBenchmark {
+
+	private static final AtomicInteger IMPORTS = new AtomicInteger();
+
+	@State(Scope.Thread)
+	public static class Importer {
+		@Param("1000")
+		public int couponsPerImport;
+		int companyId;
+		int importNumber;
+
+		@Setup(Level.Invocation)
+		public void newCompany(CouponSystemState system) {
+			importNumber = IMPORTS.incrementAndGet();
+			companyId = system.getBean(CompanyRepository.class).save(new Company("Importer " + importNumber,
+					"importer" + importNumber + "@benchmark.example", CouponSystemState.PASSWORD)).getId();
+		}
+	}
+
+	@Benchmark
+	public ImportReport importCoupons(CouponSystemState system, Importer importer) {
+		return system.getBean(CouponImporter.class).importCoupons(importer.companyId,
+				rows(importer.importNumber, importer.couponsPerImport));
+	}
+
+	private static Iterator<ImportRow> rows(int importNumber, int count) {
+		long now = System.currentTimeMillis();
+		Date startDate = new Date(now);
+		Date endDate = new Date(now + TimeUnit.DAYS.toMillis(30));
+		return new Iterator<ImportRow>() {
+			private int row;
+
+			@Override
+			public boolean hasNext() {
+				return row < count;
+			}
+
+			@Override
+			public ImportRow next() {
+				row++;
+				return ImportRow.of(row, new Coupon(null, CategoryType.values()[row % CategoryType.values().length],
+						"Imported " + importNumber + "-" + row, startDate, endDate, 100, "Imported by the benchmark",
+						9.99, "imported.png"));
+			}
+		};
+	}
+}
@@ -0,0 +1,51 @@
+package couponManagementSystem.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import couponManagementSystem.beans.Coupon;
+
+/**
+ * JSON serialization of coupon lists with the application's ObjectMapper, as the controllers return them.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int listSize;
+
+	private ObjectMapper mapper;
+	private List<Coupon> coupons;
+
+	@Setup(Level.Trial)
+	public void select(CouponSystemState system) {
+		mapper = system.getBean(ObjectMapper.class);
+		coupons = system.coupons.subList(0, Math.min(listSize, system.coupons.size()));
+	}
+
+	@Benchmark
+	public byte[] serializeCoupons() throws Exception {
+		return mapper.writeValueAsBytes(coupons);
+	}
+}
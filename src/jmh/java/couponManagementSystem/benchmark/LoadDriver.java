@@ -0,0 +1,423 @@
+package couponManagementSystem.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import couponManagementSystem.DataGenerator;
+import couponManagementSystem.beans.CategoryType;
+import couponManagementSystem.web.ClientController;
+import couponManagementSystem.web.WebConfig;
+
+/**
+ * The LoadDriver runs a load test against a running application seeded by the DataGenerator (seed profile). Every
+ * virtual user is a thread that logs in as a generated customer and replays a weighted mix of browse (coupon pages),
+ * filter (customer coupons by category and by combined filter), purchase and customer coupons requests until the test
+ * ends. Throughput, latency percentiles and status counts are reported per endpoint, requests of the warm up period
+ * are not counted. Requests rejected by the server's concurrency limit or purchase admission (503, 429) are counted
+ * apart, the user waits for their Retry-After before the next request.
+ *
+ * Run with the benchmark profile, options are key=value arguments:
+ * mvn -P benchmark compile exec:java@load-test
+ * -Dexec.args="url=http://localhost:8080 users=100 duration=120 mix=browse=50,filter=30,purchase=15,coupons=5"
+ * <ul>
+ * <li>url - the application base url (http://localhost:8080).</li>
+ * <li>users - number of concurrent virtual users (50).</li>
+ * <li>customers - number of generated customers to log in as, seed.customers of the application (10000).</li>
+ * <li>password - seed.password of the application (password).</li>
+ * <li>warmup, duration - seconds of warm up and of measurement (10, 60).</li>
+ * <li>think - milliseconds each user waits between requests (0).</li>
+ * <li>mix - relative weights of the browse, filter, purchase and coupons actions (browse=40,filter=30,purchase=20,coupons=10).</li>
+ * <li>out - a file to write the results to as JSON, to compare builds (none).</li>
+ * </ul>
+ */
+
+public class LoadDriver {
+
+	private static final String[] ACTIONS = { "browse", "filter", "purchase", "coupons" };
+	private static final CategoryType[] CATEGORIES = CategoryType.values();
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final String url;
+	private final int users;
+	private final int customers;
+	private final String password;
+	private final long warmupMillis;
+	private final long durationMillis;
+	private final long thinkMillis;
+	private final int[] weights = new int[ACTIONS.length];
+	private int totalWeight;
+	private int[] couponIds;
+	private volatile long measureFrom;
+	private volatile long measureUntil;
+
+	LoadDriver(Map<String, String> options) {
+		url = options.getOrDefault("url", "http://localhost:8080");
+		users = Integer.parseInt(options.getOrDefault("users", "50"));
+		customers = Integer.parseInt(options.getOrDefault("customers", "10000"));
+		password = options.getOrDefault("password", "password");
+		warmupMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault("warmup", "10")));
+		durationMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault("duration", "60")));
+		thinkMillis = Long.parseLong(options.getOrDefault("think", "0"));
+		for (String weight : options.getOrDefault("mix", "browse=40,filter=30,purchase=20,coupons=10").split(",")) {
+			String[] pair = weight.split("=");
+			int action = Arrays.asList(ACTIONS).indexOf(pair[0].trim());
+			if (action < 0)
+				throw new IllegalArgumentException("Unknown action " + pair[0] + ", expected one of "
+						+ Arrays.toString(ACTIONS));
+			weights[action] = Integer.parseInt(pair[1].trim());
+			totalWeight += weights[action];
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator < 0)
+				throw new IllegalArgumentException("Expected key=value arguments, got " + arg);
+			options.put(arg.substring(0, separator), arg.substring(separator + 1));
+		}
+		// keep a pooled keep-alive connection per user
+		System.setProperty("http.maxConnections", options.getOrDefault("users", "50"));
+		new LoadDriver(options).run(options.get("out"));
+	}
+
+	/**
+	 * Runs the load test and prints the results.
+	 * @return the result rows of the endpoints, the last row is the total of all endpoints but login.
+	 */
+	List<Map<String, Object>> run(String out) throws Exception {
+		couponIds = loadCouponIds();
+		System.out.println("Loaded " + couponIds.length + " coupon ids, starting " + users + " users...");
+
+		ExecutorService executor = Executors.newFixedThreadPool(users);
+		Map<String, Recorder> total = new TreeMap<String, Recorder>();
+		try {
+			CountDownLatch loggedIn = new CountDownLatch(users);
+			List<Future<Map<String, Recorder>>> results = new ArrayList<Future<Map<String, Recorder>>>();
+			for (int i = 0; i < users; i++) {
+				VirtualUser user = new VirtualUser(i, loggedIn);
+				results.add(executor.submit(user::run));
+			}
+			loggedIn.await();
+			measureFrom = System.currentTimeMillis() + warmupMillis;
+			measureUntil = measureFrom + durationMillis;
+			System.out.println("All users logged in, warming up for " + warmupMillis / 1000 + " s, measuring for "
+					+ durationMillis / 1000 + " s");
+
+			for (Future<Map<String, Recorder>> result : results)
+				for (Map.Entry<String, Recorder> entry : result.get().entrySet())
+					total.computeIfAbsent(entry.getKey(), name -> new Recorder()).add(entry.getValue());
+		} finally {
+			executor.shutdownNow();
+		}
+		return report(total, out);
+	}
+
+	/**
+	 * Reads the ids of all coupons through the keyset pages, as a logged in customer.
+	 */
+	private int[] loadCouponIds() throws IOException, InterruptedException {
+		String token = login(0, new Recorder());
+		List<Integer> ids = new ArrayList<Integer>();
+		int after = 0;
+		while (true) {
+			Response response = get("/customer/allCouponsPage/" + token + "?size=" + ClientController.MAX_PAGE_SIZE
+					+ "&after=" + after);
+			if (response.status != 200)
+				throw new IOException("Cannot read the coupons, status " + response.status);
+			JsonNode page = MAPPER.readTree(response.body);
+			for (JsonNode coupon : page.get("content"))
+				ids.add(coupon.get("id").asInt());
+			if (!page.get("hasNext").asBoolean())
+				break;
+			after = page.get("nextCursor").asInt();
+		}
+		int[] result = new int[ids.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = ids.get(i);
+		return result;
+	}
+
+	private String login(int user, Recorder recorder) throws IOException, InterruptedException {
+		String email = DataGenerator.customerEmail(user % customers);
+		Response response;
+		do {
+			long start = System.nanoTime();
+			response = request("POST", "/login/" + email + "/" + password + "/Customer");
+			recorder.record(System.nanoTime() - start, response.status);
+			Thread.sleep(response.retryAfterMillis);
+		} while (response.status == 503);
+		if (response.status != 200)
+			throw new IOException("Login of " + email + " failed with status " + response.status + ": "
+					+ new String(response.body, StandardCharsets.UTF_8));
+		return new String(response.body, StandardCharsets.UTF_8);
+	}
+
+	private Response get(String path) throws IOException {
+		return request("GET", path);
+	}
+
+	private Response request(String method, String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url + path).openConnection();
+		connection.setRequestMethod(method);
+		connection.setConnectTimeout(10000);
+		connection.setReadTimeout(30000);
+		int status = connection.getResponseCode();
+		InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		if (in != null) {
+			// read to the end, so that the connection is reused
+			try (InputStream stream = in) {
+				byte[] buffer = new byte[8192];
+				for (int read; (read = stream.read(buffer)) > 0;)
+					body.write(buffer, 0, read);
+			}
+		}
+		return new Response(status, body.toByteArray(), connection.getHeaderField(WebConfig.RENEWED_TOKEN_HEADER),
+				connection.getHeaderField("Retry-After"));
+	}
+
+	private List<Map<String, Object>> report(Map<String, Recorder> total, String out) throws IOException {
+		double seconds = durationMillis / 1000.0;
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		System.out.println();
+		System.out.println(String.format("%-18s %9s %9s %7s %7s %7s %8s %9s %9s %9s %9s", "endpoint", "requests",
+				"req/s", "2xx", "4xx", "5xx+err", "rejected", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+		Recorder all = new Recorder();
+		for (Map.Entry<String, Recorder> entry : total.entrySet()) {
+			if (!entry.getKey().equals("login"))
+				all.add(entry.getValue());
+			rows.add(print(entry.getKey(), entry.getValue(), seconds));
+		}
+		rows.add(print("total", all, seconds));
+		if (out != null) {
+			Map<String, Object> result = new LinkedHashMap<String, Object>();
+			result.put("users", users);
+			result.put("durationSeconds", seconds);
+			result.put("endpoints", rows);
+			MAPPER.writerWithDefaultPrettyPrinter().writeValue(new File(out), result);
+			System.out.println("Results written to " + out);
+		}
+		return rows;
+	}
+
+	private static Map<String, Object> print(String name, Recorder recorder, double seconds) {
+		long[] latencies = recorder.sorted();
+		Map<String, Object> row = new LinkedHashMap<String, Object>();
+		row.put("endpoint", name);
+		row.put("requests", latencies.length);
+		row.put("throughput", latencies.length / seconds);
+		row.put("ok", recorder.ok);
+		row.put("clientErrors", recorder.clientErrors);
+		row.put("serverErrors", recorder.serverErrors + recorder.ioErrors);
+		row.put("rejected", recorder.rejected);
+		row.put("p50", percentile(latencies, 0.50));
+		row.put("p90", percentile(latencies, 0.90));
+		row.put("p99", percentile(latencies, 0.99));
+		row.put("max", percentile(latencies, 1));
+		System.out.println(String.format("%-18s %9d %9.1f %7d %7d %7d %8d %9.2f %9.2f %9.2f %9.2f", name,
+				latencies.length, latencies.length / seconds, recorder.ok, recorder.clientErrors,
+				recorder.serverErrors + recorder.ioErrors, recorder.rejected, row.get("p50"), row.get("p90"),
+				row.get("p99"), row.get("max")));
+		return row;
+	}
+
+	/**
+	 * @return the latency at the given percentile in milliseconds.
+	 */
+	private static double percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0)
+			return 0;
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1_000_000.0;
+	}
+
+	private class VirtualUser {
+
+		private final int user;
+		private final CountDownLatch loggedIn;
+		private final SplittableRandom random;
+		private final Map<String, Recorder> recorders = new HashMap<String, Recorder>();
+		private String token;
+
+		VirtualUser(int user, CountDownLatch loggedIn) {
+			this.user = user;
+			this.loggedIn = loggedIn;
+			this.random = new SplittableRandom(user);
+		}
+
+		Map<String, Recorder> run() throws Exception {
+			try {
+				token = login(user, recorder("login"));
+			} finally {
+				loggedIn.countDown();
+			}
+			while (measureUntil == 0)
+				Thread.sleep(1);
+			while (System.currentTimeMillis() < measureUntil) {
+				String endpoint;
+				String path;
+				switch (nextAction()) {
+				case "browse":
+					endpoint = "allCouponsPage";
+					path = "/customer/allCouponsPage/" + token + "?size=20&after=" + randomCoupon();
+					break;
+				case "filter":
+					if (random.nextBoolean()) {
+						endpoint = "couponsByCategory";
+						path = "/customer/couponsByCategory/" + CATEGORIES[random.nextInt(CATEGORIES.length)] + "/"
+								+ token;
+					} else {
+						endpoint = "couponsByFilter";
+						path = "/customer/couponsByFilter/" + token + "?category="
+								+ CATEGORIES[random.nextInt(CATEGORIES.length)] + "&maxPrice=" + (1 + random.nextInt(200));
+					}
+					break;
+				case "purchase":
+					endpoint = "purchase";
+					path = "/customer/purchase/" + randomCoupon() + "/" + token;
+					break;
+				default:
+					endpoint = "coupons";
+					path = "/customer/coupons/" + token;
+				}
+				call(endpoint, path);
+				if (thinkMillis > 0)
+					Thread.sleep(thinkMillis);
+			}
+			return recorders;
+		}
+
+		private void call(String endpoint, String path) throws IOException, InterruptedException {
+			long start = System.nanoTime();
+			long now = System.currentTimeMillis();
+			Recorder recorder = now >= measureFrom && now < measureUntil ? recorder(endpoint) : null;
+			try {
+				Response response = get(path);
+				if (recorder != null)
+					recorder.record(System.nanoTime() - start, response.status);
+				if (response.renewedToken != null)
+					token = response.renewedToken;
+				else if (response.status == 401)
+					token = login(user, recorder("login"));
+				// a rejected user backs off like a client honouring Retry-After
+				Thread.sleep(response.retryAfterMillis);
+			} catch (IOException e) {
+				if (recorder != null)
+					recorder.error(System.nanoTime() - start);
+			}
+		}
+
+		private String nextAction() {
+			int pick = random.nextInt(totalWeight);
+			for (int i = 0; i < ACTIONS.length; i++) {
+				pick -= weights[i];
+				if (pick < 0)
+					return ACTIONS[i];
+			}
+			return ACTIONS[ACTIONS.length - 1];
+		}
+
+		private int randomCoupon() {
+			return couponIds.length == 0 ? 0 : couponIds[random.nextInt(couponIds.length)];
+		}
+
+		private Recorder recorder(String endpoint) {
+			return recorders.computeIfAbsent(endpoint, name -> new Recorder());
+		}
+	}
+
+	/**
+	 * Latencies (ns) and status counts of one endpoint, recorded by a single thread.
+	 */
+	private static class Recorder {
+		private long[] latencies = new long[1024];
+		private int count;
+		private long ok;
+		private long clientErrors;
+		private long serverErrors;
+		private long ioErrors;
+		private long rejected;
+
+		/**
+		 * Records a response. Rejected requests (503, 429) are only counted, the latencies
+		 * and the throughput are those of the served requests.
+		 */
+		void record(long latency, int status) {
+			if (status == 503 || status == 429) {
+				rejected++;
+				return;
+			}
+			add(latency);
+			if (status < 400)
+				ok++;
+			else if (status < 500)
+				clientErrors++;
+			else
+				serverErrors++;
+		}
+
+		void error(long latency) {
+			add(latency);
+			ioErrors++;
+		}
+
+		private void add(long latency) {
+			if (count == latencies.length)
+				latencies = Arrays.copyOf(latencies, count * 2);
+			latencies[count++] = latency;
+		}
+
+		void add(Recorder other) {
+			for (int i = 0; i < other.count; i++)
+				add(other.latencies[i]);
+			ok += other.ok;
+			clientErrors += other.clientErrors;
+			serverErrors += other.serverErrors;
+			ioErrors += other.ioErrors;
+			rejected += other.rejected;
+		}
+
+		long[] sorted() {
+			long[] sorted = Arrays.copyOf(latencies, count);
+			Arrays.sort(sorted);
+			return sorted;
+		}
+	}
+
+	private static class Response {
+		final int status;
+		final byte[] body;
+		final String renewedToken;
+		final long retryAfterMillis;
+
+		Response(int status, byte[] body, String renewedToken, String retryAfter) {
+			this.status = status;
+			this.body = body;
+			this.renewedToken = renewedToken;
+			this.retryAfterMillis = retryAfter == null ? 0 : TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter));
+		}
+	}
+}
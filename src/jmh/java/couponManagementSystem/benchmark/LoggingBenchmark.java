@@ -0,0 +1,56 @@
+package couponManagementSystem.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+
+import couponManagementSystem.benchmark.PurchaseBenchmark.Buyer;
+
+/**
+ * Purchase throughput with the application's debug logging off (INFO, the default) and on (DEBUG), with the
+ * asynchronous loggers of log4j2.component.properties and with synchronous loggers. The log lines go to the discarded
+ * System.out, so this is the cost of logging on the request thread.
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LoggingBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class ApplicationLogLevel {
+		@Param({ "INFO", "DEBUG" })
+		public String logLevel;
+
+		@Setup(Level.Trial)
+		public void set(CouponSystemState system) {
+			system.getBean(LoggingSystem.class).setLogLevel("couponManagementSystem", LogLevel.valueOf(logLevel));
+		}
+	}
+
+	@Benchmark
+	public void purchaseAsyncLogging(CouponSystemState system, ApplicationLogLevel level, Buyer buyer) throws Exception {
+		system.customerFacade.purchaseCoupon(buyer.customerId, buyer.nextCoupon(system));
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-DLog4jContextSelector=org.apache.logging.log4j.core.selector.ClassLoaderContextSelector")
+	public void purchaseSyncLogging(CouponSystemState system, ApplicationLogLevel level, Buyer buyer) throws Exception {
+		system.customerFacade.purchaseCoupon(buyer.customerId, buyer.nextCoupon(system));
+	}
+}
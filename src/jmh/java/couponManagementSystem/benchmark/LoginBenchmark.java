@@ -0,0 +1,45 @@
+package couponManagementSystem.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import couponManagementSystem.login.ClientPrincipal;
+import couponManagementSystem.login.ClientType;
+
+/**
+ * A customer login through the LoginManager - the email lookup and the PBKDF2 password check. The cost is dominated
+ * by the hash iterations, compare runs with -p hashIterations=...
+ */
+
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LoginBenchmark {
+
+	@State(Scope.Thread)
+	public static class Emails {
+		int next;
+
+		String next(CouponSystemState system) {
+			next = (next + 1) % system.customerEmails.size();
+			return system.customerEmails.get(next);
+		}
+	}
+
+	@Benchmark
+	public ClientPrincipal customerLogin(CouponSystemState system, Emails emails) throws Exception {
+		return system.loginManager.ClientLogin(emails.next(system), CouponSystemState.PASSWORD,
+				ClientType.Customer);
+	}
+}
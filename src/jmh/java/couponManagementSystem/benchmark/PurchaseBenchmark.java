@@ -0,0 +1,73 @@
+package couponManagementSystem.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.beans.Customer;
+import couponManagementSystem.db.CustomerRepository;
+
+/**
+ * CustomerFacade.purchaseCoupon - the expiry check, the double purchase lookup, the conditional stock decrement and
+ * the purchase insert in one transaction. Run with -t to measure the purchase path under contention.
+ */
+
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PurchaseBenchmark {
+
+	private static final AtomicInteger BUYERS = new AtomicInteger();
+
+	/**
+	 * A customer of its own per benchmark thread, that buys every coupon once in a random order. When all coupons
+	 * were bought its purchases are deleted and it starts over, once every coupons.size() invocations.
+	 */
+	@State(Scope.Thread)
+	public static class Buyer {
+		int customerId;
+		List<Coupon> coupons;
+		int next;
+
+		@Setup(Level.Trial)
+		public void create(CouponSystemState system) {
+			int buyer = BUYERS.incrementAndGet();
+			customerId = system.getBean(CustomerRepository.class).save(new Customer("Buyer", String.valueOf(buyer),
+					"buyer" + buyer + "@benchmark.com", CouponSystemState.PASSWORD)).getId();
+			coupons = new ArrayList<Coupon>(system.coupons);
+			Collections.shuffle(coupons, new Random(buyer));
+		}
+
+		Coupon nextCoupon(CouponSystemState system) {
+			if (next == coupons.size()) {
+				system.transactionTemplate.execute(
+						status -> system.coupRepo.deletePurchasesByCustomerId(customerId));
+				next = 0;
+			}
+			return coupons.get(next++);
+		}
+	}
+
+	@Benchmark
+	public void purchaseCoupon(CouponSystemState system, Buyer buyer) throws Exception {
+		system.customerFacade.purchaseCoupon(buyer.customerId, buyer.nextCoupon(system));
+	}
+}
@@ -0,0 +1,70 @@
+package couponManagementSystem.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import couponManagementSystem.beans.CategoryType;
+import couponManagementSystem.db.CouponSearchIndex.SearchResult;
+
+/**
+ * CustomerFacade.searchCoupons of the seeded coupons (titles "Coupon {company}-{row}", descriptions "Generated coupon
+ * {row}"), a page of 20 with the facets. A row number matches one coupon per company, "coupon" matches all of them,
+ * a one digit prefix expands to the rows starting with it, and a category and price range without words filters all
+ * coupons. Scale the catalog with -p couponsPerCompany, e.g. -p companies=100 -p couponsPerCompany=10000.
+ */
+
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+	private static final CategoryType[] CATEGORIES = CategoryType.values();
+
+	@State(Scope.Thread)
+	public static class Picker {
+		final SplittableRandom random = new SplittableRandom(42);
+
+		String row(CouponSystemState system) {
+			return Integer.toString(1 + random.nextInt(system.couponsPerCompany));
+		}
+
+		CategoryType category() {
+			return CATEGORIES[random.nextInt(CATEGORIES.length)];
+		}
+	}
+
+	@Benchmark
+	public SearchResult searchWord(CouponSystemState system, Picker picker) {
+		return system.customerFacade.searchCoupons("generated coupon " + picker.row(system) + " ", null, null, null,
+				null, 0, 20);
+	}
+
+	@Benchmark
+	public SearchResult searchCommonWord(CouponSystemState system, Picker picker) {
+		return system.customerFacade.searchCoupons("coupon ", null, null, null, null, 0, 20);
+	}
+
+	@Benchmark
+	public SearchResult searchPrefix(CouponSystemState system, Picker picker) {
+		return system.customerFacade.searchCoupons("coupon " + (1 + picker.random.nextInt(9)), null, null, null, null,
+				0, 20);
+	}
+
+	@Benchmark
+	public SearchResult searchFilter(CouponSystemState system, Picker picker) {
+		double maxPrice = 1 + picker.random.nextInt(100);
+		return system.customerFacade.searchCoupons("", picker.category(), null, maxPrice / 2, maxPrice, 0, 20);
+	}
+}
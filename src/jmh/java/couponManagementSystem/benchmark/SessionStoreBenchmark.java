@@ -0,0 +1,70 @@
+package couponManagementSystem.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import couponManagementSystem.login.ClientPrincipal;
+import couponManagementSystem.login.ClientType;
+import couponManagementSystem.web.Session;
+import couponManagementSystem.web.SessionStore;
+
+/**
+ * The session lookup of every authenticated request, as done by the authentication aspect in WebConfig: get, isExpired
+ * and touch of a logged in customer's token, cycling through -p sessions tokens per thread. Compare the session stores
+ * with -p sessionStore=memory,database,signed, e.g.
+ * -Djmh.args="SessionStoreBenchmark -p sessionStore=memory,database,signed -p hashIterations=1000 -t 4"
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SessionStoreBenchmark {
+
+	@State(Scope.Thread)
+	public static class Tokens {
+		@Param("1000")
+		int sessions;
+
+		SessionStore store;
+		String[] tokens;
+		int next;
+
+		@Setup(Level.Trial)
+		public void login(CouponSystemState system) {
+			store = system.getBean(SessionStore.class);
+			tokens = new String[sessions];
+			for (int i = 0; i < sessions; i++) {
+				int customerId = system.customerIds.get(i % system.customerIds.size());
+				tokens[i] = store.open(new Session(new ClientPrincipal(ClientType.Customer, customerId),
+						System.currentTimeMillis()));
+			}
+		}
+	}
+
+	@Benchmark
+	public Session authenticate(Tokens tokens) {
+		int index = tokens.next;
+		tokens.next = (index + 1) % tokens.tokens.length;
+		String token = tokens.tokens[index];
+		Session session = tokens.store.get(token);
+		if (session == null || tokens.store.isExpired(session))
+			throw new IllegalStateException("Session of token " + token + " is gone");
+		// a renewed token replaces the old one, like the client does with the renewed token header
+		tokens.tokens[index] = tokens.store.touch(token, session);
+		return session;
+	}
+}
@@ -1,64 +1,122 @@
 package couponManagementSystem;
 
 /**
- * The coupon clean up daily task is a separate thread that runs in one second intervals 
- * over all coupons that exist in the database, checks the date of each one, and if the date 
- * of the coupon has expired, it deletes the coupon and all its purchases by customers from the database. 
+ * The coupon clean up task runs on a configurable schedule (coupon.expiration.fixed-delay) and deletes expired coupons
+ * and all their purchases by customers from the database. Only coupons with an end date before now are queried, using
+ * the index on endDate, and they are deleted with set based statements in batches of coupon.expiration.batch-size
+ * coupons, each batch in its own transaction. Every run reports the number of coupons and purchases expired, the
+ * number of batches and the elapsed time. The coupon catalog cache is invalidated after coupons were deleted, and the
+ * deleted coupons are removed from the search index and the inventory when their batch commits.
  */
 
-import java.util.Calendar;
+import java.sql.Date;
+import java.util.List;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import couponManagementSystem.beans.Coupon;
-import couponManagementSystem.beans.Customer;
+import couponManagementSystem.db.CouponCatalogCache;
 import couponManagementSystem.db.CouponRepository;
-import couponManagementSystem.db.CustomerRepository;
+import couponManagementSystem.db.CouponSearchIndex;
+import couponManagementSystem.db.Inventory;
 
 @Service
-public class CouponExpirationDailyJob extends Thread {
+public class CouponExpirationDailyJob {
+
+	private static final Logger log = LoggerFactory.getLogger(CouponExpirationDailyJob.class);
 
-	private CustomerRepository custRepo;
 	private CouponRepository coupRepo;
-	private boolean inAction = true;
+	private CouponCatalogCache catalog;
+	private CouponSearchIndex searchIndex;
+	private Inventory inventory;
+	private TransactionTemplate transactionTemplate;
+	private int batchSize;
+
+	private volatile long lastRunCouponsExpired;
+	private volatile long lastRunPurchasesExpired;
+	private volatile int lastRunBatches;
+	private volatile long lastRunMillis;
+	private volatile long totalCouponsExpired;
 
-	
-	public CouponExpirationDailyJob(CustomerRepository custRepo, CouponRepository coupRepo) {
-		this.custRepo = custRepo;
+	public CouponExpirationDailyJob(CouponRepository coupRepo, CouponCatalogCache catalog, CouponSearchIndex searchIndex,
+			Inventory inventory, PlatformTransactionManager transactionManager,
+			@Value("${coupon.expiration.batch-size:1000}") int batchSize) {
 		this.coupRepo = coupRepo;
+		this.catalog = catalog;
+		this.searchIndex = searchIndex;
+		this.inventory = inventory;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.batchSize = batchSize;
 	}
 
-	@Override
+	@Scheduled(initialDelayString = "${coupon.expiration.initial-delay:10000}",
+			fixedDelayString = "${coupon.expiration.fixed-delay:60000}")
 	public void run() {
-		System.out.println("Starting expired coupon clean up task");
-		Calendar cal = Calendar.getInstance();
-		while (inAction) {
-			for (Coupon coupon : coupRepo.findAll()) {
-				if (coupon.getEndDate().before(cal.getTime())) {
-					for (Customer customer : custRepo.findAll()) {
-						for (Coupon customerCoupon : customer.getCoupons()) {
-							if (customerCoupon.getId() == coupon.getId()) {
-								customer.getCoupons().remove(customerCoupon);
-								custRepo.save(customer);
-								System.out.println("(Clean up task) ==> Deleted purchase of expired coupon id: "
-										+ coupon.getId() + ", by customer id: " + customer.getId());
-							}
-						}
-					}
-					coupRepo.deleteById(coupon.getId());
-					System.out.println("(Clean up task) ==> Deleted expired coupon id: " + coupon.getId());
-				}
-			}
-			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-			}
-		}
+		long start = System.currentTimeMillis();
+		Date now = new Date(start);
+		long couponsExpired = 0;
+		long purchasesExpired = 0;
+		int batches = 0;
+		int expiredInBatch;
+		do {
+			int[] counts = transactionTemplate.execute(status -> expireBatch(now));
+			expiredInBatch = counts[0];
+			couponsExpired += counts[0];
+			purchasesExpired += counts[1];
+			if (expiredInBatch > 0)
+				batches++;
+		} while (expiredInBatch == batchSize);
+		if (couponsExpired > 0)
+			catalog.invalidate();
+
+		lastRunCouponsExpired = couponsExpired;
+		lastRunPurchasesExpired = purchasesExpired;
+		lastRunBatches = batches;
+		lastRunMillis = System.currentTimeMillis() - start;
+		totalCouponsExpired += couponsExpired;
+		if (couponsExpired > 0)
+			log.info("Deleted {} expired coupons and {} purchases in {} batches, {} ms", couponsExpired, purchasesExpired,
+					batches, lastRunMillis);
+	}
+
+	/**
+	 * Deletes one batch of expired coupons and their purchases.
+	 * @return the number of coupons and the number of purchases deleted.
+	 */
+	private int[] expireBatch(Date now) {
+		List<Integer> expiredIds = coupRepo.findExpiredCouponIds(now, PageRequest.of(0, batchSize));
+		if (expiredIds.isEmpty())
+			return new int[] { 0, 0 };
+		int purchases = coupRepo.deletePurchasesByCouponIds(expiredIds);
+		int coupons = coupRepo.deleteCouponsByIds(expiredIds);
+		searchIndex.remove(expiredIds);
+		inventory.evict(expiredIds);
+		return new int[] { coupons, purchases };
+	}
+
+	public long getLastRunCouponsExpired() {
+		return lastRunCouponsExpired;
+	}
+
+	public long getLastRunPurchasesExpired() {
+		return lastRunPurchasesExpired;
+	}
+
+	public int getLastRunBatches() {
+		return lastRunBatches;
+	}
+
+	public long getLastRunMillis() {
+		return lastRunMillis;
 	}
 
-	public void stopRunning() {
-		System.out.println("Stopping job");
-		this.inAction = false;
-		this.interrupt();
+	public long getTotalCouponsExpired() {
+		return totalCouponsExpired;
 	}
 }
@@ -3,10 +3,12 @@ package couponManagementSystem;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 
 
 @SpringBootApplication
+@EnableScheduling
 public class CouponManagementSystemApplication {
 
 	public static void main(String[] args) {
@@ -15,10 +17,11 @@ public class CouponManagementSystemApplication {
 //		Activate the test class to auto generate companies, customers and coupons and test back-end functionality.		
 //		Test test= ctx.getBean(Test.class);
 //		test.testAll();
+
+//		Start with --spring.profiles.active=seed to fill the database with generated data for load tests (DataSeeder).
+//		Start with --spring.profiles.active=perf for the production connection pool, JDBC and batching settings.
 		
-//		Start the daily coupon clean-up task.
-		CouponExpirationDailyJob job = ctx.getBean(CouponExpirationDailyJob.class);
-		job.start();
+//		The coupon clean-up task (CouponExpirationDailyJob) is started by the scheduler.
 	}
 
 }
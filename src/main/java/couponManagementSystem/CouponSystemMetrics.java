@@ -0,0 +1,73 @@
+package couponManagementSystem;
+
+import org.springframework.stereotype.Component;
+
+import couponManagementSystem.db.CouponCatalogCache;
+import couponManagementSystem.db.CouponSearchIndex;
+import couponManagementSystem.db.Inventory;
+import couponManagementSystem.web.SessionStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes the statistics of the session store, the coupon catalog cache, the coupon expiration job, the inventory and
+ * the search index as metrics, next to the timers of the MetricsAspect. These are the numbers of the administrator's
+ * sessionStats and couponCacheStats requests.
+ */
+
+@Component
+public class CouponSystemMetrics implements MeterBinder {
+
+	private final SessionStore sessionStore;
+	private final CouponCatalogCache catalog;
+	private final CouponExpirationDailyJob expirationJob;
+	private final Inventory inventory;
+	private final CouponSearchIndex searchIndex;
+
+	public CouponSystemMetrics(SessionStore sessionStore, CouponCatalogCache catalog,
+			CouponExpirationDailyJob expirationJob, Inventory inventory, CouponSearchIndex searchIndex) {
+		this.sessionStore = sessionStore;
+		this.catalog = catalog;
+		this.expirationJob = expirationJob;
+		this.inventory = inventory;
+		this.searchIndex = searchIndex;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		// the signed session store keeps no sessions, it reports -1 live sessions
+		Gauge.builder("coupon.sessions.live", sessionStore, store -> store.getLiveSessions() < 0 ? Double.NaN
+				: store.getLiveSessions()).register(registry);
+		FunctionCounter.builder("coupon.sessions.created", sessionStore, SessionStore::getCreatedSessions)
+				.register(registry);
+		FunctionCounter.builder("coupon.sessions.expired", sessionStore, SessionStore::getExpiredSessions)
+				.register(registry);
+
+		Gauge.builder("coupon.cache.size", catalog, CouponCatalogCache::getSize).register(registry);
+		FunctionCounter.builder("coupon.cache.gets", catalog, CouponCatalogCache::getHits).tag("result", "hit")
+				.register(registry);
+		FunctionCounter.builder("coupon.cache.gets", catalog, CouponCatalogCache::getMisses).tag("result", "miss")
+				.register(registry);
+		FunctionCounter.builder("coupon.cache.removals", catalog, CouponCatalogCache::getEvictions)
+				.tag("cause", "eviction").register(registry);
+		FunctionCounter.builder("coupon.cache.removals", catalog, CouponCatalogCache::getExpirations)
+				.tag("cause", "expiration").register(registry);
+		FunctionCounter.builder("coupon.cache.invalidations", catalog, CouponCatalogCache::getInvalidations)
+				.register(registry);
+
+		FunctionCounter.builder("coupon.expiration.coupons", expirationJob, CouponExpirationDailyJob::getTotalCouponsExpired)
+				.register(registry);
+		Gauge.builder("coupon.expiration.last.run.coupons", expirationJob,
+				CouponExpirationDailyJob::getLastRunCouponsExpired).register(registry);
+		Gauge.builder("coupon.expiration.last.run.purchases", expirationJob,
+				CouponExpirationDailyJob::getLastRunPurchasesExpired).register(registry);
+		Gauge.builder("coupon.expiration.last.run.duration", expirationJob, CouponExpirationDailyJob::getLastRunMillis)
+				.baseUnit("milliseconds").register(registry);
+
+		Gauge.builder("coupon.inventory.pending", inventory, Inventory::getPendingPurchases).register(registry);
+
+		Gauge.builder("coupon.search.indexed", searchIndex, CouponSearchIndex::getSize).register(registry);
+	}
+}
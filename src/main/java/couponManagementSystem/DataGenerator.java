@@ -0,0 +1,217 @@
+package couponManagementSystem;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import couponManagementSystem.beans.CategoryType;
+import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.db.CouponCatalogCache;
+import couponManagementSystem.db.IdAllocator;
+import couponManagementSystem.facades.CouponImporter;
+import couponManagementSystem.facades.ImportRow;
+import couponManagementSystem.login.PasswordHasher;
+
+/**
+ * The DataGenerator fills the database with generated companies, customers, coupons and purchases for load tests and
+ * benchmarks. All rows are written with JDBC batch inserts (coupons through the CouponImporter), with ids from the
+ * IdAllocator. Company i logs in as company{i}@seed.example and customer i as customer{i}@seed.example, all with the
+ * seed.password, so a load driver can log in without a list of credentials. The data is random, but the same seed.random-seed generates the same data.
+ */
+
+@Component
+public class DataGenerator {
+
+	private static final Logger log = LoggerFactory.getLogger(DataGenerator.class);
+
+	public static final String EMAIL_DOMAIN = "@seed.example";
+	private static final int BATCH_SIZE = 1000;
+
+	private final JdbcTemplate jdbc;
+	private final CouponImporter importer;
+	private final CouponCatalogCache catalog;
+	private final IdAllocator idAllocator;
+	private final PasswordHasher hasher;
+	private final String password;
+	private final long randomSeed;
+
+	public DataGenerator(JdbcTemplate jdbc, CouponImporter importer, CouponCatalogCache catalog, IdAllocator idAllocator,
+			PasswordHasher hasher, @Value("${seed.password:password}") String password,
+			@Value("${seed.random-seed:42}") long randomSeed) {
+		this.jdbc = jdbc;
+		this.importer = importer;
+		this.catalog = catalog;
+		this.idAllocator = idAllocator;
+		this.hasher = hasher;
+		this.password = password;
+		this.randomSeed = randomSeed;
+	}
+
+	public static String companyEmail(int i) {
+		return "company" + i + EMAIL_DOMAIN;
+	}
+
+	public static String customerEmail(int i) {
+		return "customer" + i + EMAIL_DOMAIN;
+	}
+
+	/**
+	 * Generates the given number of companies and customers, and coupons spread evenly between the companies. Each
+	 * customer purchases purchasesPerCustomer coupons (less if the stock runs out), the purchases are taken from the
+	 * coupons amount.
+	 * @param couponAmount - the initial amount of every coupon.
+	 * @return ids of the generated rows, in the order of their email numbers.
+	 */
+	public GeneratedData generate(int companies, int customers, int coupons, int purchasesPerCustomer, int couponAmount) {
+		long start = System.currentTimeMillis();
+		Random random = new Random(randomSeed);
+		// every generated client has the same password, hashed once - hashing each row would dominate the run
+		String hash = hasher.hash(password);
+
+		List<Integer> companyIds = allocateIds("companies", companies);
+		List<Object[]> rows = new ArrayList<Object[]>(companies);
+		for (int i = 0; i < companies; i++)
+			rows.add(new Object[] { companyIds.get(i), "Company " + i, companyEmail(i), hash });
+		jdbc.batchUpdate("insert into companies (id, name, email, password) values (?, ?, ?, ?)", rows, BATCH_SIZE,
+				(ps, row) -> {
+					ps.setInt(1, (Integer) row[0]);
+					ps.setString(2, (String) row[1]);
+					ps.setString(3, (String) row[2]);
+					ps.setString(4, (String) row[3]);
+				});
+
+		List<Integer> customerIds = allocateIds("customers", customers);
+		rows = new ArrayList<Object[]>(customers);
+		for (int i = 0; i < customers; i++)
+			rows.add(new Object[] { customerIds.get(i), "First" + i, "Last" + i, customerEmail(i), hash });
+		jdbc.batchUpdate("insert into customers (id, first_name, last_name, email, password) values (?, ?, ?, ?, ?)",
+				rows, BATCH_SIZE, (ps, row) -> {
+					ps.setInt(1, (Integer) row[0]);
+					ps.setString(2, (String) row[1]);
+					ps.setString(3, (String) row[2]);
+					ps.setString(4, (String) row[3]);
+					ps.setString(5, (String) row[4]);
+				});
+
+		for (int i = 0; i < companyIds.size(); i++) {
+			int count = coupons / companies + (i < coupons % companies ? 1 : 0);
+			importer.importCoupons(companyIds.get(i), couponRows(i, count, couponAmount, random));
+		}
+		List<Integer> couponIds = jdbc.queryForList("select c.id from coupons c join companies co on co.id = c.company_id"
+				+ " where co.email like ? order by c.id", Integer.class, "%" + EMAIL_DOMAIN);
+
+		int purchases = purchase(customerIds, couponIds, purchasesPerCustomer, couponAmount, random);
+		log.info("Generated {} companies, {} customers, {} coupons and {} purchases in {} ms", companyIds.size(),
+				customerIds.size(), couponIds.size(), purchases, System.currentTimeMillis() - start);
+		return new GeneratedData(companyIds, customerIds, couponIds);
+	}
+
+	private List<Integer> allocateIds(String table, int count) {
+		int firstId = count == 0 ? 0 : idAllocator.allocate(table, count);
+		List<Integer> ids = new ArrayList<Integer>(count);
+		for (int i = 0; i < count; i++)
+			ids.add(firstId + i);
+		return ids;
+	}
+
+	/**
+	 * Random coupons of a generated company: any category, prices from 1 to 200, started up to 30 days ago and valid
+	 * for another 30 days to a year.
+	 */
+	private static Iterator<ImportRow> couponRows(int company, int count, int amount, Random random) {
+		CategoryType[] categories = CategoryType.values();
+		long now = System.currentTimeMillis();
+		return new Iterator<ImportRow>() {
+			private int row;
+
+			@Override
+			public boolean hasNext() {
+				return row < count;
+			}
+
+			@Override
+			public ImportRow next() {
+				row++;
+				Date startDate = new Date(now - TimeUnit.DAYS.toMillis(random.nextInt(30)));
+				Date endDate = new Date(now + TimeUnit.DAYS.toMillis(30 + random.nextInt(335)));
+				double price = Math.round((1 + random.nextDouble() * 199) * 100) / 100.0;
+				return ImportRow.of(row, new Coupon(null, categories[random.nextInt(categories.length)],
+						"Coupon " + company + "-" + row, startDate, endDate, amount, "Generated coupon " + row, price,
+						"coupon" + row + ".png"));
+			}
+		};
+	}
+
+	/**
+	 * Inserts purchases of consecutive coupons from a random position per customer, and takes them from the stock.
+	 * @return the number of purchases.
+	 */
+	private int purchase(List<Integer> customerIds, List<Integer> couponIds, int perCustomer, int couponAmount,
+			Random random) {
+		if (couponIds.isEmpty())
+			return 0;
+		int[] sold = new int[couponIds.size()];
+		List<Object[]> purchases = new ArrayList<Object[]>();
+		for (int customerId : customerIds) {
+			int next = random.nextInt(couponIds.size());
+			for (int i = 0; i < Math.min(perCustomer, couponIds.size()); i++, next = (next + 1) % couponIds.size()) {
+				if (sold[next] == couponAmount)
+					continue;
+				sold[next]++;
+				purchases.add(new Object[] { customerId, couponIds.get(next) });
+			}
+		}
+		jdbc.batchUpdate("insert into customers_vs_coupons (customer_id, coupons_id) values (?, ?)", purchases,
+				BATCH_SIZE, (ps, row) -> {
+					ps.setInt(1, (Integer) row[0]);
+					ps.setInt(2, (Integer) row[1]);
+				});
+		List<Object[]> amounts = new ArrayList<Object[]>();
+		for (int i = 0; i < sold.length; i++)
+			if (sold[i] > 0)
+				amounts.add(new Object[] { sold[i], couponIds.get(i) });
+		jdbc.batchUpdate("update coupons set amount = amount - ? where id = ?", amounts, BATCH_SIZE, (ps, row) -> {
+			ps.setInt(1, (Integer) row[0]);
+			ps.setInt(2, (Integer) row[1]);
+		});
+		catalog.invalidate();
+		return purchases.size();
+	}
+
+	/**
+	 * Ids of the generated companies, customers and coupons, ordered by id.
+	 */
+	public static class GeneratedData {
+
+		private final List<Integer> companyIds;
+		private final List<Integer> customerIds;
+		private final List<Integer> couponIds;
+
+		GeneratedData(List<Integer> companyIds, List<Integer> customerIds, List<Integer> couponIds) {
+			this.companyIds = companyIds;
+			this.customerIds = customerIds;
+			this.couponIds = couponIds;
+		}
+
+		public List<Integer> getCompanyIds() {
+			return companyIds;
+		}
+
+		public List<Integer> getCustomerIds() {
+			return customerIds;
+		}
+
+		public List<Integer> getCouponIds() {
+			return couponIds;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package couponManagementSystem;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import couponManagementSystem.db.CompanyRepository;
+
+/**
+ * Seeds the database with the DataGenerator when the application starts with the seed profile
+ * (--spring.profiles.active=seed). The volumes are set with the seed.* properties. The database is seeded once: if
+ * the first generated company already exists, nothing is generated.
+ */
+
+@Component
+@Profile("seed")
+public class DataSeeder implements ApplicationRunner {
+
+	private static final Logger log = LoggerFactory.getLogger(DataSeeder.class);
+
+	private final DataGenerator generator;
+	private final CompanyRepository compRepo;
+	private final int companies;
+	private final int customers;
+	private final int coupons;
+	private final int purchasesPerCustomer;
+	private final int couponAmount;
+
+	public DataSeeder(DataGenerator generator, CompanyRepository compRepo,
+			@Value("${seed.companies:100}") int companies, @Value("${seed.customers:10000}") int customers,
+			@Value("${seed.coupons:10000}") int coupons,
+			@Value("${seed.purchases-per-customer:5}") int purchasesPerCustomer,
+			@Value("${seed.coupon-amount:1000}") int couponAmount) {
+		this.generator = generator;
+		this.compRepo = compRepo;
+		this.companies = companies;
+		this.customers = customers;
+		this.coupons = coupons;
+		this.purchasesPerCustomer = purchasesPerCustomer;
+		this.couponAmount = couponAmount;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		if (compRepo.findCompanyByEmail(DataGenerator.companyEmail(0)) != null) {
+			log.info("Database already seeded, skipping data generation");
+			return;
+		}
+		generator.generate(companies, customers, coupons, purchasesPerCustomer, couponAmount);
+	}
+}
@@ -6,6 +6,8 @@ package couponManagementSystem;
 
 import java.sql.Date;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
 
@@ -15,8 +17,10 @@ import org.springframework.stereotype.Component;
 
 import couponManagementSystem.beans.CategoryType;
 import couponManagementSystem.beans.Company;
+import couponManagementSystem.beans.CompanyView;
 import couponManagementSystem.beans.Coupon;
 import couponManagementSystem.beans.Customer;
+import couponManagementSystem.beans.CustomerView;
 import couponManagementSystem.facades.AdminFacade;
 import couponManagementSystem.facades.CompanyFacade;
 import couponManagementSystem.facades.CustomerFacade;
@@ -41,17 +45,11 @@ public class Test {
 		
 		Random rand = new Random();
 		Scanner scan = new Scanner(System.in);
-		CouponExpirationDailyJob job = ctx.getBean(CouponExpirationDailyJob.class);
 		LoginManager manager = ctx.getBean(LoginManager.class);
 
 	// Using a general try/catch clause for all test functions (Nir's instructions)
 		try { 
 			
-			/** 
-			 * Start coupon clean up task
-			 */
-				job.start();
-
 //> ASMINISTRATOR FACADE FUNCTIONS
 
 			System.out.println();
@@ -61,18 +59,20 @@ public class Test {
 			System.out.println();
 			
 		/**
-		 *  Login - test Administrator login credentials and receive active AdminFacade.
+		 *  Login - test Administrator login credentials.
 		 */
-			AdminFacade admin = (AdminFacade) manager.ClientLogin("admin@admin.com", "admin", ClientType.Adminisrtator);
+			manager.ClientLogin("admin@admin.com", "admin", ClientType.Adminisrtator);
 
 		/**
 		 * Add company - test function to add 2 new companies as admin 
 		 */
+			Map<String, String> passwords = new HashMap<String, String>();	// stored passwords are hashed, keep the plaintext by email to login
 			Company company = new Company();
 			System.out.println("==> Adding companies...");
 			for (int i = 0; i < 10; i++) {
 				company = new Company("cmp_" + rand.nextInt(100000), "cmp@email_" + rand.nextInt(100000),
 						"cmp_password_" + rand.nextInt(100000));
+				passwords.put(company.getEmail(), company.getPassword());
 				company = admin.addCompany(company);
 			}
 
@@ -81,9 +81,10 @@ public class Test {
 		 *  (name cannot be changed)
 		 */
 			System.out.println("==> Updating company...");
-			company = admin.getAllCompanies().get(rand.nextInt(admin.getAllCompanies().size()));
+			company = admin.getOneCompany(admin.getAllCompanies().get(rand.nextInt(admin.getAllCompanies().size())).getId());
 			company.setEmail("cmp@email_updated_" + rand.nextInt(100000));
 			company.setPassword("cmp_password_updated_" + rand.nextInt(100000));
+			passwords.put(company.getEmail(), company.getPassword());
 			company = admin.updateCompany(company);
 
 		/**
@@ -95,6 +96,7 @@ public class Test {
 				customer = new Customer("firstName_" + rand.nextInt(100000), "lastName_" 
 									+ rand.nextInt(100000),"email_" + rand.nextInt(100000),
 									"password_" + rand.nextInt(100000));
+				passwords.put(customer.getEmail(), customer.getPassword());
 				customer = admin.addCustomer(customer);
 			}
 
@@ -102,40 +104,41 @@ public class Test {
 		 *  Update customer - test update customer's first and last name, email and password randomly
 		 */
 			System.out.println("==> Updating customer...");
-			customer = admin.getAllCustomers().get(rand.nextInt(admin.getAllCustomers().size()));
+			customer = admin.getOneCustomer(admin.getAllCustomers().get(rand.nextInt(admin.getAllCustomers().size())).getId());
 			customer.setFirstName("firstName_updated_" + rand.nextInt(100000));
 			customer.setLastName("lastName_updated_" + rand.nextInt(1000000));
 			customer.setEmail("email_updated_" + rand.nextInt(1000000));
 			customer.setPassword("password_updated_" + rand.nextInt(1000000));
+			passwords.put(customer.getEmail(), customer.getPassword());
 			admin.updateCustomer(customer);
 
 		/**
 		 *  Print all companies
 		 */
 			System.out.println("==> Printing all companies in database:");
-			for (Company cmp : admin.getAllCompanies()) {
-				System.out.println(cmp);
+			for (CompanyView cmp : admin.getAllCompanies()) {
+				System.out.println(admin.getOneCompany(cmp.getId()));
 			}
 
 		/**
 		 *  Print one company (random)
 		 */
 			System.out.println("==> Printing one company:");
-			System.out.println(admin.getAllCompanies().get(rand.nextInt(admin.getAllCompanies().size())));
+			System.out.println(admin.getOneCompany(admin.getAllCompanies().get(rand.nextInt(admin.getAllCompanies().size())).getId()));
 
 		/**
 		 *  Print all customers
 		 */
 			System.out.println("==> Printing all customers in database:");
-			for (Customer cstm : admin.getAllCustomers()) {
-				System.out.println(cstm);
+			for (CustomerView cstm : admin.getAllCustomers()) {
+				System.out.println(admin.getOneCustomer(cstm.getId()));
 			}
 
 		/**
 		 *  Print one customer (random)
 		 */
 			System.out.println("==> Printing one customer:");
-			System.out.println(admin.getAllCustomers().get(rand.nextInt(admin.getAllCustomers().size())));
+			System.out.println(admin.getOneCustomer(admin.getAllCustomers().get(rand.nextInt(admin.getAllCustomers().size())).getId()));
 
 //> COMPANY FACADE FUNCTIONS
 		
@@ -150,8 +153,10 @@ public class Test {
 		 *  Company login and add coupon function - The test function will try to 
 		 *  login with each company and add 3 coupons.
 		 */
-			for (Company comp : admin.getAllCompanies()) {
-				cmpFacade = (CompanyFacade) manager.ClientLogin(comp.getEmail(), comp.getPassword(), ClientType.Company);
+			int companyId = 0;
+			for (CompanyView compView : admin.getAllCompanies()) {
+				Company comp = admin.getOneCompany(compView.getId());
+				companyId = manager.ClientLogin(comp.getEmail(), passwords.get(comp.getEmail()), ClientType.Company).getClientId();
 				System.out.println("==> Adding coupons...");
 				Calendar cal = Calendar.getInstance();
 				cal.set(Calendar.YEAR, cal.get(Calendar.YEAR)+rand.nextInt(5));
@@ -169,25 +174,25 @@ public class Test {
 		 *  Update coupon - test update coupon's title, date, set amount and price randomly
 		 */
 			System.out.println("==> Updating coupon...");
-			Coupon coupon = cmpFacade.getAllCompanyCoupons().get(rand.nextInt(cmpFacade.getAllCompanyCoupons().size()));
+			Coupon coupon = cmpFacade.getAllCompanyCoupons(companyId).get(rand.nextInt(cmpFacade.getAllCompanyCoupons(companyId).size()));
 			coupon.setTitle("title_updated_" + rand.nextInt(1000000));
 			coupon.setAmount(rand.nextInt(1000000));
 			coupon.setPrice(rand.nextInt(4000));
 			Calendar cal = Calendar.getInstance();
 			cal.set(Calendar.YEAR, (2555));
 			coupon.setEndDate(new Date(cal.getTimeInMillis()));
-			cmpFacade.updateCoupon(coupon);
+			cmpFacade.updateCoupon(companyId, coupon);
 
 		/**
 		 *  Print logged in company details
 		 */
-			System.out.println("==> Logged in as: " + cmpFacade.getLoggedInCompany());
+			System.out.println("==> Logged in as: " + cmpFacade.getCompanyById(companyId));
 
 		/**
 		 *  Print all logged in company coupons
 		 */
 			System.out.println("==> Printing all logged in company coupons in database:");
-			for (Coupon coup : cmpFacade.getAllCompanyCoupons()) {
+			for (Coupon coup : cmpFacade.getAllCompanyCoupons(companyId)) {
 				System.out.println(coup);
 			}
 
@@ -195,7 +200,7 @@ public class Test {
 		 *  Print one logged in company coupon (randomly)
 		 */
 			System.out.println("==> Printing one logged in company coupon:");
-			System.out.println(cmpFacade.getAllCompanyCoupons().get(rand.nextInt(cmpFacade.getAllCompanyCoupons().size())));
+			System.out.println(cmpFacade.getAllCompanyCoupons(companyId).get(rand.nextInt(cmpFacade.getAllCompanyCoupons(companyId).size())));
 
 
 //> CUSTOMER FACADE FUNCTIONS
@@ -210,16 +215,16 @@ public class Test {
 		 *  Customer login and purchase coupons - the test function will login with each customer 
 		 *  and purchase one of each of the coupons available on the database
 		 */
-			for (Customer cst : admin.getAllCustomers()) {
-				cstFacade = (CustomerFacade) manager.ClientLogin(cst.getEmail(), cst.getPassword(),
-						ClientType.Customer);
+			int customerId = 0;
+			for (CustomerView cst : admin.getAllCustomers()) {
+				customerId = manager.ClientLogin(cst.getEmail(), passwords.get(cst.getEmail()), ClientType.Customer).getClientId();
 				for (Coupon coup : admin.getAllCoupons()) {
 					/** 
 					 * Specific try/catch clause to enable test method to run without stopping
 					 * and test also the cases of custom coupon exceptions. 
 					 */
 					try {
-						cstFacade.purchaseCoupon(coup);
+						cstFacade.purchaseCoupon(customerId, coup);
 					} catch (Exception e) {
 						System.out.println(e.getMessage() + ": coupon id " + coup.getId());
 					}
@@ -229,13 +234,13 @@ public class Test {
 		/**
 		 *  Print logged in customer details
 		 */
-			System.out.println("==> Logged in as: " + cstFacade.getLoggedInCustomer());
+			System.out.println("==> Logged in as: " + cstFacade.getCustomerById(customerId));
 			
 		/**
 		 *  Print all logged in customer coupons
 		 */
 			System.out.println("printing all logged in customer coupons: ");
-			for (Coupon coup : cstFacade.getAllCustomerCoupons()) {
+			for (Coupon coup : cstFacade.getAllCustomerCoupons(customerId)) {
 				System.out.println(coup);
 			}
 
@@ -244,7 +249,7 @@ public class Test {
 		 */
 			CategoryType category = CategoryType.values()[rand.nextInt(CategoryType.values().length)];
 			System.out.println("==> Printing all logged in customer coupons by category: " + category);
-			for (Coupon coup : cstFacade.getAllCustomerCouponsByCategory(category)) {
+			for (Coupon coup : cstFacade.getAllCustomerCouponsByCategory(customerId, category)) {
 				System.out.println(coup);
 			}
 			
@@ -252,7 +257,7 @@ public class Test {
 		 *  Print all logged in customer coupons by max price
 		 */
 			System.out.println("==> Printing all logged in customer coupons by max price: 2500");
-			for (Coupon coup : cstFacade.getAllCustomerCouponsByMaxPrice(2500)) {
+			for (Coupon coup : cstFacade.getAllCustomerCouponsByMaxPrice(customerId, 2500)) {
 				System.out.println(coup);
 			}
 
@@ -267,7 +272,7 @@ public class Test {
 		 *  Delete random coupon (of logged in company coupon)
 		 */
 			System.out.println("==> Deleting coupon...");
-			cmpFacade.deleteCoupon(cmpFacade.getAllCompanyCoupons().get(rand.nextInt(cmpFacade.getAllCompanyCoupons().size())).getId());
+			cmpFacade.deleteCoupon(cmpFacade.getAllCompanyCoupons(companyId).get(rand.nextInt(cmpFacade.getAllCompanyCoupons(companyId).size())).getId());
 
 		/**
 		 *  Delete random customer
@@ -283,11 +288,7 @@ public class Test {
 			System.out.println("==> Deleting company " + companyIdToDelete + "...");
 			admin.deleteCompany(companyIdToDelete);
 
-		/**
-		 *  Stopping coupon clean up task
-		 */
-			job.stopRunning();
-			
+
 		} catch (Exception e) {
 			System.out.println(e.getMessage());
 		}
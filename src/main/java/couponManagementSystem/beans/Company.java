@@ -5,7 +5,6 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
@@ -17,7 +16,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 public class Company {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(generator = "pooled_ids")
 	private int id;
 	@Column(unique = true)
 	private String name;
@@ -25,7 +24,7 @@ public class Company {
 	private String email;
 	@Column
 	private String password;
-	@OneToMany(mappedBy = "company", fetch = FetchType.EAGER)
+	@OneToMany(mappedBy = "company", fetch = FetchType.LAZY)
 	@JsonIgnore
 	private List<Coupon> coupons;
 
@@ -77,8 +76,7 @@ public class Company {
 
 	@Override
 	public String toString() {
-		return "[Company_id=" + id + ", name=" + name + ", email=" + email 
-				+ ", password=" + password + "]";
+		return "[Company_id=" + id + ", name=" + name + ", email=" + email + "]";
 	}
 
 	@Override
@@ -0,0 +1,14 @@
+package couponManagementSystem.beans;
+
+/**
+ * Read only projection of a Company for list endpoints. Selects only the company columns, without the coupons
+ * collection and the password hash, and without managing the entities in the persistence context.
+ */
+public interface CompanyView {
+
+	int getId();
+
+	String getName();
+
+	String getEmail();
+}
@@ -4,19 +4,23 @@ import java.sql.Date;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 @Entity
-@Table (name="coupons")
+@Table (name="coupons", indexes = { @Index(name = "idx_coupons_end_date", columnList = "endDate"),
+		@Index(name = "idx_coupons_company_category_price", columnList = "company_id, category, price"),
+		@Index(name = "idx_coupons_company_price", columnList = "company_id, price") },
+		uniqueConstraints = @UniqueConstraint(name = "uk_coupons_company_title", columnNames = { "company_id", "title" }))
 public class Coupon {
 	
 	@Id
-	@GeneratedValue (strategy = GenerationType.IDENTITY)
+	@GeneratedValue(generator = "pooled_ids")
 	private int id;
 	@Column
 //	@Enumerated(EnumType.STRING)
@@ -135,7 +139,7 @@ public class Coupon {
 	public String toString() {
 		return "[Coupon id=" + id  + ", category=" + category + ", title=" + title
 				+ ", description=" + description + ", startDate=" + startDate + ", endDate=" + endDate + ", amount="
-				+ amount + ", price=" + price + ", image=" + image + ", companyId=" + company.getId()+"]";
+				+ amount + ", price=" + price + ", image=" + image + ", companyId=" + (company == null ? null : company.getId()) + "]";
 	}
 
 	@Override
@@ -0,0 +1,19 @@
+package couponManagementSystem.beans;
+
+/**
+ * Read only projection of the searchable columns of a Coupon, with its company id, for loading the CouponSearchIndex.
+ */
+public interface CouponSearchView {
+
+	int getId();
+
+	int getCompanyId();
+
+	CategoryType getCategory();
+
+	String getTitle();
+
+	String getDescription();
+
+	double getPrice();
+}
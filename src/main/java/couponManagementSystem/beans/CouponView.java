@@ -0,0 +1,28 @@
+package couponManagementSystem.beans;
+
+import java.sql.Date;
+
+/**
+ * Read only projection of a Coupon for paged and streamed list endpoints. Selects only the coupon columns, without
+ * joining the company and without managing the entities in the persistence context.
+ */
+public interface CouponView {
+
+	int getId();
+
+	CategoryType getCategory();
+
+	String getTitle();
+
+	String getDescription();
+
+	Date getStartDate();
+
+	Date getEndDate();
+
+	int getAmount();
+
+	double getPrice();
+
+	String getImage();
+}
@@ -6,7 +6,6 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
@@ -19,7 +18,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 public class Customer {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(generator = "pooled_ids")
 	private int id;
 	@Column
 	private String firstName;
@@ -29,7 +28,7 @@ public class Customer {
 	private String email;
 	@Column
 	private String password;
-	@ManyToMany (fetch=FetchType.EAGER, cascade = CascadeType.PERSIST)
+	@ManyToMany (fetch=FetchType.LAZY, cascade = CascadeType.PERSIST)
 	@JoinTable(name = "Customers_vs_Coupons")
 	@JsonIgnore
 	private Set<Coupon> coupons;
@@ -90,8 +89,7 @@ public class Customer {
 
 	@Override
 	public String toString() {
-		return "[Customer id=" + id + ", firstName=" + firstName + ", lastName=" + lastName + ", email=" + email
-				+ ", password=" + password + ", coupons=" + coupons + "]";
+		return "[Customer id=" + id + ", firstName=" + firstName + ", lastName=" + lastName + ", email=" + email + "]";
 	}
 
 	@Override
@@ -0,0 +1,16 @@
+package couponManagementSystem.beans;
+
+/**
+ * Read only projection of a Customer for list endpoints. Selects only the customer columns, without the coupons
+ * collection and the password hash, and without managing the entities in the persistence context.
+ */
+public interface CustomerView {
+
+	int getId();
+
+	String getFirstName();
+
+	String getLastName();
+
+	String getEmail();
+}
@@ -0,0 +1,65 @@
+package couponManagementSystem.beans;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * The result of a purchase request with an Idempotency-Key, returned again for retries of the request. The id is the
+ * customer id and the key, only the status and the body of the response are stored.
+ */
+@Entity
+@Table(name = "idempotency_keys", indexes = @Index(name = "idx_idempotency_keys_created", columnList = "createdAt"))
+public class IdempotencyRecord {
+
+	@Id
+	@Column(length = 80)
+	private String id;
+	@Column
+	private int couponId;
+	@Column
+	private int status;
+	@Column
+	private String body;
+	@Column
+	private long createdAt;
+
+	public IdempotencyRecord(String id, int couponId, int status, String body, long createdAt) {
+		this.id = id;
+		this.couponId = couponId;
+		this.status = status;
+		this.body = body;
+		this.createdAt = createdAt;
+	}
+
+	public IdempotencyRecord() {
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public int getCouponId() {
+		return couponId;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public String getBody() {
+		return body;
+	}
+
+	public long getCreatedAt() {
+		return createdAt;
+	}
+
+	@Override
+	public String toString() {
+		return "[IdempotencyRecord id=" + id + ", couponId=" + couponId + ", status=" + status + ", createdAt="
+				+ createdAt + "]";
+	}
+}
@@ -0,0 +1,63 @@
+package couponManagementSystem.beans;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import couponManagementSystem.login.ClientType;
+
+/**
+ * A login session shared between application instances (session.store=database). Only the client type and id (the
+ * principal of the session) are stored.
+ */
+@Entity
+@Table(name = "client_sessions", indexes = @Index(name = "idx_client_sessions_last_access", columnList = "lastAccessTime"))
+public class SessionRecord {
+
+	@Id
+	@Column(length = 36)
+	private String token;
+	@Column
+	private ClientType clientType;
+	@Column
+	private int clientId;
+	@Column
+	private long lastAccessTime;
+
+	public SessionRecord(String token, ClientType clientType, int clientId, long lastAccessTime) {
+		this.token = token;
+		this.clientType = clientType;
+		this.clientId = clientId;
+		this.lastAccessTime = lastAccessTime;
+	}
+
+	public SessionRecord() {
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public ClientType getClientType() {
+		return clientType;
+	}
+
+	public int getClientId() {
+		return clientId;
+	}
+
+	public long getLastAccessTime() {
+		return lastAccessTime;
+	}
+
+	public void setLastAccessTime(long lastAccessTime) {
+		this.lastAccessTime = lastAccessTime;
+	}
+
+	@Override
+	public String toString() {
+		return "[Session clientType=" + clientType + ", clientId=" + clientId + ", lastAccessTime=" + lastAccessTime + "]";
+	}
+}
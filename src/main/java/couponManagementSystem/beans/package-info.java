@@ -0,0 +1,19 @@
+/**
+ * The ids of the companies, customers and coupons are allocated by the pooled_ids generator: a row per entity table in
+ * the id_generator table holds the last allocated id, and Hibernate takes a block of IdAllocator.BLOCK_SIZE ids at a time
+ * (pooled-lo optimizer). Unlike auto increment (IDENTITY) ids, the ids are known before the insert, so Hibernate can
+ * batch inserts (hibernate.jdbc.batch_size).
+ */
+@GenericGenerator(name = "pooled_ids", strategy = "org.hibernate.id.enhanced.TableGenerator", parameters = {
+		@Parameter(name = "table_name", value = IdAllocator.TABLE),
+		@Parameter(name = "segment_column_name", value = IdAllocator.SEGMENT_COLUMN),
+		@Parameter(name = "value_column_name", value = IdAllocator.VALUE_COLUMN),
+		@Parameter(name = "prefer_entity_table_as_segment_value", value = "true"),
+		@Parameter(name = "increment_size", value = "" + IdAllocator.BLOCK_SIZE),
+		@Parameter(name = "optimizer", value = "pooled-lo") })
+package couponManagementSystem.beans;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import couponManagementSystem.db.IdAllocator;
@@ -1,10 +1,59 @@
 package couponManagementSystem.db;
 
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import couponManagementSystem.beans.Company;
+import couponManagementSystem.beans.CompanyView;
 
 public interface CompanyRepository extends JpaRepository<Company, Integer> {
 	Company findCompanyByEmail(String email);
 	Company findCompanyByName(String name);
+
+	/**
+	 * Point lookups on the unique name and email indexes. Values compare case insensitively under the default MySQL
+	 * collation.
+	 */
+	boolean existsByEmailOrName(String email, String name);
+
+	boolean existsByEmailAndIdNot(String email, int id);
+	List<CompanyView> findAllProjectedBy();
+
+	/**
+	 * Replaces the stored password (hash) without loading the company, used to upgrade passwords on login.
+	 */
+	@Transactional
+	@Modifying
+	@Query("update Company c set c.password = :password where c.id = :id")
+	int updatePassword(@Param("id") int id, @Param("password") String password);
+
+	/**
+	 * Deletes the company row only, without loading it. Its coupons and purchases must be deleted first.
+	 * @return number of rows deleted.
+	 */
+	@Modifying
+	@Query("delete from Company c where c.id = :id")
+	int deleteCompanyById(@Param("id") int id);
+
+	/**
+	 * Keyset page - the next page of companies with an id greater than the given cursor.
+	 */
+	Slice<CompanyView> findByIdGreaterThanOrderByIdAsc(int afterId, Pageable pageable);
+
+	/**
+	 * All companies read through a database cursor. Must be consumed inside a transaction and closed.
+	 */
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+	Stream<CompanyView> streamAllByOrderByIdAsc();
 }
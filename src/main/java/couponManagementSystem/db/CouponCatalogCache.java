@@ -0,0 +1,235 @@
+package couponManagementSystem.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import couponManagementSystem.beans.CategoryType;
+import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.beans.CouponView;
+
+/**
+ * The CouponCatalogCache is a bounded read-through cache of the coupon catalog in front of the CouponRepository. It
+ * holds single coupons by id, coupon lists (a company's coupons, a company's coupons of a category) and keyset pages of
+ * all coupons, the full catalog is never cached as one entry. Reads don't lock: the entries are in a ConcurrentHashMap
+ * and a hit only stamps its entry with the time. Once coupon.cache.max-size entries are cached, one thread evicts the
+ * least recently stamped tenth of them (an approximate LRU). Entries are reloaded after coupon.cache.ttl milliseconds.
+ * Every change to the catalog (adding, updating and deleting coupons, the expiration job, deleting a company) must call
+ * invalidate, which drops all entries now and again after the current transaction commits. Each load remembers the
+ * generation it started in, so a load that raced with an invalidation is not cached. A change to one coupon (its amount
+ * restocked) calls invalidate with the coupon id, which also tells the coupon listeners about it.
+ * The amount of a cached coupon may lag behind purchases by up to the ttl. Purchases never rely on it, the stock is
+ * taken by the Inventory.
+ */
+
+@Component
+public class CouponCatalogCache {
+
+	private final CouponRepository coupRepo;
+	private final int maxSize;
+	private final long ttl;
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicBoolean evicting = new AtomicBoolean();
+	private final List<IntConsumer> couponListeners = new CopyOnWriteArrayList<IntConsumer>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	public CouponCatalogCache(CouponRepository coupRepo, @Value("${coupon.cache.max-size:10000}") int maxSize,
+			@Value("${coupon.cache.ttl:60000}") long ttl) {
+		this.coupRepo = coupRepo;
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+	}
+
+	/**
+	 * @return the coupon with the given id.
+	 * @throws NoSuchElementException if there is no such coupon.
+	 */
+	public Coupon getCoupon(int id) {
+		Coupon coupon = get("id:" + id, () -> coupRepo.findById(id).orElse(null));
+		if (coupon == null)
+			throw new NoSuchElementException();
+		return coupon;
+	}
+
+	/**
+	 * @return the coupons with an id greater than afterId, ordered by id, at most size of them.
+	 */
+	public Slice<CouponView> getCouponsPage(int afterId, int size) {
+		return get("page:" + afterId + ":" + size,
+				() -> coupRepo.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, size)));
+	}
+
+	public List<Coupon> getCompanyCoupons(int companyId) {
+		return get("company:" + companyId, () -> Collections.unmodifiableList(coupRepo.findByCompanyId(companyId)));
+	}
+
+	public List<Coupon> getCompanyCouponsByCategory(int companyId, CategoryType category) {
+		return get("company:" + companyId + ":" + category,
+				() -> Collections.unmodifiableList(coupRepo.findByCompanyIdAndCategory(companyId, category)));
+	}
+
+	/**
+	 * Drops all cached entries, now and after the current transaction (if any) commits.
+	 */
+	public void invalidate() {
+		changed(this::clear);
+	}
+
+	/**
+	 * Drops all cached entries and calls the coupon listeners with the id of the changed coupon, now and after the
+	 * current transaction (if any) commits.
+	 */
+	public void invalidate(int couponId) {
+		changed(() -> {
+			clear();
+			for (IntConsumer listener : couponListeners)
+				listener.accept(couponId);
+		});
+	}
+
+	/**
+	 * Adds a listener that is called with the id of a coupon changed by invalidate(couponId).
+	 */
+	public void addCouponListener(IntConsumer listener) {
+		couponListeners.add(listener);
+	}
+
+	private void changed(Runnable change) {
+		change.run();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					change.run();
+				}
+			});
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T get(String key, Supplier<T> loader) {
+		long now = System.currentTimeMillis();
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			if (now - entry.loadedAt < ttl) {
+				hits.increment();
+				// one write per entry and millisecond, hot entries aren't written by every hit
+				if (entry.lastAccess != now)
+					entry.lastAccess = now;
+				return (T) entry.value;
+			}
+			if (entries.remove(key, entry))
+				expirations.increment();
+		}
+		misses.increment();
+		long loadGeneration = generation.get();
+		T value = loader.get();
+		if (value != null) {
+			Entry loaded = new Entry(value, now);
+			entries.put(key, loaded);
+			// an invalidation during the load, the value may be stale
+			if (generation.get() != loadGeneration)
+				entries.remove(key, loaded);
+			else if (entries.size() > maxSize)
+				evict();
+		}
+		return value;
+	}
+
+	/**
+	 * Evicts the least recently used entries down to nine tenths of the maximum size. Concurrent calls return at once,
+	 * the cache may exceed its maximum size by the entries loaded during an eviction.
+	 */
+	private void evict() {
+		if (!evicting.compareAndSet(false, true))
+			return;
+		try {
+			int excess = entries.size() - (maxSize - maxSize / 10);
+			if (excess <= 0)
+				return;
+			// the access times are copied first, hits keep stamping the entries while they are sorted
+			List<Map.Entry<String, Entry>> cached = new ArrayList<Map.Entry<String, Entry>>(entries.entrySet());
+			long[] lastAccess = new long[cached.size()];
+			for (int i = 0; i < lastAccess.length; i++)
+				lastAccess[i] = cached.get(i).getValue().lastAccess;
+			long[] sorted = lastAccess.clone();
+			Arrays.sort(sorted);
+			long oldest = sorted[Math.min(excess, sorted.length) - 1];
+			for (int i = 0; i < lastAccess.length && excess > 0; i++) {
+				if (lastAccess[i] <= oldest && entries.remove(cached.get(i).getKey(), cached.get(i).getValue())) {
+					evictions.increment();
+					excess--;
+				}
+			}
+		} finally {
+			evicting.set(false);
+		}
+	}
+
+	private void clear() {
+		generation.incrementAndGet();
+		entries.clear();
+		invalidations.increment();
+	}
+
+	public int getSize() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getExpirations() {
+		return expirations.sum();
+	}
+
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+
+	private static final class Entry {
+
+		private final Object value;
+		private final long loadedAt;
+		private volatile long lastAccess;
+
+		Entry(Object value, long loadedAt) {
+			this.value = value;
+			this.loadedAt = loadedAt;
+			this.lastAccess = loadedAt;
+		}
+	}
+}
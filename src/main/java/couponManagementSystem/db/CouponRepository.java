@@ -1,9 +1,210 @@
 package couponManagementSystem.db;
 
+import java.sql.Date;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import couponManagementSystem.beans.CategoryType;
 import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.beans.CouponSearchView;
+import couponManagementSystem.beans.CouponView;
 
 public interface CouponRepository extends JpaRepository<Coupon, Integer> {
 
+	/**
+	 * All coupons with their company fetched in the same select.
+	 */
+	@Override
+	@EntityGraph(attributePaths = "company")
+	List<Coupon> findAll();
+
+	List<Coupon> findByCompanyId(int companyId);
+
+	/**
+	 * Point lookups on the unique (company_id, title) index. Titles compare case insensitively under the default
+	 * MySQL collation.
+	 */
+	boolean existsByCompanyIdAndTitle(int companyId, String title);
+
+	boolean existsByCompanyIdAndTitleAndIdNot(int companyId, String title, int id);
+
+	@Query("select c.title from Coupon c where c.company.id = :companyId")
+	List<String> findTitlesByCompanyId(@Param("companyId") int companyId);
+
+	@Query("select c.id from Coupon c where c.company.id = :companyId")
+	List<Integer> findIdsByCompanyId(@Param("companyId") int companyId);
+
+	List<Coupon> findByCompanyIdAndCategory(int companyId, CategoryType category);
+
+	List<Coupon> findByCompanyIdAndPriceLessThanEqual(int companyId, double maxPrice);
+
+	/**
+	 * Company coupons filtered by any combination of category, price range and validity date window. Null
+	 * parameters are ignored. Served by the (company_id, category, price) and (company_id, price) indexes.
+	 */
+	@Query("select c from Coupon c where c.company.id = :companyId"
+			+ " and (:category is null or c.category = :category)"
+			+ " and (:minPrice is null or c.price >= :minPrice) and (:maxPrice is null or c.price <= :maxPrice)"
+			+ " and (:fromDate is null or c.endDate >= :fromDate) and (:toDate is null or c.startDate <= :toDate)"
+			+ " order by c.id")
+	List<Coupon> findCompanyCouponsByFilter(@Param("companyId") int companyId, @Param("category") CategoryType category,
+			@Param("minPrice") Double minPrice, @Param("maxPrice") Double maxPrice, @Param("fromDate") Date fromDate,
+			@Param("toDate") Date toDate);
+
+	@Query("select c from Customer cust join cust.coupons c join fetch c.company where cust.id = :customerId"
+			+ " and c.category = :category")
+	List<Coupon> findCustomerCouponsByCategory(@Param("customerId") int customerId,
+			@Param("category") CategoryType category);
+
+	@Query("select c from Customer cust join cust.coupons c join fetch c.company where cust.id = :customerId"
+			+ " and c.price <= :maxPrice")
+	List<Coupon> findCustomerCouponsByMaxPrice(@Param("customerId") int customerId, @Param("maxPrice") double maxPrice);
+
+	/**
+	 * Customer coupons filtered by any combination of category, price range and validity date window. Null
+	 * parameters are ignored.
+	 */
+	@Query("select c from Customer cust join cust.coupons c join fetch c.company where cust.id = :customerId"
+			+ " and (:category is null or c.category = :category)"
+			+ " and (:minPrice is null or c.price >= :minPrice) and (:maxPrice is null or c.price <= :maxPrice)"
+			+ " and (:fromDate is null or c.endDate >= :fromDate) and (:toDate is null or c.startDate <= :toDate)"
+			+ " order by c.id")
+	List<Coupon> findCustomerCouponsByFilter(@Param("customerId") int customerId,
+			@Param("category") CategoryType category, @Param("minPrice") Double minPrice,
+			@Param("maxPrice") Double maxPrice, @Param("fromDate") Date fromDate, @Param("toDate") Date toDate);
+
+	/**
+	 * Keyset page - the next page of coupons with an id greater than the given cursor.
+	 */
+	Slice<CouponView> findByIdGreaterThanOrderByIdAsc(int afterId, Pageable pageable);
+
+	/**
+	 * Keyset page - the next page of a company's coupons with an id greater than the given cursor.
+	 */
+	Slice<CouponView> findByCompanyIdAndIdGreaterThanOrderByIdAsc(int companyId, int afterId, Pageable pageable);
+
+	/**
+	 * All coupons read through a database cursor. Must be consumed inside a transaction and closed.
+	 */
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+	Stream<CouponView> streamAllByOrderByIdAsc();
+
+	/**
+	 * All coupons of a company read through a database cursor. Must be consumed inside a transaction and closed.
+	 */
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+	Stream<CouponView> streamByCompanyIdOrderByIdAsc(int companyId);
+
+	/**
+	 * The searchable columns of all coupons, read through a database cursor. Must be consumed inside a transaction and
+	 * closed.
+	 */
+	@Query("select c.id as id, c.company.id as companyId, c.category as category, c.title as title,"
+			+ " c.description as description, c.price as price from Coupon c order by c.id")
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+	Stream<CouponSearchView> streamSearchViewsByOrderByIdAsc();
+
+	/**
+	 * The coupons purchased by a customer, read from the join table without loading the customer.
+	 */
+	@Query("select c from Customer cust join cust.coupons c join fetch c.company where cust.id = :customerId")
+	List<Coupon> findCustomerCoupons(@Param("customerId") int customerId);
+
+	/**
+	 * Conditional stock decrement. The amount is only reduced while it is above 0, so concurrent purchases
+	 * can never drive the stock negative.
+	 * @return 1 if a coupon was taken from the stock, 0 if the coupon is sold out (or doesn't exist).
+	 */
+	@Modifying
+	@Query("update Coupon c set c.amount = c.amount - 1 where c.id = :couponId and c.amount > 0")
+	int decrementAmount(@Param("couponId") int couponId);
+
+	/**
+	 * The stock of a coupon, without loading the coupon.
+	 * @return the amount, or null if the coupon doesn't exist.
+	 */
+	@Query("select c.amount from Coupon c where c.id = :couponId")
+	Integer findAmountById(@Param("couponId") int couponId);
+
+	/**
+	 * Point lookup on the Customers_vs_Coupons primary key (customer_id, coupons_id).
+	 */
+	@Query(value = "select count(*) from customers_vs_coupons where customer_id = :customerId and coupons_id = :couponId",
+			nativeQuery = true)
+	int countPurchases(@Param("customerId") int customerId, @Param("couponId") int couponId);
+
+	/**
+	 * Ids of the customers that purchased a coupon, without loading them.
+	 */
+	@Query(value = "select customer_id from customers_vs_coupons where coupons_id = :couponId", nativeQuery = true)
+	List<Integer> findPurchasers(@Param("couponId") int couponId);
+
+	/**
+	 * Insert a purchase row directly into the join table, without loading the customer's coupon collection.
+	 */
+	@Modifying
+	@Query(value = "insert into customers_vs_coupons (customer_id, coupons_id) values (:customerId, :couponId)",
+			nativeQuery = true)
+	int insertPurchase(@Param("customerId") int customerId, @Param("couponId") int couponId);
+
+	/**
+	 * Ids of coupons whose end date has passed, served by the index on endDate. Used with a page size to
+	 * expire coupons in bounded batches. Unordered, so a batch stops reading the index after page size rows instead of
+	 * sorting all the expired coupons; each batch deletes the coupons it found.
+	 */
+	@Query("select c.id from Coupon c where c.endDate < :now")
+	List<Integer> findExpiredCouponIds(@Param("now") Date now, Pageable pageable);
+
+	/**
+	 * Set based delete of all purchases of the given coupons from the join table.
+	 * @return number of purchase rows deleted.
+	 */
+	@Modifying
+	@Query(value = "delete from customers_vs_coupons where coupons_id in (:couponIds)", nativeQuery = true)
+	int deletePurchasesByCouponIds(@Param("couponIds") Collection<Integer> couponIds);
+
+	/**
+	 * Set based delete of all purchases of a company's coupons from the join table.
+	 * @return number of purchase rows deleted.
+	 */
+	@Modifying
+	@Query(value = "delete from customers_vs_coupons where coupons_id in (select id from coupons where company_id = :companyId)",
+			nativeQuery = true)
+	int deletePurchasesByCompanyId(@Param("companyId") int companyId);
+
+	/**
+	 * Set based delete of all purchases of a customer from the join table.
+	 * @return number of purchase rows deleted.
+	 */
+	@Modifying
+	@Query(value = "delete from customers_vs_coupons where customer_id = :customerId", nativeQuery = true)
+	int deletePurchasesByCustomerId(@Param("customerId") int customerId);
+
+	/**
+	 * Set based delete of all coupons of a company. Purchases must be deleted first.
+	 * @return number of coupon rows deleted.
+	 */
+	@Modifying
+	@Query("delete from Coupon c where c.company.id = :companyId")
+	int deleteCouponsByCompanyId(@Param("companyId") int companyId);
+
+	/**
+	 * Set based delete of the given coupons. Purchases must be deleted first.
+	 * @return number of coupon rows deleted.
+	 */
+	@Modifying
+	@Query("delete from Coupon c where c.id in :couponIds")
+	int deleteCouponsByIds(@Param("couponIds") Collection<Integer> couponIds);
 }
@@ -0,0 +1,746 @@
+package couponManagementSystem.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import couponManagementSystem.beans.CategoryType;
+import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.beans.CouponSearchView;
+
+/**
+ * The CouponSearchIndex is an in-process inverted index of the coupons' titles and descriptions, for searches that
+ * don't touch the database. Every coupon gets a document slot holding its company, category, price and title, and
+ * every word (lower case letters and digits) a posting list of the slots that contain it, with the word's weight in
+ * the document (a title word counts search.title-boost times). A search matches the coupons containing all the words
+ * of the query, the last word is also a prefix while it's being typed (up to search.prefix-terms completions), ranks
+ * them with BM25 and counts the matches per category, company and price bucket (search.price-buckets).
+ * The index is loaded from the database on startup and then updated by every change to the coupons (adding,
+ * updating, deleting coupons and companies, importing and the expiration job), after the transaction of the change
+ * commits. A changed coupon gets a new slot and its old slot is marked deleted, the deleted slots are dropped from the
+ * posting lists once they outnumber the coupons. Each instance updates its index with its own changes only, with
+ * several instances search.rebuild-cron reloads the index from the database periodically.
+ */
+
+@Component
+public class CouponSearchIndex implements SmartInitializingSingleton {
+
+	private static final Logger log = LoggerFactory.getLogger(CouponSearchIndex.class);
+
+	private static final int MAX_FACET_COMPANIES = 20;
+	// BM25 parameters
+	private static final double K1 = 1.2;
+	private static final double B = 0.75;
+
+	private final CouponRepository coupRepo;
+	private final TransactionTemplate transactionTemplate;
+	private final int titleBoost;
+	private final int prefixTerms;
+	private final double[] priceBuckets;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private Index index = new Index();
+	// the changes made while the index is rebuilt, applied to the new index
+	private List<Consumer<Index>> changesDuringRebuild;
+
+	public CouponSearchIndex(CouponRepository coupRepo, PlatformTransactionManager transactionManager,
+			@Value("${search.title-boost:3}") int titleBoost,
+			@Value("${search.prefix-terms:64}") int prefixTerms,
+			@Value("${search.price-buckets:10,25,50,100,250}") double[] priceBuckets) {
+		this.coupRepo = coupRepo;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setReadOnly(true);
+		this.titleBoost = Math.max(1, titleBoost);
+		this.prefixTerms = Math.max(1, prefixTerms);
+		this.priceBuckets = priceBuckets.clone();
+		Arrays.sort(this.priceBuckets);
+	}
+
+	/**
+	 * Loads the index once all beans are created (the repository calls are timed by the MetricsAspect, whose meter
+	 * registry depends on beans that depend on the index), before the web server takes requests.
+	 */
+	@Override
+	public void afterSingletonsInstantiated() {
+		rebuild();
+	}
+
+	/**
+	 * Indexes an added or updated coupon, after the current transaction (if any) commits.
+	 */
+	public void put(Coupon coupon) {
+		put(coupon.getId(), coupon.getCompany().getId(), coupon.getCategory(), coupon.getTitle(),
+				coupon.getDescription(), coupon.getPrice());
+	}
+
+	public void put(int id, int companyId, CategoryType category, String title, String description, double price) {
+		change(index -> index.put(id, companyId, category, title, description, price));
+	}
+
+	/**
+	 * Removes deleted coupons, after the current transaction (if any) commits.
+	 */
+	public void remove(Collection<Integer> ids) {
+		List<Integer> removed = new ArrayList<Integer>(ids);
+		change(index -> {
+			for (int id : removed)
+				index.remove(id);
+		});
+	}
+
+	/**
+	 * Removes the coupons of a deleted company, after the current transaction (if any) commits.
+	 */
+	public void removeCompany(int companyId) {
+		change(index -> index.removeCompany(companyId));
+	}
+
+	/**
+	 * Searches the coupons. Null filters are ignored, an empty text matches all coupons.
+	 * @param text - words that must all be in the title or description, the last one may be the start of a word.
+	 * @return the page of matches from offset, best first, with the number of matches and the facets.
+	 */
+	public SearchResult search(String text, CategoryType category, Integer companyId, Double minPrice,
+			Double maxPrice, int offset, int limit) {
+		lock.readLock().lock();
+		try {
+			return index.search(text == null ? "" : text, category, companyId, minPrice, maxPrice, offset, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return up to limit words that start with the prefix, the words of the most coupons first.
+	 */
+	public List<String> suggest(String prefix, int limit) {
+		lock.readLock().lock();
+		try {
+			return index.suggest(prefix == null ? "" : prefix.toLowerCase(Locale.ROOT), limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of indexed coupons.
+	 */
+	public int getSize() {
+		lock.readLock().lock();
+		try {
+			return index.live;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Reloads the index from the database. Searches use the current index until the new one is complete, changes made
+	 * meanwhile are applied to both.
+	 */
+	@Scheduled(cron = "${search.rebuild-cron:-}")
+	public void rebuild() {
+		long start = System.currentTimeMillis();
+		lock.writeLock().lock();
+		try {
+			if (changesDuringRebuild != null)
+				return;
+			changesDuringRebuild = new ArrayList<Consumer<Index>>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		Index rebuilt = new Index();
+		boolean loaded = false;
+		try {
+			transactionTemplate.execute(status -> {
+				try (Stream<CouponSearchView> coupons = coupRepo.streamSearchViewsByOrderByIdAsc()) {
+					coupons.forEach(coupon -> rebuilt.put(coupon.getId(), coupon.getCompanyId(), coupon.getCategory(),
+							coupon.getTitle(), coupon.getDescription(), coupon.getPrice()));
+				}
+				return null;
+			});
+			loaded = true;
+		} finally {
+			lock.writeLock().lock();
+			try {
+				if (loaded) {
+					for (Consumer<Index> change : changesDuringRebuild)
+						change.accept(rebuilt);
+					index = rebuilt;
+				}
+				changesDuringRebuild = null;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		log.info("Indexed {} coupons, {} words in {} ms", rebuilt.live, rebuilt.terms.size(),
+				System.currentTimeMillis() - start);
+	}
+
+	private void change(Consumer<Index> change) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					apply(change);
+				}
+			});
+		} else
+			apply(change);
+	}
+
+	private void apply(Consumer<Index> change) {
+		lock.writeLock().lock();
+		try {
+			change.accept(index);
+			if (changesDuringRebuild != null)
+				changesDuringRebuild.add(change);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Lower case words of letters and digits.
+	 */
+	static List<String> words(String text) {
+		List<String> words = new ArrayList<String>();
+		if (text == null)
+			return words;
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (wordChar && start < 0)
+				start = i;
+			else if (!wordChar && start >= 0) {
+				words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * The posting list of a word: the slots that contain it, in ascending order, and the word's weight in each.
+	 */
+	private static final class Postings {
+
+		private int[] slots = new int[4];
+		private short[] weights = new short[4];
+		private int size;
+
+		void add(int slot, int weight) {
+			if (size == slots.length) {
+				slots = Arrays.copyOf(slots, size * 2);
+				weights = Arrays.copyOf(weights, size * 2);
+			}
+			slots[size] = slot;
+			weights[size] = (short) Math.min(weight, Short.MAX_VALUE);
+			size++;
+		}
+	}
+
+	/**
+	 * The matches of a query word: slots in ascending order with their scores. The scores of a single word are computed
+	 * when they are needed, from the word's weights, so the matches of a common word cost nothing until a rare word
+	 * narrows them down.
+	 */
+	private static final class Matches {
+
+		private final int[] slots;
+		private final int size;
+		// the scores of merged words, or null to compute them from the weights
+		private final double[] scores;
+		private final short[] weights;
+		private final int[] lengths;
+		private final double idf;
+		private final double averageLength;
+
+		Matches(int[] slots, double[] scores, int size) {
+			this.slots = slots;
+			this.scores = scores;
+			this.size = size;
+			this.weights = null;
+			this.lengths = null;
+			this.idf = 0;
+			this.averageLength = 0;
+		}
+
+		Matches(Postings postings, int[] lengths, int documents, double averageLength) {
+			this.slots = postings.slots;
+			this.size = postings.size;
+			this.scores = null;
+			this.weights = postings.weights;
+			this.lengths = lengths;
+			this.idf = Math.log(1 + (documents - size + 0.5) / (size + 0.5));
+			this.averageLength = averageLength;
+		}
+
+		/**
+		 * @return the BM25 score of the i-th slot.
+		 */
+		double score(int i) {
+			if (scores != null)
+				return scores[i];
+			double weight = weights[i];
+			double normalization = 1 - B + B * lengths[slots[i]] / averageLength;
+			return idf * weight * (K1 + 1) / (weight + K1 * normalization);
+		}
+
+		/**
+		 * @return the position of the first slot not below the given slot, searched from position from by doubling
+		 *         the step and then bisecting, so a short list skips through a long one.
+		 */
+		int seek(int slot, int from) {
+			int low = from;
+			int step = 1;
+			while (low + step < size && slots[low + step] < slot) {
+				low += step;
+				step <<= 1;
+			}
+			int high = Math.min(low + step, size);
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (slots[middle] < slot)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			return low;
+		}
+
+		/**
+		 * @param words - the matches of the words, the shortest first.
+		 * @return the slots in all, with the sum of their scores.
+		 */
+		static Matches and(List<Matches> words) {
+			Matches first = words.get(0);
+			if (words.size() == 1)
+				return first;
+			int[] slots = new int[first.size];
+			double[] scores = new double[first.size];
+			int[] positions = new int[words.size()];
+			int count = 0;
+			next: for (int i = 0; i < first.size; i++) {
+				int slot = first.slots[i];
+				double score = first.score(i);
+				for (int w = 1; w < words.size(); w++) {
+					Matches other = words.get(w);
+					int position = other.seek(slot, positions[w]);
+					positions[w] = position;
+					if (position == other.size)
+						break next;
+					if (other.slots[position] != slot)
+						continue next;
+					score += other.score(position);
+				}
+				slots[count] = slot;
+				scores[count++] = score;
+			}
+			return new Matches(slots, scores, count);
+		}
+
+		/**
+		 * @return the slots in either, with the higher of their scores.
+		 */
+		Matches or(Matches other) {
+			int[] slots = new int[size + other.size];
+			double[] scores = new double[slots.length];
+			int count = 0;
+			int i = 0;
+			int j = 0;
+			while (i < size || j < other.size) {
+				if (j == other.size || i < size && this.slots[i] < other.slots[j]) {
+					slots[count] = this.slots[i];
+					scores[count++] = score(i++);
+				} else if (i == size || other.slots[j] < this.slots[i]) {
+					slots[count] = other.slots[j];
+					scores[count++] = other.score(j++);
+				} else {
+					slots[count] = this.slots[i];
+					scores[count++] = Math.max(score(i++), other.score(j++));
+				}
+			}
+			return new Matches(slots, scores, count);
+		}
+	}
+
+	/**
+	 * The documents and the posting lists. Not thread safe, guarded by the lock.
+	 */
+	private final class Index {
+
+		private final TreeMap<String, Postings> terms = new TreeMap<String, Postings>();
+		private final HashMap<Integer, Integer> slotsByCouponId = new HashMap<Integer, Integer>();
+		// companies are numbered in the order they are indexed, so the facet counts are an array
+		private final HashMap<Integer, Integer> companiesById = new HashMap<Integer, Integer>();
+		private int[] companyIds = new int[64];
+		private int[] couponIds = new int[1024];
+		private int[] companies = new int[1024];
+		private byte[] categories = new byte[1024];
+		private double[] prices = new double[1024];
+		private byte[] priceRanges = new byte[1024];
+		private String[] titles = new String[1024];
+		private int[] lengths = new int[1024];
+		private final BitSet deleted = new BitSet();
+		private int slots;
+		private int live;
+		private long totalLength;
+
+		void put(int id, int companyId, CategoryType category, String title, String description, double price) {
+			remove(id);
+			if (slots == couponIds.length)
+				grow();
+			int slot = slots++;
+			couponIds[slot] = id;
+			companies[slot] = company(companyId);
+			categories[slot] = (byte) category.ordinal();
+			prices[slot] = price;
+			priceRanges[slot] = (byte) priceBucket(price);
+			titles[slot] = title;
+			Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+			for (String word : words(title))
+				weights.merge(word, titleBoost, Integer::sum);
+			for (String word : words(description))
+				weights.merge(word, 1, Integer::sum);
+			int length = 0;
+			for (Map.Entry<String, Integer> weight : weights.entrySet()) {
+				terms.computeIfAbsent(weight.getKey(), word -> new Postings()).add(slot, weight.getValue());
+				length += weight.getValue();
+			}
+			lengths[slot] = Math.max(1, length);
+			totalLength += lengths[slot];
+			slotsByCouponId.put(id, slot);
+			live++;
+		}
+
+		void remove(int id) {
+			Integer slot = slotsByCouponId.remove(id);
+			if (slot == null)
+				return;
+			deleted.set(slot);
+			titles[slot] = null;
+			totalLength -= lengths[slot];
+			live--;
+			if (slots - live > Math.max(live, 1024))
+				compact();
+		}
+
+		void removeCompany(int companyId) {
+			Integer company = companiesById.get(companyId);
+			if (company == null)
+				return;
+			// collected first, a removal may compact the slots
+			List<Integer> ids = new ArrayList<Integer>();
+			for (int slot = 0; slot < slots; slot++) {
+				if (!deleted.get(slot) && companies[slot] == company)
+					ids.add(couponIds[slot]);
+			}
+			for (int id : ids)
+				remove(id);
+		}
+
+		SearchResult search(String text, CategoryType category, Integer companyId, Double minPrice, Double maxPrice,
+				int offset, int limit) {
+			List<String> words = words(text);
+			// the last word is still being typed unless the text ends with a separator
+			boolean lastIsPrefix = !words.isEmpty() && Character.isLetterOrDigit(text.charAt(text.length() - 1));
+			Matches matches = null;
+			if (!words.isEmpty()) {
+				List<Matches> perWord = new ArrayList<Matches>(words.size());
+				for (int i = 0; i < words.size(); i++)
+					perWord.add(match(words.get(i), lastIsPrefix && i == words.size() - 1));
+				perWord.sort(Comparator.comparingInt(m -> m.size));
+				matches = Matches.and(perWord);
+			}
+
+			// -1 matches no company
+			int company = companyId == null ? -1 : companiesById.getOrDefault(companyId, -1);
+			if (companyId != null && company < 0)
+				matches = new Matches(new int[0], new double[0], 0);
+			int[] categoryCounts = new int[CategoryType.values().length];
+			int[] companyCounts = new int[companiesById.size()];
+			int[] priceCounts = new int[priceBuckets.length + 1];
+			int total = 0;
+			Comparator<Hit> worstFirst = Comparator.comparingDouble(Hit::getScore)
+					.thenComparing(Comparator.comparingInt(Hit::getId).reversed());
+			PriorityQueue<Hit> top = new PriorityQueue<Hit>(worstFirst);
+			int wanted = Math.max(0, offset) + Math.max(0, limit);
+			int count = matches == null ? slots : matches.size;
+			for (int i = 0; i < count; i++) {
+				int slot = matches == null ? i : matches.slots[i];
+				if (deleted.get(slot) || category != null && categories[slot] != category.ordinal()
+						|| companyId != null && companies[slot] != company
+						|| minPrice != null && prices[slot] < minPrice || maxPrice != null && prices[slot] > maxPrice)
+					continue;
+				total++;
+				categoryCounts[categories[slot]]++;
+				companyCounts[companies[slot]]++;
+				priceCounts[priceRanges[slot]]++;
+				double score = matches == null ? 0 : matches.score(i);
+				// ties go to the lower coupon id
+				if (top.size() < wanted || wanted > 0 && (score > top.peek().getScore()
+						|| score == top.peek().getScore() && couponIds[slot] < top.peek().getId())) {
+					top.add(hit(slot, score));
+					if (top.size() > wanted)
+						top.poll();
+				}
+			}
+			List<Hit> hits = new ArrayList<Hit>(top);
+			hits.sort(worstFirst.reversed());
+			hits = hits.subList(Math.min(Math.max(0, offset), hits.size()), hits.size());
+			return new SearchResult(total, hits, facets(categoryCounts, companyCounts, priceCounts));
+		}
+
+		List<String> suggest(String prefix, int limit) {
+			if (prefix.isEmpty())
+				return Collections.emptyList();
+			List<Map.Entry<String, Postings>> completions = new ArrayList<Map.Entry<String, Postings>>(
+					terms.subMap(prefix, prefix + Character.MAX_VALUE).entrySet());
+			completions.sort(Comparator.comparingInt((Map.Entry<String, Postings> term) -> term.getValue().size)
+					.reversed().thenComparing(Map.Entry::getKey));
+			List<String> words = new ArrayList<String>(Math.min(limit, completions.size()));
+			for (int i = 0; i < completions.size() && i < limit; i++)
+				words.add(completions.get(i).getKey());
+			return words;
+		}
+
+		/**
+		 * @return the slots with the word, or with words starting with it, scored with BM25.
+		 */
+		private Matches match(String word, boolean prefix) {
+			Matches matches = new Matches(new int[0], new double[0], 0);
+			if (!prefix) {
+				Postings postings = terms.get(word);
+				return postings == null ? matches : score(postings);
+			}
+			SortedMap<String, Postings> completions = terms.subMap(word, word + Character.MAX_VALUE);
+			List<Matches> expanded = new ArrayList<Matches>();
+			for (Postings postings : completions.values()) {
+				expanded.add(score(postings));
+				if (expanded.size() == prefixTerms)
+					break;
+			}
+			if (expanded.isEmpty())
+				return matches;
+			// merged in pairs, so every slot is copied log(words) times
+			while (expanded.size() > 1) {
+				List<Matches> merged = new ArrayList<Matches>((expanded.size() + 1) / 2);
+				for (int i = 0; i < expanded.size(); i += 2)
+					merged.add(i + 1 < expanded.size() ? expanded.get(i).or(expanded.get(i + 1)) : expanded.get(i));
+				expanded = merged;
+			}
+			return expanded.get(0);
+		}
+
+		private Matches score(Postings postings) {
+			return new Matches(postings, lengths, live, live == 0 ? 1 : (double) totalLength / live);
+		}
+
+		private Hit hit(int slot, double score) {
+			return new Hit(couponIds[slot], companyIds[companies[slot]], CategoryType.values()[categories[slot]],
+					titles[slot], prices[slot], score);
+		}
+
+		private int company(int companyId) {
+			return companiesById.computeIfAbsent(companyId, id -> {
+				int company = companiesById.size();
+				if (company == companyIds.length)
+					companyIds = Arrays.copyOf(companyIds, company * 2);
+				companyIds[company] = id;
+				return company;
+			});
+		}
+
+		private int priceBucket(double price) {
+			int bucket = Arrays.binarySearch(priceBuckets, price);
+			// a price on a boundary belongs to the bucket above it
+			return bucket >= 0 ? bucket + 1 : -bucket - 1;
+		}
+
+		private Map<String, Map<String, Integer>> facets(int[] categoryCounts, int[] companyCounts, int[] priceCounts) {
+			Map<String, Integer> byCategory = new LinkedHashMap<String, Integer>();
+			for (CategoryType category : CategoryType.values())
+				if (categoryCounts[category.ordinal()] > 0)
+					byCategory.put(category.name(), categoryCounts[category.ordinal()]);
+			Map<String, Integer> byCompany = new LinkedHashMap<String, Integer>();
+			List<Integer> matched = new ArrayList<Integer>();
+			for (int company = 0; company < companyCounts.length; company++)
+				if (companyCounts[company] > 0)
+					matched.add(company);
+			matched.sort(Comparator.comparingInt((Integer company) -> companyCounts[company]).reversed()
+					.thenComparingInt(company -> companyIds[company]));
+			for (int company : matched.subList(0, Math.min(MAX_FACET_COMPANIES, matched.size())))
+				byCompany.put(Integer.toString(companyIds[company]), companyCounts[company]);
+			Map<String, Integer> byPrice = new LinkedHashMap<String, Integer>();
+			for (int i = 0; i < priceCounts.length; i++)
+				if (priceCounts[i] > 0)
+					byPrice.put(priceBucketName(i), priceCounts[i]);
+			Map<String, Map<String, Integer>> facets = new LinkedHashMap<String, Map<String, Integer>>();
+			facets.put("category", byCategory);
+			facets.put("company", byCompany);
+			facets.put("price", byPrice);
+			return facets;
+		}
+
+		private String priceBucketName(int bucket) {
+			if (bucket == priceBuckets.length)
+				return priceBuckets.length == 0 ? "all" : bound(priceBuckets[bucket - 1]) + "+";
+			return (bucket == 0 ? "0" : bound(priceBuckets[bucket - 1])) + "-" + bound(priceBuckets[bucket]);
+		}
+
+		private String bound(double price) {
+			return price == Math.rint(price) ? Long.toString((long) price) : Double.toString(price);
+		}
+
+		private void grow() {
+			int capacity = couponIds.length * 2;
+			couponIds = Arrays.copyOf(couponIds, capacity);
+			companies = Arrays.copyOf(companies, capacity);
+			categories = Arrays.copyOf(categories, capacity);
+			prices = Arrays.copyOf(prices, capacity);
+			priceRanges = Arrays.copyOf(priceRanges, capacity);
+			titles = Arrays.copyOf(titles, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+		}
+
+		/**
+		 * Drops the deleted slots. The slots keep their order, so the posting lists stay sorted.
+		 */
+		private void compact() {
+			int[] newSlots = new int[slots];
+			int next = 0;
+			for (int slot = 0; slot < slots; slot++) {
+				if (deleted.get(slot)) {
+					newSlots[slot] = -1;
+					continue;
+				}
+				newSlots[slot] = next;
+				couponIds[next] = couponIds[slot];
+				companies[next] = companies[slot];
+				categories[next] = categories[slot];
+				prices[next] = prices[slot];
+				priceRanges[next] = priceRanges[slot];
+				titles[next] = titles[slot];
+				lengths[next] = lengths[slot];
+				slotsByCouponId.put(couponIds[next], next);
+				next++;
+			}
+			Arrays.fill(titles, next, slots, null);
+			slots = next;
+			deleted.clear();
+			terms.values().removeIf(postings -> {
+				int size = 0;
+				for (int i = 0; i < postings.size; i++) {
+					int slot = newSlots[postings.slots[i]];
+					if (slot >= 0) {
+						postings.slots[size] = slot;
+						postings.weights[size++] = postings.weights[i];
+					}
+				}
+				postings.size = size;
+				return size == 0;
+			});
+		}
+	}
+
+	/**
+	 * A page of search results, the number of matching coupons and the facets: the number of matching coupons per
+	 * category, company (the companies with the most) and price bucket.
+	 */
+	public static final class SearchResult {
+
+		private final int total;
+		private final List<Hit> hits;
+		private final Map<String, Map<String, Integer>> facets;
+
+		SearchResult(int total, List<Hit> hits, Map<String, Map<String, Integer>> facets) {
+			this.total = total;
+			this.hits = hits;
+			this.facets = facets;
+		}
+
+		public int getTotal() {
+			return total;
+		}
+
+		public List<Hit> getHits() {
+			return hits;
+		}
+
+		public Map<String, Map<String, Integer>> getFacets() {
+			return facets;
+		}
+	}
+
+	/**
+	 * A matching coupon, with its relevance score (0 without search words).
+	 */
+	public static final class Hit {
+
+		private final int id;
+		private final int companyId;
+		private final CategoryType category;
+		private final String title;
+		private final double price;
+		private final double score;
+
+		Hit(int id, int companyId, CategoryType category, String title, double price, double score) {
+			this.id = id;
+			this.companyId = companyId;
+			this.category = category;
+			this.title = title;
+			this.price = price;
+			this.score = score;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public int getCompanyId() {
+			return companyId;
+		}
+
+		public CategoryType getCategory() {
+			return category;
+		}
+
+		public String getTitle() {
+			return title;
+		}
+
+		public double getPrice() {
+			return price;
+		}
+
+		public double getScore() {
+			return score;
+		}
+	}
+}
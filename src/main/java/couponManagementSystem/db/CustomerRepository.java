@@ -1,10 +1,58 @@
 package couponManagementSystem.db;
 
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import couponManagementSystem.beans.Customer;
+import couponManagementSystem.beans.CustomerView;
 
 public interface CustomerRepository extends JpaRepository<Customer, Integer> {
 	Customer findCustomerByEmail(String email);
 
+	/**
+	 * Point lookups on the unique email index. Emails compare case insensitively under the default MySQL collation.
+	 */
+	boolean existsByEmail(String email);
+
+	boolean existsByEmailAndIdNot(String email, int id);
+	List<CustomerView> findAllProjectedBy();
+
+	/**
+	 * Replaces the stored password (hash) without loading the customer, used to upgrade passwords on login.
+	 */
+	@Transactional
+	@Modifying
+	@Query("update Customer c set c.password = :password where c.id = :id")
+	int updatePassword(@Param("id") int id, @Param("password") String password);
+
+	/**
+	 * Deletes the customer row only, without loading it. Its purchases must be deleted first.
+	 * @return number of rows deleted.
+	 */
+	@Modifying
+	@Query("delete from Customer c where c.id = :id")
+	int deleteCustomerById(@Param("id") int id);
+
+	/**
+	 * Keyset page - the next page of customers with an id greater than the given cursor.
+	 */
+	Slice<CustomerView> findByIdGreaterThanOrderByIdAsc(int afterId, Pageable pageable);
+
+	/**
+	 * All customers read through a database cursor. Must be consumed inside a transaction and closed.
+	 */
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+	Stream<CustomerView> streamAllByOrderByIdAsc();
+
 }
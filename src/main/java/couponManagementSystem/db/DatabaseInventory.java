@@ -0,0 +1,49 @@
+package couponManagementSystem.db;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import couponManagementSystem.exceptions.DoubleCouponPurchseException;
+import couponManagementSystem.exceptions.InsufficientAmountException;
+
+/**
+ * The DatabaseInventory is the default Inventory (inventory.mode=database). A purchase checks the connection table key
+ * to see if the customer already bought the coupon, takes one coupon from the stock with a conditional update that
+ * only succeeds while the amount is above 0, and inserts the purchase row directly into the connection table.
+ * Everything runs in one transaction, so a failed insert (a concurrent double purchase) rolls back the stock decrement.
+ * Concurrent purchases of the same coupon wait for each other on the coupon row lock.
+ */
+
+@Component
+@ConditionalOnProperty(name = "inventory.mode", havingValue = "database", matchIfMissing = true)
+public class DatabaseInventory implements Inventory {
+
+	private final CouponRepository coupRepo;
+
+	public DatabaseInventory(CouponRepository coupRepo) {
+		this.coupRepo = coupRepo;
+	}
+
+	@Override
+	@Transactional(rollbackFor = { InsufficientAmountException.class, DoubleCouponPurchseException.class })
+	public void purchase(int customerId, int couponId) throws InsufficientAmountException, DoubleCouponPurchseException {
+		if (coupRepo.countPurchases(customerId, couponId) > 0)
+			throw new DoubleCouponPurchseException();
+
+		if (coupRepo.decrementAmount(couponId) == 0)
+			throw new InsufficientAmountException();
+
+		try {
+			coupRepo.insertPurchase(customerId, couponId);
+		} catch (DataIntegrityViolationException e) {
+			throw new DoubleCouponPurchseException();
+		}
+	}
+
+	@Override
+	public long getPendingPurchases() {
+		return 0;
+	}
+}
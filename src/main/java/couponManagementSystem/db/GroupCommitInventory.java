@@ -0,0 +1,295 @@
+package couponManagementSystem.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import couponManagementSystem.exceptions.DoubleCouponPurchseException;
+import couponManagementSystem.exceptions.InsufficientAmountException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * The GroupCommitInventory (inventory.mode=batch) commits the purchases of many requests in one transaction. A
+ * purchase is queued and its request thread waits until the transaction of its batch commits. Committer threads take a
+ * batch of up to inventory.batch.max-size purchases from the queue, waiting up to inventory.batch.window ms for it to
+ * fill: a longer window makes larger batches (fewer transactions, more throughput) at the cost of latency, 0 commits
+ * whatever was queued while the previous batch committed. The purchases of a batch are grouped per coupon: the coupon
+ * row is locked once, the customers that already bought it are looked up with one query, and the stock is handed to
+ * the purchases in queue order. The purchase rows are inserted in one JDBC batch and the amount is decremented once per
+ * coupon. If the batch transaction fails (e.g. a customer was deleted), its purchases are committed one by one.
+ * Coupons are locked in id order, so concurrent committers can't deadlock.
+ * At most inventory.batch.queue-capacity purchases wait in the queue, a purchase that finds it full fails at once, and a
+ * purchase that no committer took within inventory.batch.timeout ms is removed from the queue and fails instead of
+ * holding its request thread. A purchase that was taken waits for the outcome of its batch, which may commit it.
+ * The batch sizes and commit times are registered when the inventory is bound as a MeterBinder, it can't take the
+ * MeterRegistry in its constructor because the CouponSystemMetrics binder depends on it.
+ */
+
+@Component
+@ConditionalOnProperty(name = "inventory.mode", havingValue = "batch")
+public class GroupCommitInventory implements Inventory, MeterBinder {
+
+	private static final Logger log = LoggerFactory.getLogger(GroupCommitInventory.class);
+
+	private static final String INSERT_PURCHASE = "insert into customers_vs_coupons (customer_id, coupons_id) values (?, ?)";
+
+	private final JdbcTemplate jdbc;
+	private final TransactionTemplate transactionTemplate;
+	private final long window;
+	private final int maxSize;
+	private final long timeout;
+	private final BlockingQueue<Purchase> queue;
+	private final ExecutorService committers;
+	private volatile boolean running = true;
+
+	private final CompositeMeterRegistry meters = new CompositeMeterRegistry();
+	private final DistributionSummary batchSize;
+	private final Timer commitTime;
+
+	public GroupCommitInventory(JdbcTemplate jdbc, PlatformTransactionManager transactionManager,
+			@Value("${inventory.batch.window:2}") long window,
+			@Value("${inventory.batch.max-size:100}") int maxSize,
+			@Value("${inventory.batch.committers:2}") int committerCount,
+			@Value("${inventory.batch.queue-capacity:10000}") int queueCapacity,
+			@Value("${inventory.batch.timeout:10000}") long timeout) {
+		this.jdbc = jdbc;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.window = window;
+		this.maxSize = Math.max(1, maxSize);
+		this.timeout = timeout;
+		this.queue = new ArrayBlockingQueue<Purchase>(Math.max(1, queueCapacity));
+		this.batchSize = DistributionSummary.builder("coupon.inventory.batch.size").register(meters);
+		this.commitTime = Timer.builder("coupon.inventory.batch.commit").register(meters);
+		AtomicInteger threads = new AtomicInteger();
+		this.committers = Executors.newFixedThreadPool(committerCount, task -> {
+			Thread thread = new Thread(task, "purchase-committer-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (int i = 0; i < committerCount; i++)
+			committers.execute(this::commitLoop);
+	}
+
+	@Override
+	public void purchase(int customerId, int couponId) throws InsufficientAmountException, DoubleCouponPurchseException {
+		if (!running)
+			throw new IllegalStateException("The inventory is closed");
+		Purchase purchase = new Purchase(customerId, couponId);
+		if (!queue.offer(purchase))
+			throw new IllegalStateException("The purchase queue is full");
+		// the committers may have stopped and close drained the queue before the purchase was queued
+		if (!running && queue.remove(purchase))
+			throw new IllegalStateException("The inventory is closed");
+		try {
+			try {
+				purchase.result.get(timeout, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				if (queue.remove(purchase))
+					throw new IllegalStateException("The purchase wasn't committed in " + timeout + " ms", e);
+				// taken by a committer, its batch decides the outcome and always completes the purchase
+				log.warn("Purchase of coupon id: {} by customer id: {} is still committing after {} ms", couponId,
+						customerId, timeout);
+				purchase.result.get();
+			}
+		} catch (InterruptedException e) {
+			queue.remove(purchase);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while the purchase was committed", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof InsufficientAmountException)
+				throw (InsufficientAmountException) cause;
+			if (cause instanceof DoubleCouponPurchseException)
+				throw (DoubleCouponPurchseException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		meters.add(registry);
+	}
+
+	/**
+	 * @return the queue depth, purchases waiting for a batch.
+	 */
+	@Override
+	public long getPendingPurchases() {
+		return queue.size();
+	}
+
+	@PreDestroy
+	public void close() throws InterruptedException {
+		running = false;
+		committers.shutdown();
+		if (!committers.awaitTermination(10, TimeUnit.SECONDS))
+			log.warn("Purchase committers didn't stop, {} purchases queued", queue.size());
+		Purchase purchase;
+		while ((purchase = queue.poll()) != null)
+			purchase.result.completeExceptionally(new IllegalStateException("The inventory is closed"));
+	}
+
+	private void commitLoop() {
+		List<Purchase> batch = new ArrayList<Purchase>(maxSize);
+		while (running || !queue.isEmpty()) {
+			try {
+				Purchase first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null)
+					continue;
+				batch.add(first);
+				queue.drainTo(batch, maxSize - batch.size());
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(window);
+				while (batch.size() < maxSize) {
+					Purchase next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (next == null)
+						break;
+					batch.add(next);
+					queue.drainTo(batch, maxSize - batch.size());
+				}
+				commit(batch);
+			} catch (InterruptedException e) {
+				running = false;
+				for (Purchase purchase : batch)
+					purchase.result.completeExceptionally(new IllegalStateException("The inventory is closed"));
+			} catch (RuntimeException e) {
+				log.error("Committing {} purchases failed", batch.size(), e);
+				for (Purchase purchase : batch)
+					purchase.result.completeExceptionally(e);
+			}
+			batch.clear();
+		}
+	}
+
+	private void commit(List<Purchase> batch) {
+		batchSize.record(batch.size());
+		try {
+			commitTime.record(() -> transactionTemplate.execute(status -> {
+				commitGroup(batch);
+				return null;
+			}));
+		} catch (RuntimeException e) {
+			log.debug("Batch of {} purchases failed, committing them one by one", batch.size(), e);
+			for (Purchase purchase : batch)
+				commitOne(purchase);
+			return;
+		}
+		for (Purchase purchase : batch)
+			purchase.complete();
+	}
+
+	private void commitOne(Purchase purchase) {
+		try {
+			transactionTemplate.execute(status -> {
+				commitGroup(Collections.singletonList(purchase));
+				return null;
+			});
+			purchase.complete();
+		} catch (DuplicateKeyException e) {
+			purchase.result.completeExceptionally(new DoubleCouponPurchseException());
+		} catch (RuntimeException e) {
+			// e.g. a purchase of a deleted customer or coupon
+			purchase.result.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Decides the outcome of each purchase and writes the accepted ones, in the current transaction. The outcomes
+	 * are only reported after the commit.
+	 */
+	private void commitGroup(List<Purchase> purchases) {
+		Map<Integer, List<Purchase>> byCoupon = new TreeMap<Integer, List<Purchase>>();
+		for (Purchase purchase : purchases)
+			byCoupon.computeIfAbsent(purchase.couponId, id -> new ArrayList<Purchase>()).add(purchase);
+		List<Object[]> rows = new ArrayList<Object[]>(purchases.size());
+		List<Object[]> decrements = new ArrayList<Object[]>(byCoupon.size());
+		for (Map.Entry<Integer, List<Purchase>> coupon : byCoupon.entrySet()) {
+			List<Integer> amount = jdbc.queryForList("select amount from coupons where id = ? for update",
+					Integer.class, coupon.getKey());
+			int stock = amount.isEmpty() ? 0 : amount.get(0);
+			Set<Integer> buyers = purchasedBy(coupon.getKey(), coupon.getValue());
+			int taken = 0;
+			for (Purchase purchase : coupon.getValue()) {
+				purchase.failure = null;
+				if (!buyers.add(purchase.customerId))
+					purchase.failure = new DoubleCouponPurchseException();
+				else if (taken == stock)
+					purchase.failure = new InsufficientAmountException();
+				else {
+					taken++;
+					rows.add(new Object[] { purchase.customerId, purchase.couponId });
+				}
+			}
+			if (taken > 0)
+				decrements.add(new Object[] { taken, coupon.getKey() });
+		}
+		jdbc.batchUpdate(INSERT_PURCHASE, rows);
+		jdbc.batchUpdate("update coupons set amount = amount - ? where id = ?", decrements);
+	}
+
+	/**
+	 * @return the customers of the purchases that already bought the coupon.
+	 */
+	private Set<Integer> purchasedBy(int couponId, List<Purchase> purchases) {
+		StringBuilder sql = new StringBuilder("select customer_id from customers_vs_coupons where coupons_id = ?"
+				+ " and customer_id in (");
+		List<Object> args = new ArrayList<Object>(purchases.size() + 1);
+		args.add(couponId);
+		for (Purchase purchase : purchases) {
+			sql.append(args.size() == 1 ? "?" : ", ?");
+			args.add(purchase.customerId);
+		}
+		return new HashSet<Integer>(jdbc.queryForList(sql.append(")").toString(), Integer.class, args.toArray()));
+	}
+
+	private static final class Purchase {
+
+		private final int customerId;
+		private final int couponId;
+		private final CompletableFuture<Void> result = new CompletableFuture<Void>();
+		// the outcome decided in the batch transaction, null if purchased
+		private Exception failure;
+
+		private Purchase(int customerId, int couponId) {
+			this.customerId = customerId;
+			this.couponId = couponId;
+		}
+
+		private void complete() {
+			if (failure == null)
+				result.complete(null);
+			else
+				result.completeExceptionally(failure);
+		}
+	}
+}
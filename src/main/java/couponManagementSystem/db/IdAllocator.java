@@ -0,0 +1,82 @@
+package couponManagementSystem.db;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * The ids of the companies, customers and coupons come from the id_generator table, which holds the last allocated id
+ * of each entity table. Hibernate takes BLOCK_SIZE ids at a time (see the beans package-info), the IdAllocator gives
+ * the rows inserted with JDBC (the bulk coupon import and the DataGenerator) ids from the same table, so that the two
+ * never collide. On startup the last allocated ids are moved up to the largest id of their table, for databases whose
+ * rows were inserted with the former auto increment ids.
+ */
+
+@Component
+public class IdAllocator {
+
+	private static final Logger log = LoggerFactory.getLogger(IdAllocator.class);
+
+	public static final String TABLE = "id_generator";
+	public static final String SEGMENT_COLUMN = "sequence_name";
+	public static final String VALUE_COLUMN = "next_val";
+	public static final int BLOCK_SIZE = 50;
+	private static final String[] ENTITY_TABLES = { "companies", "customers", "coupons" };
+
+	private final JdbcTemplate jdbc;
+	private final TransactionTemplate transactionTemplate;
+
+	/**
+	 * @param entityManagerFactory - creates the id_generator table (spring.jpa.hibernate.ddl-auto) before it is used.
+	 */
+	public IdAllocator(JdbcTemplate jdbc, PlatformTransactionManager transactionManager,
+			EntityManagerFactory entityManagerFactory) {
+		this.jdbc = jdbc;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		for (String table : ENTITY_TABLES)
+			skipExistingIds(table);
+	}
+
+	/**
+	 * Allocates count consecutive ids of an entity table, in a transaction of its own so that the id_generator row is
+	 * locked only for the allocation.
+	 * @return the first of the ids.
+	 */
+	public int allocate(String table, int count) {
+		return transactionTemplate.execute(status -> {
+			jdbc.update("update " + TABLE + " set " + VALUE_COLUMN + " = " + VALUE_COLUMN + " + ? where "
+					+ SEGMENT_COLUMN + " = ?", count, table);
+			long last = jdbc.queryForObject("select " + VALUE_COLUMN + " from " + TABLE + " where " + SEGMENT_COLUMN
+					+ " = ?", Long.class, table);
+			return (int) (last - count + 1);
+		});
+	}
+
+	private void skipExistingIds(String table) {
+		Integer maxId = jdbc.queryForObject("select max(id) from " + table, Integer.class);
+		long last = maxId == null ? 0 : maxId;
+		String update = "update " + TABLE + " set " + VALUE_COLUMN + " = greatest(" + VALUE_COLUMN + ", ?) where "
+				+ SEGMENT_COLUMN + " = ?";
+		transactionTemplate.execute(status -> {
+			if (jdbc.update(update, last, table) == 0) {
+				try {
+					jdbc.update("insert into " + TABLE + " (" + SEGMENT_COLUMN + ", " + VALUE_COLUMN + ") values (?, ?)",
+							table, last);
+				} catch (DuplicateKeyException e) {
+					// inserted by another instance starting at the same time
+					jdbc.update(update, last, table);
+				}
+			}
+			return null;
+		});
+		log.debug("Last allocated {} id: {} or more", table, last);
+	}
+}
@@ -0,0 +1,41 @@
+package couponManagementSystem.db;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import couponManagementSystem.beans.IdempotencyRecord;
+
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+	/**
+	 * Inserts a result, failing with a DataIntegrityViolationException if the key is stored already (save would
+	 * overwrite it).
+	 */
+	@Transactional
+	@Modifying
+	@Query(value = "insert into idempotency_keys (id, coupon_id, status, body, created_at)"
+			+ " values (:id, :couponId, :status, :body, :createdAt)", nativeQuery = true)
+	int insert(@Param("id") String id, @Param("couponId") int couponId, @Param("status") int status,
+			@Param("body") String body, @Param("createdAt") long createdAt);
+
+	/**
+	 * Deletes a result if it is still the one created at the given time, without loading it.
+	 * @return number of results deleted, 0 if it was deleted or stored again meanwhile.
+	 */
+	@Transactional
+	@Modifying
+	@Query("delete from IdempotencyRecord r where r.id = :id and r.createdAt = :createdAt")
+	int deleteByIdAndCreatedAt(@Param("id") String id, @Param("createdAt") long createdAt);
+
+	/**
+	 * Set based delete of all results stored before the given time.
+	 * @return number of results deleted.
+	 */
+	@Transactional
+	@Modifying
+	@Query("delete from IdempotencyRecord r where r.createdAt < :time")
+	int deleteCreatedBefore(@Param("time") long time);
+}
@@ -0,0 +1,36 @@
+package couponManagementSystem.db;
+
+import java.util.Collection;
+
+import couponManagementSystem.exceptions.DoubleCouponPurchseException;
+import couponManagementSystem.exceptions.InsufficientAmountException;
+
+/**
+ * The Inventory takes purchased coupons from the stock and records the purchases, for CustomerFacade.purchaseCoupon.
+ * The implementation is selected with the inventory.mode property: database (default) decrements the amount of the
+ * coupon row in the purchase transaction (DatabaseInventory), memory takes the stock from counters in this application
+ * instance and writes the purchases to the database in batches behind the requests (WriteBehindInventory), batch
+ * commits the purchases of concurrent requests together in group transactions (GroupCommitInventory).
+ */
+
+public interface Inventory {
+
+	/**
+	 * Takes one coupon from the stock and records its purchase by the customer.
+	 * @throws InsufficientAmountException if the coupon is sold out (or doesn't exist).
+	 * @throws DoubleCouponPurchseException if the customer already purchased the coupon.
+	 */
+	void purchase(int customerId, int couponId) throws InsufficientAmountException, DoubleCouponPurchseException;
+
+	/**
+	 * @return the number of accepted purchases not yet written to the database.
+	 */
+	long getPendingPurchases();
+
+	/**
+	 * Forgets the stock of deleted coupons, after the current transaction (if any) commits. Inventories that don't
+	 * keep the stock of the coupons ignore it.
+	 */
+	default void evict(Collection<Integer> couponIds) {
+	}
+}
@@ -0,0 +1,213 @@
+package couponManagementSystem.db;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The PurchaseLog is the local append-only log of the purchases accepted by the WriteBehindInventory. Each purchase is
+ * appended as a record of its sequence number, customer id, coupon id and a CRC32 checksum before it is acknowledged,
+ * so accepted purchases survive a crash of the application (records are written to the operating system, they are not
+ * forced to disk). Purchases are appended in groups, with one write per group. The log is split into segment files of at most segmentSize bytes, named after their
+ * first sequence number. Once purchases are written to the database the sequence number of the last one is saved as
+ * the checkpoint, and the segments with only older records are deleted. On startup the records after the checkpoint
+ * are read back up to the first incomplete or corrupt record, and appending continues in a new segment.
+ */
+
+public class PurchaseLog implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(PurchaseLog.class);
+
+	private static final int RECORD_SIZE = 20;
+	private static final String SEGMENT_PREFIX = "purchases-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String CHECKPOINT = "checkpoint";
+
+	private final Path dir;
+	private final long segmentSize;
+	// first sequence number -> segment file, the last one is appended to
+	private final TreeMap<Long, Path> segments = new TreeMap<Long, Path>();
+	private final List<Record> recovered = new ArrayList<Record>();
+	private ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+	private final CRC32 crc = new CRC32();
+	private FileChannel segment;
+	private long nextSequence;
+	private long checkpoint;
+
+	public PurchaseLog(Path dir, long segmentSize) throws IOException {
+		this.dir = dir;
+		this.segmentSize = Math.max(RECORD_SIZE, segmentSize);
+		Files.createDirectories(dir);
+		Path checkpointFile = dir.resolve(CHECKPOINT);
+		if (Files.exists(checkpointFile))
+			checkpoint = Long.parseLong(new String(Files.readAllBytes(checkpointFile), StandardCharsets.US_ASCII).trim());
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())),
+						file);
+			}
+		}
+		long lastSequence = checkpoint;
+		for (Path file : segments.values())
+			lastSequence = Math.max(lastSequence, read(file));
+		nextSequence = lastSequence + 1;
+		openSegment();
+	}
+
+	/**
+	 * @return the purchases after the checkpoint found on startup, they were not (all) written to the database.
+	 */
+	public List<Record> getRecovered() {
+		return Collections.unmodifiableList(recovered);
+	}
+
+	/**
+	 * Appends the first count purchases of the arrays to the log, in order.
+	 * @return the purchases with their sequence numbers.
+	 */
+	public synchronized List<Record> append(int[] customerIds, int[] couponIds, int count) throws IOException {
+		if (buffer.capacity() < count * RECORD_SIZE)
+			buffer = ByteBuffer.allocate(count * RECORD_SIZE);
+		buffer.clear();
+		List<Record> records = new ArrayList<Record>(count);
+		for (int i = 0; i < count; i++) {
+			if (segment.position() + buffer.position() + RECORD_SIZE > segmentSize) {
+				write();
+				openSegment();
+			}
+			Record record = new Record(nextSequence + i, customerIds[i], couponIds[i]);
+			int start = buffer.position();
+			buffer.putLong(record.sequence).putInt(record.customerId).putInt(record.couponId);
+			crc.reset();
+			crc.update(buffer.array(), start, RECORD_SIZE - 4);
+			buffer.putInt((int) crc.getValue());
+			records.add(record);
+		}
+		write();
+		nextSequence += count;
+		return records;
+	}
+
+	/**
+	 * Saves the sequence number of the last purchase written to the database, all earlier purchases are written too.
+	 * Deletes the segments that hold only written purchases.
+	 */
+	public synchronized void checkpoint(long sequence) throws IOException {
+		if (sequence <= checkpoint)
+			return;
+		Path temp = dir.resolve(CHECKPOINT + ".tmp");
+		Files.write(temp, Long.toString(sequence).getBytes(StandardCharsets.US_ASCII));
+		Files.move(temp, dir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		checkpoint = sequence;
+		// a segment is done when the next segment starts at or before the first unwritten purchase
+		while (segments.size() > 1) {
+			Map.Entry<Long, Path> first = segments.firstEntry();
+			if (segments.higherKey(first.getKey()) > sequence + 1)
+				break;
+			Files.deleteIfExists(first.getValue());
+			segments.remove(first.getKey());
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		segment.close();
+	}
+
+	/**
+	 * Reads the records of a segment after the checkpoint into recovered.
+	 * @return the last sequence number in the segment.
+	 */
+	private long read(Path file) throws IOException {
+		long last = 0;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+			while (true) {
+				record.clear();
+				while (record.hasRemaining() && channel.read(record) > 0)
+					;
+				if (record.hasRemaining())
+					break;
+				crc.reset();
+				crc.update(record.array(), 0, RECORD_SIZE - 4);
+				record.flip();
+				long sequence = record.getLong();
+				int customerId = record.getInt();
+				int couponId = record.getInt();
+				if (record.getInt() != (int) crc.getValue()) {
+					log.warn("Corrupt purchase record after sequence {} in {}, ignoring the rest of the segment", last,
+							file);
+					break;
+				}
+				last = sequence;
+				if (sequence > checkpoint)
+					recovered.add(new Record(sequence, customerId, couponId));
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * Writes the buffered records to the current segment.
+	 */
+	private void write() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			segment.write(buffer);
+		buffer.clear();
+	}
+
+	private void openSegment() throws IOException {
+		if (segment != null)
+			segment.close();
+		Path file = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX));
+		segment = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		segments.put(nextSequence, file);
+	}
+
+	/**
+	 * A purchase in the log.
+	 */
+	public static final class Record {
+
+		private final long sequence;
+		private final int customerId;
+		private final int couponId;
+
+		Record(long sequence, int customerId, int couponId) {
+			this.sequence = sequence;
+			this.customerId = customerId;
+			this.couponId = couponId;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public int getCustomerId() {
+			return customerId;
+		}
+
+		public int getCouponId() {
+			return couponId;
+		}
+	}
+}
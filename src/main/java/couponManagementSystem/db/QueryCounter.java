@@ -0,0 +1,49 @@
+package couponManagementSystem.db;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the repository calls and the SQL statements prepared by Hibernate on the current thread, between start and
+ * stop. The metrics aspect counts the queries of each request with it, so that N+1 query regressions (one lazy load
+ * per row) show up in the metrics. Hibernate creates the instance from the
+ * spring.jpa.properties.hibernate.session_factory.statement_inspector property, it only sees the statements of
+ * Hibernate (not those of the JdbcTemplate).
+ */
+
+public class QueryCounter implements StatementInspector {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final ThreadLocal<int[]> COUNTS = new ThreadLocal<int[]>();
+
+	/**
+	 * Starts counting on the current thread.
+	 */
+	public static void start() {
+		COUNTS.set(new int[2]);
+	}
+
+	/**
+	 * Stops counting on the current thread.
+	 * @return the number of repository calls and of SQL statements since start.
+	 */
+	public static int[] stop() {
+		int[] counts = COUNTS.get();
+		COUNTS.remove();
+		return counts == null ? new int[2] : counts;
+	}
+
+	public static void repositoryCall() {
+		int[] counts = COUNTS.get();
+		if (counts != null)
+			counts[0]++;
+	}
+
+	@Override
+	public String inspect(String sql) {
+		int[] counts = COUNTS.get();
+		if (counts != null)
+			counts[1]++;
+		return sql;
+	}
+}
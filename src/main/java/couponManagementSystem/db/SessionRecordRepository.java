@@ -0,0 +1,31 @@
+package couponManagementSystem.db;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import couponManagementSystem.beans.SessionRecord;
+
+public interface SessionRecordRepository extends JpaRepository<SessionRecord, String> {
+
+	@Transactional
+	@Modifying
+	@Query("update SessionRecord s set s.lastAccessTime = :time where s.token = :token and s.lastAccessTime < :time")
+	int touch(@Param("token") String token, @Param("time") long time);
+
+	@Transactional
+	@Modifying
+	@Query("delete from SessionRecord s where s.token = :token")
+	int deleteSession(@Param("token") String token);
+
+	/**
+	 * Set based delete of all sessions idle since before the given time.
+	 * @return number of sessions deleted.
+	 */
+	@Transactional
+	@Modifying
+	@Query("delete from SessionRecord s where s.lastAccessTime < :time")
+	int deleteIdleSince(@Param("time") long time);
+}
@@ -0,0 +1,90 @@
+package couponManagementSystem.db;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A lock-free counter of the remaining stock of one coupon, split into stripes so that concurrent purchases of the
+ * same coupon don't all compare-and-set one memory location. Each thread takes from its own stripe, a thread whose
+ * stripe ran dry takes from the next stripes. The stripes are a cache line apart. A closed counter refuses to take,
+ * close returns the stock that was left when it was first closed.
+ */
+
+final class StripedCounter {
+
+	// ints per 64 byte cache line
+	private static final int PADDING = 16;
+	private static final int CLOSED = Integer.MIN_VALUE;
+
+	private final AtomicIntegerArray stripes;
+	private final int stripeCount;
+	private volatile boolean closed;
+	private int remainingWhenClosed;
+
+	StripedCounter(int amount, int stripeCount) {
+		this.stripeCount = stripeCount;
+		this.stripes = new AtomicIntegerArray(stripeCount * PADDING);
+		for (int i = 0; i < stripeCount; i++)
+			stripes.set(i * PADDING, amount / stripeCount + (i < amount % stripeCount ? 1 : 0));
+	}
+
+	/**
+	 * @return true if one was taken, false if the stock ran out or the counter is closed.
+	 */
+	boolean take() {
+		int home = home();
+		for (int i = 0; i < stripeCount; i++) {
+			int index = (home + i) % stripeCount * PADDING;
+			for (;;) {
+				int value = stripes.get(index);
+				if (value == CLOSED)
+					return false;
+				if (value == 0)
+					break;
+				if (stripes.compareAndSet(index, value, value - 1))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns one taken to the stock.
+	 * @return false if the counter was closed in the meantime.
+	 */
+	boolean giveBack() {
+		int index = home() * PADDING;
+		for (;;) {
+			int value = stripes.get(index);
+			if (value == CLOSED)
+				return false;
+			if (stripes.compareAndSet(index, value, value + 1))
+				return true;
+		}
+	}
+
+	/**
+	 * Closes the counter, takes after this return false.
+	 * @return the stock left when the counter was closed, the same on every call.
+	 */
+	synchronized int close() {
+		if (closed)
+			return remainingWhenClosed;
+		closed = true;
+		int remaining = 0;
+		for (int i = 0; i < stripeCount; i++) {
+			int value = stripes.getAndSet(i * PADDING, CLOSED);
+			if (value > 0)
+				remaining += value;
+		}
+		remainingWhenClosed = remaining;
+		return remaining;
+	}
+
+	boolean isClosed() {
+		return closed;
+	}
+
+	private int home() {
+		return (int) (Thread.currentThread().getId() % stripeCount);
+	}
+}
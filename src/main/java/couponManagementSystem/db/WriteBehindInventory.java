@@ -0,0 +1,514 @@
+package couponManagementSystem.db;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import couponManagementSystem.db.PurchaseLog.Record;
+import couponManagementSystem.exceptions.DoubleCouponPurchseException;
+import couponManagementSystem.exceptions.InsufficientAmountException;
+
+/**
+ * The WriteBehindInventory (inventory.mode=memory) keeps the stock of the purchased coupons in lock-free StripedCounters
+ * of this application instance, so a purchase of a popular coupon doesn't wait on its row lock in the database. It is
+ * the only writer of the stock of the coupons, so it must run on a single instance (like session.store=memory).
+ * An accepted purchase is handed to the purchase log writer thread, which appends the purchases handed to it since its
+ * last write to the PurchaseLog in one write, queues them and acknowledges them. Every inventory.flush-interval ms the
+ * purchase-flusher thread (not the shared Spring scheduler, the flush must not wait for other jobs) writes the queued
+ * purchases in transactions of up to inventory.flush-batch-size purchases: one JDBC batch of purchase rows
+ * and one decrement per coupon. Then the log is checkpointed. On startup the purchases in the log after the
+ * checkpoint are written again, skipping the ones that were committed before the crash.
+ * The stock of a coupon is loaded from the database on its first purchase and reloaded after a change to that coupon
+ * in the catalog (CouponCatalogCache.invalidate(couponId)), keeping the purchases that are not written yet. The
+ * stock of a purchase that is not written (its log append failed, or its row was dropped) is given back to the current
+ * counter of the coupon, or to the next load of a closed one. The customers that
+ * purchased a coupon are loaded with its stock, a double purchase is detected by them and the purchases accepted since,
+ * without a query per purchase. The stock of a deleted or expired coupon is evicted when its deletion commits, the stock
+ * of a coupon that wasn't purchased for inventory.idle-timeout ms is evicted once its purchases are written.
+ */
+
+@Component
+@ConditionalOnProperty(name = "inventory.mode", havingValue = "memory")
+public class WriteBehindInventory implements Inventory {
+
+	private static final Logger log = LoggerFactory.getLogger(WriteBehindInventory.class);
+
+	private static final String INSERT_PURCHASE = "insert into customers_vs_coupons (customer_id, coupons_id) values (?, ?)";
+	private static final String DECREMENT_AMOUNT = "update coupons set amount = greatest(amount - ?, 0) where id = ?";
+	// purchases appended to the log in one write at most
+	private static final int LOG_BATCH_SIZE = 1024;
+
+	private final CouponRepository coupRepo;
+	private final JdbcTemplate jdbc;
+	private final TransactionTemplate transactionTemplate;
+	private final int stripes;
+	private final int flushBatchSize;
+	private final long idleTimeout;
+	private final PurchaseLog purchaseLog;
+
+	private final ConcurrentHashMap<Integer, Stock> stocks = new ConcurrentHashMap<Integer, Stock>();
+	// purchases waiting for the log writer, and purchases appended to the log in sequence order
+	private final ConcurrentLinkedQueue<Append> appends = new ConcurrentLinkedQueue<Append>();
+	private final ConcurrentLinkedQueue<Append> queued = new ConcurrentLinkedQueue<Append>();
+	private final Thread logWriter;
+	private final ScheduledExecutorService flusher;
+	private volatile boolean logWriterParked;
+	private volatile boolean running = true;
+	// held while writing purchases, while loading a stock and while giving stock back, guards Stock.flushed,
+	// Stock.returned and retry
+	private final Object flushLock = new Object();
+	// purchases of a failed flush, written before the queued ones
+	private List<Append> retry = new ArrayList<Append>();
+	private final LongAdder pendingPurchases = new LongAdder();
+	private final LongAdder writtenPurchases = new LongAdder();
+	private long lastIdleSweep = System.currentTimeMillis();
+
+	/**
+	 * @param entityManagerFactory - creates the tables (spring.jpa.hibernate.ddl-auto) before the log is recovered.
+	 */
+	public WriteBehindInventory(CouponRepository coupRepo, CouponCatalogCache catalog, JdbcTemplate jdbc,
+			PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory,
+			@Value("${inventory.stripes:0}") int stripes, @Value("${inventory.flush-batch-size:1000}") int flushBatchSize,
+			@Value("${inventory.log.dir:inventory-log}") String logDir,
+			@Value("${inventory.log.segment-size:67108864}") long segmentSize,
+			@Value("${inventory.idle-timeout:60000}") long idleTimeout,
+			@Value("${inventory.flush-interval:50}") long flushInterval) throws IOException {
+		this.coupRepo = coupRepo;
+		this.jdbc = jdbc;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.stripes = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors();
+		this.flushBatchSize = Math.max(1, flushBatchSize);
+		this.idleTimeout = idleTimeout;
+		this.purchaseLog = new PurchaseLog(Paths.get(logDir), segmentSize);
+		recover();
+		this.logWriter = new Thread(this::writeLog, "purchase-log-writer");
+		logWriter.setDaemon(true);
+		logWriter.start();
+		this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "purchase-flusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::scheduledFlush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+		catalog.addCouponListener(this::couponChanged);
+	}
+
+	@Override
+	public void purchase(int customerId, int couponId) throws InsufficientAmountException, DoubleCouponPurchseException {
+		Stock stock = take(customerId, couponId);
+		Append append = new Append(customerId, couponId, stock);
+		appends.add(append);
+		if (logWriterParked)
+			LockSupport.unpark(logWriter);
+		// the log writer may have stopped before the purchase was handed to it
+		if (!running && appends.remove(append))
+			append.result.completeExceptionally(new IllegalStateException("The inventory is closed"));
+		try {
+			append.result.join();
+		} catch (CompletionException e) {
+			giveBack(couponId);
+			stock.buyers.remove(customerId);
+			stock.unflushed.decrementAndGet();
+			throw (RuntimeException) e.getCause();
+		}
+	}
+
+	@Override
+	public void evict(Collection<Integer> couponIds) {
+		List<Integer> evicted = new ArrayList<Integer>(couponIds);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					remove(evicted);
+				}
+			});
+		} else
+			remove(evicted);
+	}
+
+	@Override
+	public long getPendingPurchases() {
+		return pendingPurchases.sum();
+	}
+
+	public long getWrittenPurchases() {
+		return writtenPurchases.sum();
+	}
+
+	/**
+	 * Writes the queued purchases to the database. A chunk that fails for another reason than a purchase row is kept
+	 * with the purchases after it, and is tried again on the next run. Then the idle stocks are evicted every
+	 * inventory.idle-timeout ms.
+	 */
+	public void flush() {
+		synchronized (flushLock) {
+			List<Append> appended = retry;
+			retry = new ArrayList<Append>();
+			Append next;
+			while ((next = queued.poll()) != null)
+				appended.add(next);
+			for (int from = 0; from < appended.size(); from += flushBatchSize) {
+				List<Append> chunk = appended.subList(from, Math.min(from + flushBatchSize, appended.size()));
+				List<Record> records = new ArrayList<Record>(chunk.size());
+				for (Append append : chunk)
+					records.add(append.record);
+				try {
+					try {
+						writeBatch(records);
+						written(chunk, records);
+					} catch (DataIntegrityViolationException e) {
+						// a purchase of a deleted customer or coupon, the rest are written one by one
+						written(chunk, writeRows(records));
+					}
+				} catch (RuntimeException e) {
+					log.warn("Writing {} purchases failed, retrying", appended.size() - from, e);
+					retry = new ArrayList<Append>(appended.subList(from, appended.size()));
+					return;
+				}
+				try {
+					purchaseLog.checkpoint(records.get(records.size() - 1).getSequence());
+				} catch (IOException e) {
+					// the written purchases are skipped when they are recovered
+					log.warn("Checkpointing the purchase log failed", e);
+				}
+			}
+		}
+		if (System.currentTimeMillis() - lastIdleSweep >= idleTimeout) {
+			evictIdle();
+			lastIdleSweep = System.currentTimeMillis();
+		}
+	}
+
+	@PreDestroy
+	public void close() throws IOException, InterruptedException {
+		running = false;
+		LockSupport.unpark(logWriter);
+		logWriter.join();
+		flusher.shutdown();
+		if (!flusher.awaitTermination(10, TimeUnit.SECONDS))
+			log.warn("The purchase flusher didn't stop");
+		Append append;
+		while ((append = appends.poll()) != null)
+			append.result.completeExceptionally(new IllegalStateException("The inventory is closed"));
+		flush();
+		purchaseLog.close();
+		log.info("Inventory closed, {} purchases not written", getPendingPurchases());
+	}
+
+	/**
+	 * A scheduled run of flush, an exception would cancel the next runs.
+	 */
+	private void scheduledFlush() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			log.error("Flushing the purchases failed", e);
+		}
+	}
+
+	/**
+	 * Appends the purchases handed to the log writer, in groups of up to LOG_BATCH_SIZE, until the inventory is
+	 * closed. A group is queued for the flush before its purchases are acknowledged.
+	 */
+	private void writeLog() {
+		Append[] group = new Append[LOG_BATCH_SIZE];
+		int[] customerIds = new int[LOG_BATCH_SIZE];
+		int[] couponIds = new int[LOG_BATCH_SIZE];
+		while (running || !appends.isEmpty()) {
+			int count = 0;
+			Append append;
+			while (count < LOG_BATCH_SIZE && (append = appends.poll()) != null) {
+				group[count] = append;
+				customerIds[count] = append.customerId;
+				couponIds[count] = append.couponId;
+				count++;
+			}
+			if (count == 0) {
+				logWriterParked = true;
+				if (running && appends.isEmpty())
+					LockSupport.park(this);
+				logWriterParked = false;
+				continue;
+			}
+			try {
+				List<Record> records = purchaseLog.append(customerIds, couponIds, count);
+				pendingPurchases.add(count);
+				for (int i = 0; i < count; i++) {
+					group[i].record = records.get(i);
+					queued.add(group[i]);
+				}
+				for (int i = 0; i < count; i++)
+					group[i].result.complete(null);
+			} catch (IOException | RuntimeException e) {
+				log.error("Appending {} purchases to the purchase log failed", count, e);
+				RuntimeException failure = e instanceof IOException ? new UncheckedIOException((IOException) e)
+						: (RuntimeException) e;
+				for (int i = 0; i < count; i++)
+					group[i].result.completeExceptionally(failure);
+			}
+			Arrays.fill(group, 0, count, null);
+		}
+	}
+
+	/**
+	 * @return the stock of a coupon, loaded if it changed in the catalog since it was loaded or was closed.
+	 */
+	private Stock stock(int couponId) {
+		Stock stock = stocks.get(couponId);
+		if (stock == null || stock.stale || stock.counter.isClosed())
+			stock = stocks.compute(couponId, (id, current) -> current != null && !current.stale
+					&& !current.counter.isClosed() ? current : load(id, current));
+		return stock;
+	}
+
+	/**
+	 * Marks the stock of a changed coupon to be reloaded on its next purchase. The mark waits for a load of the stock
+	 * that is running, so it lands on the loaded stock.
+	 */
+	private void couponChanged(int couponId) {
+		stocks.computeIfPresent(couponId, (id, stock) -> {
+			stock.stale = true;
+			return stock;
+		});
+	}
+
+	/**
+	 * Returns one taken from the stock of a coupon by a purchase that is not written, to the current counter of the
+	 * coupon. A closed counter keeps it for the load that replaces it, an evicted stock is loaded from the database
+	 * again, which the purchase never reached.
+	 */
+	private void giveBack(int couponId) {
+		synchronized (flushLock) {
+			Stock stock = stocks.get(couponId);
+			if (stock != null && !stock.counter.giveBack())
+				stock.returned++;
+		}
+	}
+
+	/**
+	 * Adds the customer to the buyers of the coupon and takes one coupon from the stock. The purchase is counted as not
+	 * written before it is taken, so an idle stock is only evicted when none of the purchases taken from it is left to
+	 * write.
+	 */
+	private Stock take(int customerId, int couponId) throws InsufficientAmountException, DoubleCouponPurchseException {
+		while (true) {
+			Stock stock = stock(couponId);
+			if (!stock.buyers.add(customerId))
+				throw new DoubleCouponPurchseException();
+			stock.unflushed.incrementAndGet();
+			if (stock.counter.take()) {
+				if (stock.idle)
+					stock.idle = false;
+				return stock;
+			}
+			stock.unflushed.decrementAndGet();
+			stock.buyers.remove(customerId);
+			// a closed counter was reloaded or evicted
+			if (!stock.counter.isClosed())
+				throw new InsufficientAmountException();
+		}
+	}
+
+	/**
+	 * Removes the stocks of deleted coupons. The purchases of them that are not written yet are dropped when they are
+	 * written.
+	 */
+	private void remove(List<Integer> couponIds) {
+		for (int couponId : couponIds) {
+			Stock stock = stocks.remove(couponId);
+			if (stock != null)
+				stock.counter.close();
+		}
+	}
+
+	/**
+	 * Evicts the stocks that weren't purchased since the last sweep and have no purchases left to write. A stock is
+	 * closed first, a purchase that took from it before it was closed keeps it (closed, it is reloaded on the next
+	 * purchase).
+	 */
+	private void evictIdle() {
+		int evicted = 0;
+		for (Map.Entry<Integer, Stock> entry : stocks.entrySet()) {
+			Stock stock = entry.getValue();
+			if (!stock.idle) {
+				stock.idle = true;
+				continue;
+			}
+			if (stock.unflushed.get() > 0)
+				continue;
+			stock.counter.close();
+			if (stock.unflushed.get() == 0 && stocks.remove(entry.getKey(), stock))
+				evicted++;
+		}
+		if (evicted > 0)
+			log.debug("Evicted {} idle stocks, {} left", evicted, stocks.size());
+	}
+
+	/**
+	 * Loads the stock of a coupon from the database. The stock left in the current counter is adjusted by the changes
+	 * to the amount in the database that this inventory didn't write, the purchases that are taken from the current
+	 * counter but not written yet stay taken, the stock given back after it was closed is added. The customers that
+	 * purchased the coupon are only read on its first load.
+	 */
+	private Stock load(int couponId, Stock current) {
+		synchronized (flushLock) {
+			Integer amount = coupRepo.findAmountById(couponId);
+			int base = amount == null ? 0 : amount;
+			if (current == null) {
+				Set<Integer> buyers = ConcurrentHashMap.newKeySet();
+				buyers.addAll(coupRepo.findPurchasers(couponId));
+				return new Stock(new StripedCounter(base, stripes), base, buyers, new AtomicInteger());
+			}
+			int remaining = Math.max(0,
+					current.counter.close() + current.returned + base - (current.base - current.flushed));
+			return new Stock(new StripedCounter(remaining, stripes), base, current.buyers, current.unflushed);
+		}
+	}
+
+	private void writeBatch(List<Record> chunk) {
+		Map<Integer, Integer> decrements = new HashMap<Integer, Integer>();
+		List<Object[]> purchases = new ArrayList<Object[]>(chunk.size());
+		for (Record record : chunk) {
+			purchases.add(new Object[] { record.getCustomerId(), record.getCouponId() });
+			decrements.merge(record.getCouponId(), 1, Integer::sum);
+		}
+		List<Object[]> updates = new ArrayList<Object[]>(decrements.size());
+		for (Map.Entry<Integer, Integer> decrement : decrements.entrySet())
+			updates.add(new Object[] { decrement.getValue(), decrement.getKey() });
+		transactionTemplate.execute(status -> {
+			jdbc.batchUpdate(INSERT_PURCHASE, purchases);
+			jdbc.batchUpdate(DECREMENT_AMOUNT, updates);
+			return null;
+		});
+	}
+
+	/**
+	 * Writes purchases one by one, each with its decrement in a transaction of its own. Purchases that are already in
+	 * the connection table are skipped, purchases that can't be inserted are dropped.
+	 * @return the purchases written.
+	 */
+	private List<Record> writeRows(List<Record> records) {
+		List<Record> written = new ArrayList<Record>(records.size());
+		for (Record record : records) {
+			try {
+				boolean inserted = transactionTemplate.execute(status -> {
+					if (coupRepo.countPurchases(record.getCustomerId(), record.getCouponId()) > 0)
+						return false;
+					jdbc.update(INSERT_PURCHASE, record.getCustomerId(), record.getCouponId());
+					jdbc.update(DECREMENT_AMOUNT, 1, record.getCouponId());
+					return true;
+				});
+				if (inserted)
+					written.add(record);
+			} catch (DataIntegrityViolationException e) {
+				log.warn("Dropped purchase of coupon id: {} by customer id: {}: {}", record.getCouponId(),
+						record.getCustomerId(), e.getMostSpecificCause().getMessage());
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Accounts for the written purchases of a chunk, and returns the stock of the dropped ones.
+	 */
+	private void written(List<Append> chunk, List<Record> written) {
+		Set<Record> writtenRecords = written.size() < chunk.size() ? new HashSet<Record>(written) : null;
+		for (Append append : chunk) {
+			Stock stock = stocks.get(append.couponId);
+			if (writtenRecords == null || writtenRecords.contains(append.record)) {
+				if (stock != null)
+					stock.flushed++;
+			} else {
+				giveBack(append.couponId);
+				append.stock.buyers.remove(append.customerId);
+			}
+			append.stock.unflushed.decrementAndGet();
+		}
+		pendingPurchases.add(-chunk.size());
+		writtenPurchases.add(written.size());
+	}
+
+	private void recover() throws IOException {
+		List<Record> recovered = purchaseLog.getRecovered();
+		if (recovered.isEmpty())
+			return;
+		log.info("Writing {} purchases recovered from the purchase log...", recovered.size());
+		int written = writeRows(recovered).size();
+		purchaseLog.checkpoint(recovered.get(recovered.size() - 1).getSequence());
+		log.info("Recovered {} purchases, skipped {}", written, recovered.size() - written);
+	}
+
+	private static final class Stock {
+
+		private final StripedCounter counter;
+		// the amount in the database when loaded, the purchases written since and the stock given back while closed
+		private final int base;
+		private int flushed;
+		private int returned;
+		// the coupon changed in the catalog, reloaded on the next purchase
+		private volatile boolean stale;
+		// the customers that purchased the coupon and the purchases taken not written yet, kept across reloads
+		private final Set<Integer> buyers;
+		private final AtomicInteger unflushed;
+		// not purchased since the last idle sweep
+		private volatile boolean idle;
+
+		private Stock(StripedCounter counter, int base, Set<Integer> buyers, AtomicInteger unflushed) {
+			this.counter = counter;
+			this.base = base;
+			this.buyers = buyers;
+			this.unflushed = unflushed;
+		}
+	}
+
+	private static final class Append {
+
+		private final int customerId;
+		private final int couponId;
+		// the stock the purchase was taken from
+		private final Stock stock;
+		private final CompletableFuture<Void> result = new CompletableFuture<Void>();
+		// set by the log writer
+		private Record record;
+
+		private Append(int customerId, int couponId, Stock stock) {
+			this.customerId = customerId;
+			this.couponId = couponId;
+			this.stock = stock;
+		}
+	}
+}
@@ -1,41 +1,67 @@
 package couponManagementSystem.facades;
 
 import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.HashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
-import org.springframework.context.annotation.Scope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import couponManagementSystem.beans.Company;
+import couponManagementSystem.beans.CompanyView;
 import couponManagementSystem.beans.Coupon;
 import couponManagementSystem.beans.Customer;
+import couponManagementSystem.beans.CustomerView;
 import couponManagementSystem.db.CompanyRepository;
+import couponManagementSystem.db.CouponCatalogCache;
 import couponManagementSystem.db.CouponRepository;
+import couponManagementSystem.db.CouponSearchIndex;
 import couponManagementSystem.db.CustomerRepository;
+import couponManagementSystem.db.Inventory;
 import couponManagementSystem.exceptions.CompanyExistsException;
 import couponManagementSystem.exceptions.CompanyUpdateException;
 import couponManagementSystem.exceptions.CustomerExistsException;
 import couponManagementSystem.exceptions.InvalidLoginExcepction;
+import couponManagementSystem.login.PasswordHasher;
 
 @Service
-@Scope("prototype")
 public class AdminFacade extends ClientFacade {
 
+	private static final Logger log = LoggerFactory.getLogger(AdminFacade.class);
+
+	private final Inventory inventory;
+
 	//CTOR
-	public AdminFacade(CompanyRepository compRepo, CustomerRepository custRepo, CouponRepository coupRepo) {
-		super(compRepo, custRepo, coupRepo);
+	public AdminFacade(CompanyRepository compRepo, CustomerRepository custRepo, CouponRepository coupRepo,
+			PasswordHasher hasher, CouponCatalogCache catalog, CouponSearchIndex searchIndex, Inventory inventory) {
+		super(compRepo, custRepo, coupRepo, hasher, catalog, searchIndex);
+		this.inventory = inventory;
 	}
 
+	@Value("${admin.email:admin@admin.com}")
+	private String adminEmail;
+	@Value("${admin.password:admin}")
+	private String adminPassword;
+
 	/**
-	 * Hard coded Administrator login method, returns custom exception if login failed. 
+	 * Administrator login method, checks the admin.email and admin.password properties (admin.password may be a hash
+	 * printed by PasswordHasher). Returns custom exception if login failed.
 	 */
 	@Override
-	public boolean login(String email, String password) throws InvalidLoginExcepction {
-		if (email.equals("admin@admin.com") && password.equals("admin")) {
-			System.out.println("Logged in Administrator...");
-			return true;
+	public int login(String email, String password) throws InvalidLoginExcepction {
+		if (email.equals(adminEmail) && hasher.matches(password, adminPassword)) {
+			log.debug("Logged in Administrator...");
+			return 0;
 		}
 		throw new InvalidLoginExcepction();
 	}
@@ -46,11 +72,15 @@ public class AdminFacade extends ClientFacade {
 	 *  added company including it's auto-generated id.
 	 */
 	public Company addCompany(Company company) throws CompanyExistsException {
-		if (compRepo.findCompanyByEmail(company.getEmail()) != null
-				|| compRepo.findCompanyByName(company.getName()) != null)
+		if (compRepo.existsByEmailOrName(company.getEmail(), company.getName()))
 			throw new CompanyExistsException();
-		company = compRepo.save(company);
-		System.out.println("Added: " + company);
+		company.setPassword(hasher.hashIfPlain(company.getPassword()));
+		try {
+			company = compRepo.saveAndFlush(company);
+		} catch (DataIntegrityViolationException e) {
+			throw new CompanyExistsException();
+		}
+		log.info("Added: {}", company);
 		return company;
 	}
 
@@ -60,16 +90,21 @@ public class AdminFacade extends ClientFacade {
 	 *  including it's auto-generated id.
 	 */
 	public Customer addCustomer(Customer customer) throws CustomerExistsException {
-		if (custRepo.findCustomerByEmail(customer.getEmail()) != null)
+		if (custRepo.existsByEmail(customer.getEmail()))
+			throw new CustomerExistsException();
+		customer.setPassword(hasher.hashIfPlain(customer.getPassword()));
+		try {
+			customer = custRepo.saveAndFlush(customer);
+		} catch (DataIntegrityViolationException e) {
 			throw new CustomerExistsException();
-		customer = custRepo.save(customer);
-		System.out.println("Added: " + customer);
+		}
+		log.info("Added: {}", customer);
 		return customer;
 	}
 
 	/**
 	 * The updateCompany method will update an existing company. Throw custom exception to constrain company name 
-	 * updates. Return the updated company.  
+	 * updates. A company sent without a password keeps its password. Return the updated company.  
 	 * @throws CompanyExistsException 
 	 */
 	
@@ -78,89 +113,143 @@ public class AdminFacade extends ClientFacade {
 		Company c = compRepo.findById(company.getId()).orElseThrow();
 		if (!company.getName().equalsIgnoreCase(c.getName()))
 			throw new CompanyUpdateException();
-		for (Company comp : compRepo.findAll()) {
-			if(comp.getEmail().equalsIgnoreCase(company.getEmail()) && comp.getId() != company.getId())
-				throw new CompanyExistsException();
+		if (compRepo.existsByEmailAndIdNot(company.getEmail(), company.getId()))
+			throw new CompanyExistsException();
+		company.setPassword(updatedPassword(company.getPassword(), c.getPassword()));
+		try {
+			company = compRepo.saveAndFlush(company);
+		} catch (DataIntegrityViolationException e) {
+			throw new CompanyExistsException();
 		}
-		company = compRepo.save(company);
-		System.out.println("updated: " + company);
+		log.info("Updated: {}", company);
 		return company;
 	}
 
 	/**
 	 * The updateCustomer method will update an existing customer. Throw No Such Element Exception to 
 	 * further constrain customer id updates (the entity's id is managed by Hibernate 
-	 * and is auto-generated and unique). Return the updated customer.  
+	 * and is auto-generated and unique). A customer sent without a password keeps its password. Return the updated
+	 * customer.  
 	 * @throws CustomerExistsException 
 	 */
 	
 	public Customer updateCustomer(Customer customer) throws NoSuchElementException, CustomerExistsException {
-		if (custRepo.existsById(customer.getId())) {
-			for (Customer c : custRepo.findAll()) {
-				if (c.getEmail().equalsIgnoreCase(customer.getEmail()) && c.getId() != customer.getId())
-					throw new CustomerExistsException();
-			}
-			customer = custRepo.save(customer);
-			System.out.println("Updated: " + customer);
-			return customer;
-		} else throw new NoSuchElementException();
-	}
-
-	/**
-	 * The deleteCompany method will identify the target company to be deleted. If the company
-	 * is not found the method will throw a NoSuchElement Exception. 
-	 * Next it will loop over its coupons collection and all customer coupons collections.
-	 * If the method identifies that a customer has one of the company coupons in his collection 
-	 * (meaning he purchased the coupon), the method will delete the coupon from the customer's
-	 * collection. After all the customer purchases are deleted, the method will delete the company
-	 * coupon and move on to the next one. After the method deleted all company coupons, it will
-	 * delete the company. 
+		Customer c = custRepo.findById(customer.getId()).orElseThrow();
+		if (custRepo.existsByEmailAndIdNot(customer.getEmail(), customer.getId()))
+			throw new CustomerExistsException();
+		customer.setPassword(updatedPassword(customer.getPassword(), c.getPassword()));
+		try {
+			customer = custRepo.saveAndFlush(customer);
+		} catch (DataIntegrityViolationException e) {
+			throw new CustomerExistsException();
+		}
+		log.info("Updated: {}", customer);
+		return customer;
+	}
+
+	/**
+	 * @return the hash of the updated password, or the stored one if no password was sent (the lists of companies and
+	 *         customers don't return the passwords, a client may send one back without it).
+	 */
+	private String updatedPassword(String password, String stored) {
+		return password == null || password.isBlank() ? stored : hasher.hashIfPlain(password);
+	}
+
+	/**
+	 * The deleteCompany method will delete a company with all its coupons and all the
+	 * customer purchases of those coupons, using three set based statements in one
+	 * transaction: the purchases of the company coupons, the company coupons and then
+	 * the company. If the company is not found the method will throw a NoSuchElement
+	 * Exception. Returns the number of coupons and purchases deleted.
 	 */
 	
-	public void deleteCompany(int id) throws NoSuchElementException{
-		Company company = compRepo.findById(id).orElseThrow();
-		if (company != null) {
-			for (Coupon companyCoupon : compRepo.findById(id).get().getCoupons()) {
-				for (Customer customer : custRepo.findAll()) {
-					customer.getCoupons().remove(companyCoupon);
-					System.out.println("Deleting purchase: coupon id " + companyCoupon.getId() + ", by customer id: "
-							+ customer.getId());
-					custRepo.save(customer);
-				}
-				System.out.println("Deleted: " + companyCoupon);
-				coupRepo.deleteById(companyCoupon.getId());
-			}
-			compRepo.deleteById(id);
-			System.out.println("Deleted: " + company);
-		} else throw new NoSuchElementException();
-	}
-
-	/**
-	 * The deleteCustomer method will identify the target customer to be deleted. If the customer
-	 * is not found the method will throw a NoSuchElement Exception. 
-	 * Next the method will delete all coupons from the customer's collection. After all the 
-	 * customer purchases are deleted, the method will delete the customer.
-	 * @throws CustomerExistsException 
+	@Transactional
+	public DeletionCounts deleteCompany(int id) throws NoSuchElementException{
+		if (!compRepo.existsById(id))
+			throw new NoSuchElementException();
+		List<Integer> couponIds = coupRepo.findIdsByCompanyId(id);
+		int purchases = coupRepo.deletePurchasesByCompanyId(id);
+		int coupons = coupRepo.deleteCouponsByCompanyId(id);
+		compRepo.deleteCompanyById(id);
+		catalog.invalidate();
+		searchIndex.removeCompany(id);
+		inventory.evict(couponIds);
+		DeletionCounts counts = new DeletionCounts(coupons, purchases);
+		log.info("Deleted company id: {} {}", id, counts);
+		return counts;
+	}
+
+	/**
+	 * The deleteCustomer method will delete a customer and all its coupon purchases,
+	 * using two set based statements in one transaction. If the customer is not found
+	 * the method will throw a NoSuchElement Exception. Returns the number of purchases
+	 * deleted.
 	 */
 	
-	public void deleteCustomer(int id) throws NoSuchElementException, CustomerExistsException {
-		Customer customer = custRepo.findById(id).orElseThrow();
-		if (customer != null) {
-			System.out.println("==> Deleting customer coupon purchases: " + customer.getCoupons());
-			customer.getCoupons().removeAll(customer.getCoupons());
-			updateCustomer(customer);
-			custRepo.deleteById(id);
-			System.out.println("Deleted: " + customer);
-		} else throw new NoSuchElementException();
+	@Transactional
+	public DeletionCounts deleteCustomer(int id) throws NoSuchElementException {
+		if (!custRepo.existsById(id))
+			throw new NoSuchElementException();
+		int purchases = coupRepo.deletePurchasesByCustomerId(id);
+		custRepo.deleteCustomerById(id);
+		DeletionCounts counts = new DeletionCounts(0, purchases);
+		log.info("Deleted customer id: {} {}", id, counts);
+		return counts;
 	}
 
 	/**
 	 * The getAllCompanies method returns a List object of all companies in the database.
 	 */
 	
-	public List<Company> getAllCompanies() {
-		System.out.println("getting all companies...");
-		return compRepo.findAll();
+	public List<CompanyView> getAllCompanies() {
+		log.debug("Getting all companies...");
+		return compRepo.findAllProjectedBy();
+	}
+
+	/**
+	 * Keyset paged companies method.
+	 * @param afterId - the id of the last company of the previous page, 0 for the first page.
+	 * @param size - maximum number of companies in the page.
+	 * @return Slice of companies with an id greater than afterId, ordered by id.
+	 */
+	public Slice<CompanyView> getCompaniesPage(int afterId, int size) {
+		log.debug("Getting companies page after id: {}...", afterId);
+		return compRepo.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, size));
+	}
+
+	/**
+	 * Streams all companies to the given consumer through a database cursor, so memory use does not
+	 * depend on the number of companies.
+	 */
+	@Transactional(readOnly = true)
+	public void streamAllCompanies(Consumer<CompanyView> consumer) {
+		log.debug("Streaming all companies...");
+		try (Stream<CompanyView> companies = compRepo.streamAllByOrderByIdAsc()) {
+			companies.forEach(consumer);
+		}
+	}
+
+	/**
+	 * Keyset paged customers method.
+	 * @param afterId - the id of the last customer of the previous page, 0 for the first page.
+	 * @param size - maximum number of customers in the page.
+	 * @return Slice of customers with an id greater than afterId, ordered by id.
+	 */
+	public Slice<CustomerView> getCustomersPage(int afterId, int size) {
+		log.debug("Getting customers page after id: {}...", afterId);
+		return custRepo.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, size));
+	}
+
+	/**
+	 * Streams all customers to the given consumer through a database cursor, so memory use does not
+	 * depend on the number of customers.
+	 */
+	@Transactional(readOnly = true)
+	public void streamAllCustomers(Consumer<CustomerView> consumer) {
+		log.debug("Streaming all customers...");
+		try (Stream<CustomerView> customers = custRepo.streamAllByOrderByIdAsc()) {
+			customers.forEach(consumer);
+		}
 	}
 
 	/**
@@ -168,7 +257,7 @@ public class AdminFacade extends ClientFacade {
 	 */
 	
 	public Company getOneCompany(int id) throws NoSuchElementException {
-		System.out.println("Getting company id: " + id + "...");
+		log.debug("Getting company id: {}...", id);
 		return compRepo.findById(id).orElseThrow();
 	}
 	
@@ -177,9 +266,9 @@ public class AdminFacade extends ClientFacade {
 	 * The getAllCustomers method returns a List of all customers in the database.
 	 */
 	
-	public List<Customer> getAllCustomers() {
-		System.out.println("Getting all customers...");
-		return custRepo.findAll();
+	public List<CustomerView> getAllCustomers() {
+		log.debug("Getting all customers...");
+		return custRepo.findAllProjectedBy();
 	}
 
 	/**
@@ -187,16 +276,17 @@ public class AdminFacade extends ClientFacade {
 	 */
 	
 	public Customer getOneCustomer(int id) {
-		System.out.println("Getting customer id: " + id + "...");
+		log.debug("Getting customer id: {}...", id);
 		return custRepo.findById(id).orElseThrow();
 	}
 
 	/**
-	 * The getAllCoupons methods returns a List of all coupons in the database. 
+	 * The getAllCoupons methods returns a List of all coupons in the database. The
+	 * full catalog is read from the database, it is not cached.
 	 * */
 	
 	public List<Coupon> getAllCoupons() {
-		System.out.println("Getting all coupons...");
+		log.debug("Getting all coupons...");
 		return coupRepo.findAll();
 	}
 
@@ -206,8 +296,8 @@ public class AdminFacade extends ClientFacade {
 	 * @return List of company coupons, or an empty list.
 	 */
 	public List<Coupon> getAllCompanyCouponsByCompanyId(int companyId) {
-		System.out.println("Getting all coupons of company id: " + companyId + "...");
-		return compRepo.getOne(companyId).getCoupons();
+		log.debug("Getting all coupons of company id: {}...", companyId);
+		return catalog.getCompanyCoupons(companyId);
 	}
 	
 	/**
@@ -216,7 +306,7 @@ public class AdminFacade extends ClientFacade {
 	 * @return List of customer coupons, or an empty list.
 	 */
 	public Set<Coupon> getAllCustomerCouponsByCustomerId(int customerId) {
-		System.out.println("Getting all coupons of customer id: " + customerId + "...");
-		return custRepo.getOne(customerId).getCoupons();
+		log.debug("Getting all coupons of customer id: {}...", customerId);
+		return new HashSet<Coupon>(coupRepo.findCustomerCoupons(customerId));
 	}
 }
@@ -2,24 +2,44 @@ package couponManagementSystem.facades;
 import org.springframework.stereotype.Service;
 
 import couponManagementSystem.db.CompanyRepository;
+import couponManagementSystem.db.CouponCatalogCache;
 import couponManagementSystem.db.CouponRepository;
+import couponManagementSystem.db.CouponSearchIndex;
 import couponManagementSystem.db.CustomerRepository;
 import couponManagementSystem.exceptions.InvalidLoginExcepction;
+import couponManagementSystem.login.PasswordHasher;
 
 
+/**
+ * Base class of the facades. The facades are singletons shared by all sessions and request threads, so they keep no
+ * state of the logged in client. Methods that work on the logged in client take its id as a parameter.
+ */
+
 @Service
 public abstract class ClientFacade {
 
 	protected CompanyRepository compRepo;
 	protected CustomerRepository custRepo;
 	protected CouponRepository coupRepo;
+	protected PasswordHasher hasher;
+	protected CouponCatalogCache catalog;
+	protected CouponSearchIndex searchIndex;
 	
-	public ClientFacade(CompanyRepository compRepo, CustomerRepository custRepo, CouponRepository coupRepo) {
+	public ClientFacade(CompanyRepository compRepo, CustomerRepository custRepo, CouponRepository coupRepo,
+			PasswordHasher hasher, CouponCatalogCache catalog, CouponSearchIndex searchIndex) {
 		this.compRepo = compRepo;
 		this.custRepo = custRepo;
 		this.coupRepo = coupRepo;
+		this.hasher = hasher;
+		this.catalog = catalog;
+		this.searchIndex = searchIndex;
 	}
 
-	public abstract boolean login(String email, String password) throws InvalidLoginExcepction;
+	/**
+	 * Checks the given credentials.
+	 * @return the id of the logged in client, 0 for the administrator.
+	 * @throws InvalidLoginExcepction if the credentials don't exist.
+	 */
+	public abstract int login(String email, String password) throws InvalidLoginExcepction;
 
 }
@@ -1,108 +1,131 @@
 package couponManagementSystem.facades;
 
-import java.util.ArrayList;
+import java.sql.Date;
+import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
-import org.springframework.context.annotation.Scope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import couponManagementSystem.beans.CategoryType;
 import couponManagementSystem.beans.Company;
 import couponManagementSystem.beans.Coupon;
-import couponManagementSystem.beans.Customer;
+import couponManagementSystem.beans.CouponView;
 import couponManagementSystem.db.CompanyRepository;
+import couponManagementSystem.db.CouponCatalogCache;
 import couponManagementSystem.db.CouponRepository;
+import couponManagementSystem.db.CouponSearchIndex;
 import couponManagementSystem.db.CustomerRepository;
+import couponManagementSystem.db.Inventory;
 import couponManagementSystem.exceptions.CouponExistsException;
 import couponManagementSystem.exceptions.CouponUpdateException;
 import couponManagementSystem.exceptions.InvalidLoginExcepction;
+import couponManagementSystem.login.PasswordHasher;
 
 @Service
-@Scope("prototype")
 public class CompanyFacade extends ClientFacade {
 
+	private static final Logger log = LoggerFactory.getLogger(CompanyFacade.class);
+
+	private final Inventory inventory;
+
 	//CTOR
-	public CompanyFacade(CompanyRepository compRepo, CustomerRepository custRepo, CouponRepository coupRepo) {
-		super(compRepo, custRepo, coupRepo);
+	public CompanyFacade(CompanyRepository compRepo, CustomerRepository custRepo, CouponRepository coupRepo,
+			PasswordHasher hasher, CouponCatalogCache catalog, CouponSearchIndex searchIndex, Inventory inventory) {
+		super(compRepo, custRepo, coupRepo, hasher, catalog, searchIndex);
+		this.inventory = inventory;
 	}
 
-	/**
-	 * Variable to contain the logged in company id.
-	 */
-	private int loggedInCompanyId;
-
 	/**
 	 * The company login method will compare given email and password with information
-	 * on the database. If credentials exist the method will return a company facade
-	 * and update loggedInCompanyId. Throw custom invalid login exception if
-	 * credentials don't exist.
+	 * on the database. If credentials exist the method will return the company id.
+	 * A plaintext or outdated password hash is replaced by a hash with the current cost.
+	 * Throw custom invalid login exception if credentials don't exist.
 	 */
 	@Override
-	public boolean login(String email, String password) throws InvalidLoginExcepction, NullPointerException{
-		if (compRepo.findCompanyByEmail(email).getPassword().equals(password)) {
-			loggedInCompanyId = compRepo.findCompanyByEmail(email).getId();
-			System.out.println("Logged in with company id: " + loggedInCompanyId + "...");
-			return true;
+	public int login(String email, String password) throws InvalidLoginExcepction, NullPointerException{
+		Company company = compRepo.findCompanyByEmail(email);
+		if (hasher.matches(password, company.getPassword())) {
+			if (hasher.needsRehash(company.getPassword()))
+				compRepo.updatePassword(company.getId(), hasher.hash(password));
+			log.debug("Logged in with company id: {}...", company.getId());
+			return company.getId();
 		}
 		throw new InvalidLoginExcepction();
 	}
 
 	/**
 	 * The addCoupon method will add a new Coupon to the database. Throw custom
-	 * exception if the coupon's title and company id already exist in the database.
-	 * Return the added coupon including it's auto-generated id.
+	 * exception if the coupon's title and company id already exist in the database,
+	 * checked with a lookup on the unique (company_id, title) index. A concurrent add
+	 * of the same title is rejected by the unique constraint and mapped to the same
+	 * exception. Return the added coupon including it's auto-generated id.
 	 */
 	public Coupon addCoupon(Coupon coupon) throws CouponExistsException {
-		for (Coupon c : coupRepo.findAll()) {
-			if (c.getTitle().equals(coupon.getTitle()) && c.getCompany().equals(coupon.getCompany()))
-				throw new CouponExistsException();
+		if (coupRepo.existsByCompanyIdAndTitle(coupon.getCompany().getId(), coupon.getTitle()))
+			throw new CouponExistsException();
+		try {
+			coupon = coupRepo.saveAndFlush(coupon);
+		} catch (DataIntegrityViolationException e) {
+			throw new CouponExistsException();
 		}
-		System.out.println("coupon comapny id: " + coupon.getCompany().getId());
-		coupon = coupRepo.save(coupon);
-		System.out.println("Adding: " + coupon);
+		catalog.invalidate();
+		searchIndex.put(coupon);
+		log.info("Adding: {}", coupon);
 		return coupon; 
 	}
 
 	/**
 	 * The updateCoupon method will update an existing coupon. Throw custom
 	 * exception to further constrain customer id updates (the entity's id is
-	 * managed by Hibernate and is auto-generated and unique). Return the updated
+	 * managed by Hibernate and is auto-generated and unique). Throw custom exception
+	 * if another coupon of the company has the same title. Return the updated
 	 * coupon. 
 	 */
-	public Coupon updateCoupon(Coupon coupon) throws CouponUpdateException, NoSuchElementException, CouponExistsException{
+	public Coupon updateCoupon(int companyId, Coupon coupon) throws CouponUpdateException, NoSuchElementException, CouponExistsException{
 		Coupon coup = coupRepo.findById(coupon.getId()).orElseThrow();
-		if (coup.getCompany().getId() != getLoggedInCompany().getId())
+		if (coup.getCompany().getId() != companyId)
 			throw new CouponUpdateException();
 		if (coupon.getCompany()==null) 			// JsonIgnore in coupon - allows for admin to see coupons of companies and customers, but doesnt get a coupon with a company so this check is needed
 			coupon.setCompany(coup.getCompany());
-		for (Coupon c : getAllCompanyCoupons()) {
-			if (c.getTitle().equalsIgnoreCase(coupon.getTitle()))
-				throw new CouponExistsException();
+		if (coupRepo.existsByCompanyIdAndTitleAndIdNot(companyId, coupon.getTitle(), coupon.getId()))
+			throw new CouponExistsException();
+		try {
+			coupRepo.saveAndFlush(coupon);
+		} catch (DataIntegrityViolationException e) {
+			throw new CouponExistsException();
 		}
-		coupRepo.save(coupon);
-		System.out.println("Updated: " + coupon);
+		catalog.invalidate(coupon.getId());
+		searchIndex.put(coupon);
+		log.info("Updated: {}", coupon);
 		return coupon;
 	}
 
 	/**
 	 * The deleteCoupon method will identify the target coupon to be deleted. Throws
-	 * NoSuchElement exception if the coupon is not found. Next the method will look
-	 * over all customers in the database to check for any target coupon purchases
-	 * by customers. If the method find the a target coupon purchase it deletes it
-	 * and updates the customer's collection. After going through all customers the
-	 * method deleted the coupon by its id.
+	 * NoSuchElement exception if the coupon is not found. Next the method will delete
+	 * all purchases of the coupon from the connection table in one statement, and
+	 * then delete the coupon by its id.
 	 */
+	@Transactional
 	public void deleteCoupon(int id) {
 		Coupon coup = coupRepo.findById(id).get();
 		if (coup != null) {
-			for (Customer customer : custRepo.findAll()) {
-				customer.getCoupons().remove(coup);
-				System.out.println("Deleting purchase: coupon id " + id + ", by customer id: " + customer.getId());
-				custRepo.save(customer);
-			}
-			System.out.println("Deleted: " + coup);
+			int purchases = coupRepo.deletePurchasesByCouponIds(Collections.singleton(id));
+			log.info("Deleted {} purchases of coupon id {}", purchases, id);
+			log.info("Deleted: {}", coup);
 			coupRepo.deleteById(coup.getId());
+			catalog.invalidate();
+			searchIndex.remove(Collections.singleton(id));
+			inventory.evict(Collections.singleton(id));
 		} else
 			throw new NoSuchElementException();
 	}
@@ -111,19 +134,42 @@ public class CompanyFacade extends ClientFacade {
 	 * The getAllCompanyCoupons method returns a List of all the coupons of the
 	 * company which is logged in and using the facade.
 	 */
-	public List<Coupon> getAllCompanyCoupons() {
-		System.out.println("Getting all logged in company coupons...");
-		return getLoggedInCompany().getCoupons();
+	public List<Coupon> getAllCompanyCoupons(int companyId) {
+		log.debug("Getting all coupons of company id: {}...", companyId);
+		return catalog.getCompanyCoupons(companyId);
 	}
 	
 
+	/**
+	 * Keyset paged logged in company coupons method.
+	 * @param afterId - the id of the last coupon of the previous page, 0 for the first page.
+	 * @param size - maximum number of logged in company coupons in the page.
+	 * @return Slice of logged in company coupons with an id greater than afterId, ordered by id.
+	 */
+	public Slice<CouponView> getCompanyCouponsPage(int companyId, int afterId, int size) {
+		log.debug("Getting logged in company coupons page after id: {}...", afterId);
+		return coupRepo.findByCompanyIdAndIdGreaterThanOrderByIdAsc(companyId, afterId, PageRequest.of(0, size));
+	}
+
+	/**
+	 * Streams all logged in company coupons to the given consumer through a database cursor, so memory use does not
+	 * depend on the number of logged in company coupons.
+	 */
+	@Transactional(readOnly = true)
+	public void streamAllCompanyCoupons(int companyId, Consumer<CouponView> consumer) {
+		log.debug("Streaming all logged in company coupons...");
+		try (Stream<CouponView> companyCoupons = coupRepo.streamByCompanyIdOrderByIdAsc(companyId)) {
+			companyCoupons.forEach(consumer);
+		}
+	}
+
 	/**
 	 * The getOneCompanyCoupon method returns one Coupon from the collection of
 	 * coupons of the logged in company using the facade.
 	 */
-	public Coupon getOneCompanyCoupon(int id) {
-		System.out.println("Getting logged in company coupon id: " + id + "...");
-		for (Coupon coupon : getAllCompanyCoupons()) {
+	public Coupon getOneCompanyCoupon(int companyId, int id) {
+		log.debug("Getting logged in company coupon id: {}...", id);
+		for (Coupon coupon : getAllCompanyCoupons(companyId)) {
 			if (coupon.getId() == id)
 				return coupon;
 		}
@@ -135,39 +181,35 @@ public class CompanyFacade extends ClientFacade {
 	 * @param category
 	 * @return List of the logged in company coupons by a given category
 	 */
-	public List<Coupon> getAllCompanyCouponsByCategory(CategoryType category) {
-		System.out.println("Getting all logged in company coupons by category: " + category + "...");
-		List<Coupon> companyCouponsByCategory = new ArrayList<Coupon>();
-		for (Coupon coupon : getAllCompanyCoupons()) {
-			if (coupon.getCategory() == category)
-				companyCouponsByCategory.add(coupon);
-		}
-		return companyCouponsByCategory;
+	public List<Coupon> getAllCompanyCouponsByCategory(int companyId, CategoryType category) {
+		log.debug("Getting all logged in company coupons by category: {}...", category);
+		return catalog.getCompanyCouponsByCategory(companyId, category);
 	}
 
 	/**
 	 * The getAllCompanyCouponsByMaxPrice method returns a List of the logged in
 	 * company coupons by a given max price.
 	 */
-	public List<Coupon> getAllCompanyCouponsByMaxPrice(double maxPrice) {
-		System.out.println("Getting all logged in company coupons by max price: " + maxPrice + "...");
-		List<Coupon> companyCouponsByMaxPrice = new ArrayList<Coupon>();
-		for (Coupon coupon : getAllCompanyCoupons()) {
-			if (coupon.getPrice() <= maxPrice)
-				companyCouponsByMaxPrice.add(coupon);
-		}
-		return companyCouponsByMaxPrice;
+	public List<Coupon> getAllCompanyCouponsByMaxPrice(int companyId, double maxPrice) {
+		log.debug("Getting all logged in company coupons by max price: {}...", maxPrice);
+		return coupRepo.findByCompanyIdAndPriceLessThanEqual(companyId, maxPrice);
 	}
 
 	/**
-	 * The getLoggedInCompany method returns the Company which is logged in and
-	 * using the facade.
+	 * The getCompanyCouponsByFilter method returns a List of the logged in company
+	 * coupons matching all the given filters in one query. Null filters are ignored.
+	 * @param category
+	 * @param minPrice
+	 * @param maxPrice
+	 * @param fromDate - coupons that end on or after this date.
+	 * @param toDate - coupons that start on or before this date.
 	 */
-	public Company getLoggedInCompany() {
-		System.out.println("Getting logged in company...");
-		return compRepo.findById(loggedInCompanyId).orElseThrow();
+	public List<Coupon> getCompanyCouponsByFilter(int companyId, CategoryType category, Double minPrice, Double maxPrice,
+			Date fromDate, Date toDate) {
+		log.debug("Getting logged in company coupons by filter...");
+		return coupRepo.findCompanyCouponsByFilter(companyId, category, minPrice, maxPrice, fromDate, toDate);
 	}
-	
+
 	/**
 	 * Get company by id method.
 	 * @param companyId
@@ -175,17 +217,7 @@ public class CompanyFacade extends ClientFacade {
 	 * @throws NoSuchElementException.
 	 */
 	public Company getCompanyById(int companyId) {
-		System.out.println("Getting company id: " + companyId + "...");
+		log.debug("Getting company id: {}...", companyId);
 		return compRepo.findById(companyId).orElseThrow();
 	}
-	
-	/**
-	 * Get all company coupons by company id.
-	 * @param companyId
-	 * @return List of all company coupons by company id, or an empty list.
-	 */
-	public List<Coupon> getAllCompanyCouponsByCompanyId(int companyId) {
-		System.out.println("Getting all coupons of company id: " + companyId + "...");
-		return compRepo.getOne(companyId).getCoupons();
-	}
 }
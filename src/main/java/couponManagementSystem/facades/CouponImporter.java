@@ -0,0 +1,191 @@
+package couponManagementSystem.facades;
+
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.db.CouponCatalogCache;
+import couponManagementSystem.db.CouponRepository;
+import couponManagementSystem.db.CouponSearchIndex;
+import couponManagementSystem.db.IdAllocator;
+
+/**
+ * The CouponImporter adds a large number of coupons to a company. Rows are read one at a time from the given iterator,
+ * validated, checked against the company's existing titles and the titles already imported, and written with JDBC
+ * batch inserts of coupon.import.batch-size rows, each batch in its own transaction with ids from the IdAllocator. If
+ * a batch fails (e.g. a title added concurrently) its rows are inserted one by one so that only the offending rows are
+ * rejected. Rejected rows are reported with their row number, the import goes on with the next row. The imported
+ * coupons are added to the search index.
+ */
+
+@Service
+public class CouponImporter {
+
+	private static final Logger log = LoggerFactory.getLogger(CouponImporter.class);
+
+	private static final String INSERT = "insert into coupons (id, company_id, category, title, description,"
+			+ " start_date, end_date, amount, price, image) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private final JdbcTemplate jdbc;
+	private final CouponRepository coupRepo;
+	private final CouponCatalogCache catalog;
+	private final CouponSearchIndex searchIndex;
+	private final IdAllocator idAllocator;
+	private final TransactionTemplate transactionTemplate;
+	private final int batchSize;
+	private final int maxErrors;
+
+	public CouponImporter(JdbcTemplate jdbc, CouponRepository coupRepo, CouponCatalogCache catalog,
+			CouponSearchIndex searchIndex, IdAllocator idAllocator, PlatformTransactionManager transactionManager,
+			@Value("${coupon.import.batch-size:1000}") int batchSize, @Value("${coupon.import.max-errors:1000}") int maxErrors) {
+		this.jdbc = jdbc;
+		this.coupRepo = coupRepo;
+		this.catalog = catalog;
+		this.searchIndex = searchIndex;
+		this.idAllocator = idAllocator;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.batchSize = batchSize;
+		this.maxErrors = maxErrors;
+	}
+
+	/**
+	 * Imports all rows of the iterator as coupons of the given company. An UncheckedIOException thrown by the iterator
+	 * stops the import, the rows imported so far stay imported.
+	 * @return the number of imported and rejected rows, with the errors of the rejected rows.
+	 */
+	public ImportReport importCoupons(int companyId, Iterator<ImportRow> rows) {
+		long start = System.currentTimeMillis();
+		ImportReport report = new ImportReport();
+		Set<String> titles = new HashSet<String>();
+		for (String title : coupRepo.findTitlesByCompanyId(companyId))
+			titles.add(normalize(title));
+
+		List<ImportRow> batch = new ArrayList<ImportRow>(batchSize);
+		try {
+			while (rows.hasNext()) {
+				ImportRow row = rows.next();
+				String error = row.getError() != null ? row.getError() : validate(row.getCoupon());
+				if (error == null && !titles.add(normalize(row.getCoupon().getTitle())))
+					error = "A coupon with the title " + row.getCoupon().getTitle() + " already exists";
+				if (error != null) {
+					report.addError(row.getRowNumber(), error, maxErrors);
+					continue;
+				}
+				batch.add(row);
+				if (batch.size() == batchSize) {
+					write(companyId, batch, report);
+					batch.clear();
+				}
+			}
+		} catch (UncheckedIOException e) {
+			report.abort(e.getCause().getMessage());
+		}
+		write(companyId, batch, report);
+		if (report.getImported() > 0)
+			catalog.invalidate();
+		log.info("Imported {} coupons for company id: {}, {} rows rejected, {} ms", report.getImported(), companyId,
+				report.getFailed(), System.currentTimeMillis() - start);
+		return report;
+	}
+
+	/**
+	 * @return why the coupon cannot be imported, or null if it is valid.
+	 */
+	private static String validate(Coupon coupon) {
+		if (coupon.getTitle() == null || coupon.getTitle().trim().isEmpty())
+			return "Missing title";
+		if (coupon.getCategory() == null)
+			return "Missing category";
+		if (coupon.getStartDate() == null || coupon.getEndDate() == null)
+			return "Missing start or end date";
+		if (coupon.getEndDate().before(coupon.getStartDate()))
+			return "End date is before start date";
+		if (coupon.getAmount() < 0)
+			return "Negative amount";
+		if (coupon.getPrice() < 0)
+			return "Negative price";
+		return null;
+	}
+
+	/**
+	 * Titles are unique per company case insensitively, like the unique index under the MySQL collation.
+	 */
+	private static String normalize(String title) {
+		return title.toLowerCase(Locale.ROOT);
+	}
+
+	private void write(int companyId, List<ImportRow> batch, ImportReport report) {
+		if (batch.isEmpty())
+			return;
+		// the ids of rejected rows are not reused
+		int firstId = idAllocator.allocate("coupons", batch.size());
+		try {
+			transactionTemplate.execute(status -> jdbc.batchUpdate(INSERT, new BatchPreparedStatementSetter() {
+				@Override
+				public void setValues(PreparedStatement ps, int i) throws SQLException {
+					bind(ps, firstId + i, companyId, batch.get(i).getCoupon());
+				}
+
+				@Override
+				public int getBatchSize() {
+					return batch.size();
+				}
+			}));
+			report.addImported(batch.size());
+			for (int i = 0; i < batch.size(); i++)
+				index(firstId + i, companyId, batch.get(i).getCoupon());
+		} catch (DataAccessException batchFailure) {
+			for (int i = 0; i < batch.size(); i++) {
+				ImportRow row = batch.get(i);
+				int id = firstId + i;
+				try {
+					transactionTemplate.execute(
+							status -> jdbc.update(INSERT, ps -> bind(ps, id, companyId, row.getCoupon())));
+					report.addImported(1);
+					index(id, companyId, row.getCoupon());
+				} catch (DuplicateKeyException e) {
+					report.addError(row.getRowNumber(),
+							"A coupon with the title " + row.getCoupon().getTitle() + " already exists", maxErrors);
+				} catch (DataAccessException e) {
+					report.addError(row.getRowNumber(), e.getMostSpecificCause().getMessage(), maxErrors);
+				}
+			}
+		}
+	}
+
+	private void index(int id, int companyId, Coupon coupon) {
+		searchIndex.put(id, companyId, coupon.getCategory(), coupon.getTitle(), coupon.getDescription(),
+				coupon.getPrice());
+	}
+
+	private static void bind(PreparedStatement ps, int id, int companyId, Coupon coupon) throws SQLException {
+		ps.setInt(1, id);
+		ps.setInt(2, companyId);
+		ps.setInt(3, coupon.getCategory().ordinal());
+		ps.setString(4, coupon.getTitle());
+		ps.setString(5, coupon.getDescription());
+		ps.setDate(6, coupon.getStartDate());
+		ps.setDate(7, coupon.getEndDate());
+		ps.setInt(8, coupon.getAmount());
+		ps.setDouble(9, coupon.getPrice());
+		ps.setString(10, coupon.getImage());
+	}
+}
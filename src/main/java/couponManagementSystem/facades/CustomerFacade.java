@@ -1,100 +1,94 @@
 package couponManagementSystem.facades;
 
+import java.sql.Date;
 import java.util.Calendar;
 import java.util.HashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
-import org.springframework.context.annotation.Scope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import couponManagementSystem.beans.CategoryType;
 import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.beans.CouponView;
 import couponManagementSystem.beans.Customer;
 import couponManagementSystem.db.CompanyRepository;
+import couponManagementSystem.db.CouponCatalogCache;
 import couponManagementSystem.db.CouponRepository;
+import couponManagementSystem.db.CouponSearchIndex;
 import couponManagementSystem.db.CustomerRepository;
+import couponManagementSystem.db.Inventory;
 import couponManagementSystem.exceptions.CouponExpiredException;
 import couponManagementSystem.exceptions.DoubleCouponPurchseException;
 import couponManagementSystem.exceptions.InsufficientAmountException;
 import couponManagementSystem.exceptions.InvalidLoginExcepction;
+import couponManagementSystem.login.PasswordHasher;
 
 @Service
-@Scope("prototype")
 public class CustomerFacade extends ClientFacade {
 
+	private static final Logger log = LoggerFactory.getLogger(CustomerFacade.class);
+
+	private final Inventory inventory;
+
 	//CTOR
-	public CustomerFacade(CompanyRepository compRepo, CustomerRepository custRepo, CouponRepository coupRepo) {
-		super(compRepo, custRepo, coupRepo);
+	public CustomerFacade(CompanyRepository compRepo, CustomerRepository custRepo, CouponRepository coupRepo,
+			PasswordHasher hasher, CouponCatalogCache catalog, CouponSearchIndex searchIndex, Inventory inventory) {
+		super(compRepo, custRepo, coupRepo, hasher, catalog, searchIndex);
+		this.inventory = inventory;
 	}
 
-	/**
-	 * Variable to contain a unique logged in customer id.
-	 */
-	private int loggedInCustomerId;
-
 	/**
 	 * The customer login method will compare given email and password with
-	 * information on the database. If credentials exist the method will return a
-	 * customer facade and update loggedInCustomerId. Throw custom invalid login
-	 * exception if credentials don't exist.
+	 * information on the database. If credentials exist the method will return the
+	 * customer id. A plaintext or outdated password hash is replaced by a hash with
+	 * the current cost. Throw custom invalid login exception if credentials don't exist.
 	 */
 	@Override
-	public boolean login(String email, String password) throws InvalidLoginExcepction {
-		if (custRepo.findCustomerByEmail(email).getPassword().equals(password)) {
-			loggedInCustomerId = custRepo.findCustomerByEmail(email).getId();
-			System.out.println("Logged in with customer id: " + loggedInCustomerId + "...");
-			return true;
+	public int login(String email, String password) throws InvalidLoginExcepction {
+		Customer customer = custRepo.findCustomerByEmail(email);
+		if (hasher.matches(password, customer.getPassword())) {
+			if (hasher.needsRehash(customer.getPassword()))
+				custRepo.updatePassword(customer.getId(), hasher.hash(password));
+			log.debug("Logged in with customer id: {}...", customer.getId());
+			return customer.getId();
 		}
 		throw new InvalidLoginExcepction();
 	}
 
 	/**
-	 * The purchaseCoupon method will update an entry on the connection table
-	 * matching coupons and customers. Once a customer who is logged in and using
-	 * the facade asks to purchase a coupon the method will verify it exists in the
-	 * database, if it exists, the method will check if it has expired (if so it
-	 * will throw a custom exception), next it will check if the logged in customer
-	 * already bought the coupon before (if so it ill throw a custom exception),
-	 * next it will check if there is a sufficient amount (more than 0) of coupons
-	 * in the database. if amount is insufficient the method will throw a custom
-	 * exception. If no exception has been thrown the method will add the coupon to
-	 * the customer's collection, update the database and reduce the coupon amount
-	 * by 1.
+	 * The purchaseCoupon method will add an entry on the connection table matching
+	 * coupons and customers. Once a customer who is logged in and using the facade
+	 * asks to purchase a coupon the method will check if it has expired (if so it
+	 * will throw a custom exception), then the Inventory checks if the logged in
+	 * customer already bought the coupon before and takes one coupon from the stock
+	 * (if not it will throw a custom exception) and records the purchase. See the
+	 * inventory.mode property for when the purchase is written to the database.
 	 */
-	public void purchaseCoupon(Coupon coupon) throws InsufficientAmountException, 
+	public void purchaseCoupon(int customerId, Coupon coupon) throws InsufficientAmountException, 
 			CouponExpiredException, DoubleCouponPurchseException {
 		
-		Coupon couponToPurchase = coupRepo.findById(coupon.getId()).orElseThrow();
-		
 		if (coupon.getEndDate().before(Calendar.getInstance().getTime()))
 			throw new CouponExpiredException();
 		
-		if (couponToPurchase.getAmount() > 0) {
-			couponToPurchase.setAmount(coupon.getAmount() - 1);
-			coupRepo.save(coupon);
-		} else
-			throw new InsufficientAmountException();
-		
-		Customer cust = custRepo.findById(loggedInCustomerId).orElseThrow();
-		Set<Coupon> customerCoupons = getAllCustomerCoupons();
-		if (!customerCoupons.contains(couponToPurchase)) {
-			System.out.println("Purchasing coupon id: " + couponToPurchase.getId() + ", by customer id: " + loggedInCustomerId);
-			customerCoupons.add(couponToPurchase);
-			cust.setCoupons(customerCoupons);
-			custRepo.save(cust);
-		} else
-			throw new DoubleCouponPurchseException();
+		inventory.purchase(customerId, coupon.getId());
+		log.debug("Purchased coupon id: {}, by customer id: {}", coupon.getId(), customerId);
 	}
 
 	/**
 	 * The getAllCustomerCoupons method returns a List of all the coupons of the
 	 * customer which is logged in and using the facade.
 	 */
-	public Set<Coupon> getAllCustomerCoupons() {
-		System.out.println("Getting all logged in customer coupons...");
-		return getLoggedInCustomer().getCoupons();
+	public Set<Coupon> getAllCustomerCoupons(int customerId) {
+		log.debug("Getting all coupons of customer id: {}...", customerId);
+		return new HashSet<Coupon>(coupRepo.findCustomerCoupons(customerId));
 	}
 
 	/**
@@ -102,9 +96,9 @@ public class CustomerFacade extends ClientFacade {
 	 * coupons of the logged in customer using the facade.
 	 */
 
-	public Coupon getOneCustomerCoupon(int id) {
-		System.out.println("Getting logged in customer coupon id: " + id + "...");
-		for (Coupon coupon : getAllCustomerCoupons()) {
+	public Coupon getOneCustomerCoupon(int customerId, int id) {
+		log.debug("Getting logged in customer coupon id: {}...", id);
+		for (Coupon coupon : getAllCustomerCoupons(customerId)) {
 			if (coupon.getId() == id)
 				return coupon;
 		}
@@ -115,37 +109,33 @@ public class CustomerFacade extends ClientFacade {
 	 * The getAllCustomerCouponsByCategory method returns a List of the logged in
 	 * customer coupons by a given category.
 	 */
-	public Set<Coupon> getAllCustomerCouponsByCategory(CategoryType category) {
-		System.out.println("Getting all logged in customer coupons by category: " + category + "...");
-		Set<Coupon> customerCouponsByCategory = new HashSet<Coupon>();
-		for (Coupon coupon : getAllCustomerCoupons()) {
-			if (coupon.getCategory() == category)
-				customerCouponsByCategory.add(coupon);
-		}
-		return customerCouponsByCategory;
+	public Set<Coupon> getAllCustomerCouponsByCategory(int customerId, CategoryType category) {
+		log.debug("Getting all logged in customer coupons by category: {}...", category);
+		return new HashSet<Coupon>(coupRepo.findCustomerCouponsByCategory(customerId, category));
 	}
 
 	/**
 	 * The getAllCustomerCouponsByMaxPrice method returns a List of the logged in
 	 * customer coupons by a given max price.
 	 */
-	public Set<Coupon> getAllCustomerCouponsByMaxPrice(double maxPrice) {
-		System.out.println("Getting all logged in customer coupons by max price: " + maxPrice + "...");
-		Set<Coupon> customerCouponsByMaxPrice = new HashSet<Coupon>();
-		for (Coupon coupon : getAllCustomerCoupons()) {
-			if (coupon.getPrice() <= maxPrice)
-				customerCouponsByMaxPrice.add(coupon);
-		}
-		return customerCouponsByMaxPrice;
+	public Set<Coupon> getAllCustomerCouponsByMaxPrice(int customerId, double maxPrice) {
+		log.debug("Getting all logged in customer coupons by max price: {}...", maxPrice);
+		return new HashSet<Coupon>(coupRepo.findCustomerCouponsByMaxPrice(customerId, maxPrice));
 	}
 
 	/**
-	 * The getLoggedInCustomer method returns the Customer which is logged in and
-	 * using the facade.
+	 * The getCustomerCouponsByFilter method returns a List of the logged in customer
+	 * coupons matching all the given filters in one query. Null filters are ignored.
+	 * @param category
+	 * @param minPrice
+	 * @param maxPrice
+	 * @param fromDate - coupons that end on or after this date.
+	 * @param toDate - coupons that start on or before this date.
 	 */
-	public Customer getLoggedInCustomer() {
-		System.out.println("Getting logged in customer...");
-		return custRepo.findById(loggedInCustomerId).orElseThrow();
+	public List<Coupon> getCustomerCouponsByFilter(int customerId, CategoryType category, Double minPrice, Double maxPrice,
+			Date fromDate, Date toDate) {
+		log.debug("Getting logged in customer coupons by filter...");
+		return coupRepo.findCustomerCouponsByFilter(customerId, category, minPrice, maxPrice, fromDate, toDate);
 	}
 
 	/**
@@ -155,19 +145,43 @@ public class CustomerFacade extends ClientFacade {
 	 * @throws NoSuchElementException.
 	 */
 	public Customer getCustomerById(int customerId) {
-		System.out.println("Getting customer id: " + customerId + "...");
+		log.debug("Getting customer id: {}...", customerId);
 		return custRepo.findById(customerId).orElseThrow();
 	}
 	
 	/**
-	 * Get all coupons method.
+	 * Get all coupons method. The full catalog is read from the database, it is not cached: prefer getCouponsPage or
+	 * streamAllCoupons.
 	 * @return List of all coupons in the database, or an empty list.
 	 */
 	public List<Coupon> getAllCoupons() {
-		System.out.println("Getting all coupons...");
+		log.debug("Getting all coupons...");
 		return coupRepo.findAll();
 	}
 	
+	/**
+	 * Keyset paged coupons method.
+	 * @param afterId - the id of the last coupon of the previous page, 0 for the first page.
+	 * @param size - maximum number of coupons in the page.
+	 * @return Slice of coupons with an id greater than afterId, ordered by id.
+	 */
+	public Slice<CouponView> getCouponsPage(int afterId, int size) {
+		log.debug("Getting coupons page after id: {}...", afterId);
+		return catalog.getCouponsPage(afterId, size);
+	}
+
+	/**
+	 * Streams all coupons to the given consumer through a database cursor, so memory use does not
+	 * depend on the number of coupons.
+	 */
+	@Transactional(readOnly = true)
+	public void streamAllCoupons(Consumer<CouponView> consumer) {
+		log.debug("Streaming all coupons...");
+		try (Stream<CouponView> coupons = coupRepo.streamAllByOrderByIdAsc()) {
+			coupons.forEach(consumer);
+		}
+	}
+
 	/**
 	 * Get coupon by coupon id
 	 * @param id
@@ -175,8 +189,28 @@ public class CustomerFacade extends ClientFacade {
 	 * @throws NoSuchElementException.
 	 */
 	public Coupon getCouponByCouponId(int id) {
-		System.out.println("Getting coupon id: " + id + "...");
-		return coupRepo.findById(id).orElseThrow();
+		log.debug("Getting coupon id: {}...", id);
+		return catalog.getCoupon(id);
+	}
+
+	/**
+	 * Full text search of all coupons in the search index, see CouponSearchIndex.search.
+	 * @param text - words of the title or description, the last one may be the start of a word.
+	 * @return the page of matching coupons, best first, with the number of matches and their facets.
+	 */
+	public CouponSearchIndex.SearchResult searchCoupons(String text, CategoryType category, Integer companyId,
+			Double minPrice, Double maxPrice, int offset, int size) {
+		log.debug("Searching coupons for: {}...", text);
+		return searchIndex.search(text, category, companyId, minPrice, maxPrice, offset, size);
+	}
+
+	/**
+	 * Autocomplete method.
+	 * @return words of the coupons starting with the prefix, the most common first.
+	 */
+	public List<String> suggestSearchWords(String prefix, int size) {
+		log.debug("Suggesting search words for: {}...", prefix);
+		return searchIndex.suggest(prefix, size);
 	}
 	
 }
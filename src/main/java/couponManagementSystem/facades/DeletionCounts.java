@@ -0,0 +1,35 @@
+package couponManagementSystem.facades;
+
+/**
+ * The number of rows deleted by a set based delete of a company or a customer.
+ */
+
+public final class DeletionCounts {
+
+	private final int coupons;
+	private final int purchases;
+
+	public DeletionCounts(int coupons, int purchases) {
+		this.coupons = coupons;
+		this.purchases = purchases;
+	}
+
+	/**
+	 * @return the number of coupons deleted.
+	 */
+	public int getCoupons() {
+		return coupons;
+	}
+
+	/**
+	 * @return the number of purchases (customers_vs_coupons rows) deleted.
+	 */
+	public int getPurchases() {
+		return purchases;
+	}
+
+	@Override
+	public String toString() {
+		return "[coupons=" + coupons + ", purchases=" + purchases + "]";
+	}
+}
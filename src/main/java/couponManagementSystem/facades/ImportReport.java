@@ -0,0 +1,70 @@
+package couponManagementSystem.facades;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of a bulk coupon import: the number of coupons imported and rejected, the errors of the rejected rows (up
+ * to coupon.import.max-errors of them) and, if the document itself could not be read to the end, why the import
+ * stopped. Coupons imported before the import stopped stay imported.
+ */
+
+public class ImportReport {
+
+	private long imported;
+	private long failed;
+	private final List<RowError> errors = new ArrayList<RowError>();
+	private String aborted;
+
+	void addImported(int count) {
+		imported += count;
+	}
+
+	void addError(long rowNumber, String message, int maxErrors) {
+		failed++;
+		if (errors.size() < maxErrors)
+			errors.add(new RowError(rowNumber, message));
+	}
+
+	void abort(String message) {
+		aborted = message;
+	}
+
+	public long getImported() {
+		return imported;
+	}
+
+	public long getFailed() {
+		return failed;
+	}
+
+	public List<RowError> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return why the import stopped before the end of the document, or null if the whole document was read.
+	 */
+	public String getAborted() {
+		return aborted;
+	}
+
+	public static class RowError {
+
+		private final long row;
+		private final String message;
+
+		RowError(long row, String message) {
+			this.row = row;
+			this.message = message;
+		}
+
+		public long getRow() {
+			return row;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package couponManagementSystem.facades;
+
+import couponManagementSystem.beans.Coupon;
+
+/**
+ * One row of a bulk coupon import: either a parsed coupon or the reason the row could not be parsed.
+ */
+
+public final class ImportRow {
+
+	private final long rowNumber;
+	private final Coupon coupon;
+	private final String error;
+
+	private ImportRow(long rowNumber, Coupon coupon, String error) {
+		this.rowNumber = rowNumber;
+		this.coupon = coupon;
+		this.error = error;
+	}
+
+	public static ImportRow of(long rowNumber, Coupon coupon) {
+		return new ImportRow(rowNumber, coupon, null);
+	}
+
+	public static ImportRow invalid(long rowNumber, String error) {
+		return new ImportRow(rowNumber, null, error);
+	}
+
+	/**
+	 * @return the 1 based number of the row in the imported document.
+	 */
+	public long getRowNumber() {
+		return rowNumber;
+	}
+
+	/**
+	 * @return the parsed coupon, or null if the row is invalid.
+	 */
+	public Coupon getCoupon() {
+		return coupon;
+	}
+
+	public String getError() {
+		return error;
+	}
+}
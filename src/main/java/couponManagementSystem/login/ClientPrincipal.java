@@ -0,0 +1,46 @@
+package couponManagementSystem.login;
+
+/**
+ * The ClientPrincipal identifies a logged in client: the client type and the id of the company or customer (0 for the
+ * administrator). It is immutable and is all that a session needs to keep, the facades are shared singletons that
+ * take the client id as a parameter.
+ */
+
+public final class ClientPrincipal {
+
+	private final ClientType clientType;
+	private final int clientId;
+
+	public ClientPrincipal(ClientType clientType, int clientId) {
+		this.clientType = clientType;
+		this.clientId = clientId;
+	}
+
+	public ClientType getClientType() {
+		return clientType;
+	}
+
+	public int getClientId() {
+		return clientId;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ClientPrincipal))
+			return false;
+		ClientPrincipal other = (ClientPrincipal) obj;
+		return clientType == other.clientType && clientId == other.clientId;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * clientType.hashCode() + clientId;
+	}
+
+	@Override
+	public String toString() {
+		return "ClientPrincipal [clientType=" + clientType + ", clientId=" + clientId + "]";
+	}
+}
@@ -1,12 +1,10 @@
 package couponManagementSystem.login;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.stereotype.Service;
 
 import couponManagementSystem.exceptions.InvalidLoginExcepction;
 import couponManagementSystem.facades.AdminFacade;
-import couponManagementSystem.facades.ClientFacade;
 import couponManagementSystem.facades.CompanyFacade;
 import couponManagementSystem.facades.CustomerFacade;
 
@@ -14,27 +12,29 @@ import couponManagementSystem.facades.CustomerFacade;
 public class LoginManager {
 	
 	@Autowired
-	private ConfigurableApplicationContext ctx; 
+	private AdminFacade adminFacade;
+	@Autowired
+	private CompanyFacade compFacade;
+	@Autowired
+	private CustomerFacade custFacade;
 	
-	public ClientFacade ClientLogin(String email, String password, ClientType client)
+	/**
+	 * Checks the credentials with the facade of the given client type.
+	 * @return the principal of the logged in client, to be kept in its session.
+	 */
+	public ClientPrincipal ClientLogin(String email, String password, ClientType client)
 			throws InvalidLoginExcepction, NullPointerException {
 
 		switch (client) {
 
 		case Adminisrtator:
-			AdminFacade adminFacade = ctx.getBean(AdminFacade.class);
-			if (adminFacade.login(email, password));
-				return adminFacade;
+			return new ClientPrincipal(client, adminFacade.login(email, password));
 
 		case Company:
-			CompanyFacade compFacade = ctx.getBean(CompanyFacade.class);
-			if (compFacade.login(email, password));
-				return compFacade;
+			return new ClientPrincipal(client, compFacade.login(email, password));
 
 		case Customer:
-			CustomerFacade custFacade = ctx.getBean(CustomerFacade.class);
-			if (custFacade.login(email, password));
-				return custFacade;
+			return new ClientPrincipal(client, custFacade.login(email, password));
 
 		default:
 			throw new InvalidLoginExcepction();
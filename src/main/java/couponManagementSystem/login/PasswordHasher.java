@@ -0,0 +1,110 @@
+package couponManagementSystem.login;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * The PasswordHasher hashes the passwords of companies, customers and the administrator with salted PBKDF2
+ * (HMAC-SHA256). A hashed password is stored as pbkdf2$iterations$salt$hash, so the cost can be raised with the
+ * password.hash.iterations property without invalidating existing hashes: a password hashed with a different
+ * iteration count still verifies, and needsRehash tells the login to store it again with the current cost.
+ * Passwords that are not in that format are plaintext rows from before hashing was introduced, they are compared as
+ * is and upgraded on the next successful login.
+ */
+
+@Component
+public class PasswordHasher {
+
+	private static final String PREFIX = "pbkdf2$";
+	private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final int SALT_LENGTH = 16;
+	private static final int HASH_LENGTH = 32;
+
+	private final int iterations;
+	private final SecureRandom random = new SecureRandom();
+
+	public PasswordHasher(@Value("${password.hash.iterations:310000}") int iterations) {
+		this.iterations = iterations;
+	}
+
+	/**
+	 * @return a new salted hash of the given password, with the configured iteration count.
+	 */
+	public String hash(String password) {
+		byte[] salt = new byte[SALT_LENGTH];
+		random.nextBytes(salt);
+		Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+		return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$"
+				+ encoder.encodeToString(pbkdf2(password, salt, iterations));
+	}
+
+	/**
+	 * @return the given password hashed, or the password itself if it already is a hash.
+	 */
+	public String hashIfPlain(String password) {
+		return password == null || isHashed(password) ? password : hash(password);
+	}
+
+	/**
+	 * Checks a password against a stored hash, or against a stored plaintext password.
+	 */
+	public boolean matches(String password, String stored) {
+		if (password == null || stored == null)
+			return false;
+		if (!isHashed(stored))
+			return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+		String[] parts = stored.split("\\$");
+		if (parts.length != 4)
+			return false;
+		try {
+			byte[] salt = Base64.getDecoder().decode(parts[2]);
+			byte[] hash = Base64.getDecoder().decode(parts[3]);
+			return MessageDigest.isEqual(hash, pbkdf2(password, salt, Integer.parseInt(parts[1])));
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	public boolean isHashed(String stored) {
+		return stored.startsWith(PREFIX);
+	}
+
+	/**
+	 * @return true if the stored password is plaintext or was hashed with a different iteration count.
+	 */
+	public boolean needsRehash(String stored) {
+		return !isHashed(stored) || !stored.startsWith(PREFIX + iterations + "$");
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+		PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_LENGTH * 8);
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Cannot hash password with " + ALGORITHM, e);
+		} finally {
+			spec.clearPassword();
+		}
+	}
+
+	/**
+	 * Prints the hash of the given password, to be used as the admin.password property.
+	 */
+	public static void main(String[] args) {
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 310000;
+		System.out.println(new PasswordHasher(iterations).hash(args[0]));
+	}
+}
@@ -1,10 +1,14 @@
 package couponManagementSystem.web;
 
 import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -13,11 +17,16 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import couponManagementSystem.beans.Company;
+import couponManagementSystem.beans.CompanyView;
 import couponManagementSystem.beans.Coupon;
 import couponManagementSystem.beans.Customer;
+import couponManagementSystem.beans.CustomerView;
+import couponManagementSystem.db.CouponCatalogCache;
 import couponManagementSystem.exceptions.CompanyExistsException;
 import couponManagementSystem.exceptions.CompanyUpdateException;
 import couponManagementSystem.exceptions.CustomerExistsException;
@@ -33,17 +42,19 @@ import couponManagementSystem.facades.AdminFacade;
 @RestController
 public class AdminController extends ClientController{
 
+	@Autowired
+	private AdminFacade facade;
+	@Autowired
+	private CouponCatalogCache catalog;
+
 	/**
 	 * Get all companies method.
 	 * @param token
 	 * @return List of all companies in the database or empty list.
 	 */
 	@GetMapping("/companies/{token}")
-	public ResponseEntity<List<Company>> getAllCompanies(@PathVariable String token) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
-		AdminFacade admin = (AdminFacade)session.getFacade();
-		List<Company> companies = admin.getAllCompanies();
+	public ResponseEntity<List<CompanyView>> getAllCompanies(@PathVariable String token) {
+		List<CompanyView> companies = facade.getAllCompanies();
 		return ResponseEntity.ok(companies);
 	}
 	
@@ -54,11 +65,57 @@ public class AdminController extends ClientController{
 	 */
 	@GetMapping("/customers/{token}")
 	public ResponseEntity<?> getAllCustomers(@PathVariable String token) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
-		return ResponseEntity.ok(((AdminFacade)session.getFacade()).getAllCustomers());
+		return ResponseEntity.ok(facade.getAllCustomers());
 	}
 	
+	/**
+	 * Get a page of companies method (keyset pagination by id).
+	 * @param token
+	 * @param after - the id of the last company of the previous page, 0 for the first page.
+	 * @param size - page size, at most MAX_PAGE_SIZE.
+	 * @return CursorPage of companies ordered by id.
+	 */
+	@GetMapping("/companiesPage/{token}")
+	public ResponseEntity<?> getCompaniesPage(@PathVariable String token, @RequestParam(defaultValue = "0") int after,
+			@RequestParam(defaultValue = "100") int size) {
+		Slice<CompanyView> companies = facade.getCompaniesPage(after, pageSize(size));
+		return ResponseEntity.ok(CursorPage.of(companies, CompanyView::getId));
+	}
+
+	/**
+	 * Stream all companies method.
+	 * @param token
+	 * @return All companies as newline delimited JSON, written while they are read from a database cursor.
+	 */
+	@GetMapping("/companiesStream/{token}")
+	public ResponseEntity<StreamingResponseBody> streamAllCompanies(@PathVariable String token) {
+		return ndjson.stream(facade::streamAllCompanies);
+	}
+
+	/**
+	 * Get a page of customers method (keyset pagination by id).
+	 * @param token
+	 * @param after - the id of the last customer of the previous page, 0 for the first page.
+	 * @param size - page size, at most MAX_PAGE_SIZE.
+	 * @return CursorPage of customers ordered by id.
+	 */
+	@GetMapping("/customersPage/{token}")
+	public ResponseEntity<?> getCustomersPage(@PathVariable String token, @RequestParam(defaultValue = "0") int after,
+			@RequestParam(defaultValue = "100") int size) {
+		Slice<CustomerView> customers = facade.getCustomersPage(after, pageSize(size));
+		return ResponseEntity.ok(CursorPage.of(customers, CustomerView::getId));
+	}
+
+	/**
+	 * Stream all customers method.
+	 * @param token
+	 * @return All customers as newline delimited JSON, written while they are read from a database cursor.
+	 */
+	@GetMapping("/customersStream/{token}")
+	public ResponseEntity<StreamingResponseBody> streamAllCustomers(@PathVariable String token) {
+		return ndjson.stream(facade::streamAllCustomers);
+	}
+
 	/**
 	 * Get one company method.
 	 * @param token
@@ -68,10 +125,8 @@ public class AdminController extends ClientController{
 	 */
 	@GetMapping ("/companies/{id}/{token}")
 	public ResponseEntity<?> getOneCompany(@PathVariable String token, @PathVariable int id) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
 		try {
-			return ResponseEntity.ok(((AdminFacade)session.getFacade()).getOneCompany(id));
+			return ResponseEntity.ok(facade.getOneCompany(id));
 		} catch (NoSuchElementException e ) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Cannot find a company with id: " + id);
 		}
@@ -86,10 +141,8 @@ public class AdminController extends ClientController{
 	 */
 	@GetMapping ("/customers/{id}/{token}")
 	public ResponseEntity<?> getOneCustomer(@PathVariable String token, @PathVariable int id) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
 		try {
-			return ResponseEntity.ok(((AdminFacade)session.getFacade()).getOneCustomer(id));
+			return ResponseEntity.ok(facade.getOneCustomer(id));
 		} catch (NoSuchElementException e) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Cannot find customer with id: " + id);
 		}
@@ -103,9 +156,7 @@ public class AdminController extends ClientController{
 	 */
 	@GetMapping("/companyCoupons/{id}/{token}")
 	public ResponseEntity<?> getAllCompanyCouponsByCompanyId(@PathVariable String token, @PathVariable int id) {	
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
-		List<Coupon> companyCoupons = ((AdminFacade) session.getFacade()).getAllCompanyCouponsByCompanyId(id);
+		List<Coupon> companyCoupons = facade.getAllCompanyCouponsByCompanyId(id);
 		return ResponseEntity.ok(companyCoupons);
 	}
 	
@@ -118,9 +169,7 @@ public class AdminController extends ClientController{
 	 */
 	@GetMapping("/customerCoupons/{id}/{token}")
 	public ResponseEntity<?> getAllCustomerCouponsByCustomerId(@PathVariable String token, @PathVariable int id) {	
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
-		Set<Coupon> customerCoupons = ((AdminFacade) session.getFacade()).getAllCustomerCouponsByCustomerId(id);
+		Set<Coupon> customerCoupons = facade.getAllCustomerCouponsByCustomerId(id);
 		return ResponseEntity.ok(customerCoupons);
 	}
 	
@@ -133,10 +182,8 @@ public class AdminController extends ClientController{
 	 */
 	@PostMapping("/companies/{token}")
 	public ResponseEntity<?> addCompany(@PathVariable String token, @RequestBody Company company) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
 		try {
-			((AdminFacade)session.getFacade()).addCompany(company);
+			facade.addCompany(company);
 		} catch (CompanyExistsException e) {
 			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
 		}
@@ -152,10 +199,8 @@ public class AdminController extends ClientController{
 	 */
 	@PostMapping("/customers/{token}")
 	public ResponseEntity<?> addCustomer(@PathVariable String token, @RequestBody Customer customer) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
 		try {
-			((AdminFacade)session.getFacade()).addCustomer(customer);
+			facade.addCustomer(customer);
 		} catch (CustomerExistsException e) {
 			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
 		}
@@ -171,10 +216,8 @@ public class AdminController extends ClientController{
 	 */
 	@DeleteMapping ("/companies/{id}/{token}")
 	public ResponseEntity<?> deleteCompany(@PathVariable String token, @PathVariable int id) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
 		try {
-			((AdminFacade)session.getFacade()).deleteCompany(id);
+			facade.deleteCompany(id);
 			return ResponseEntity.ok("Company deleted!");
 		} catch (NoSuchElementException e) {
 			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Could not find company with given id...");		
@@ -187,16 +230,12 @@ public class AdminController extends ClientController{
 	 * @param token
 	 * @param id
 	 * @return Status 200 (OK) with String notice, 
-	 * @throws CustomerExistsException || NoSuchElementException.
+	 * @throws NoSuchElementException.
 	 */
 	@DeleteMapping ("/customers/{id}/{token}")
 	public ResponseEntity<?> deleteCustomer(@PathVariable String token, @PathVariable int id) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
 		try {
-			((AdminFacade)session.getFacade()).deleteCustomer(id);
-		} catch (CustomerExistsException e) {
-			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+			facade.deleteCustomer(id);
 		} catch (NoSuchElementException e) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Cannot find customer with id: " + id);
 		}
@@ -212,10 +251,8 @@ public class AdminController extends ClientController{
 	 */
 	@PutMapping ("/companies/{token}")
 	public ResponseEntity<?> updateCompany(@PathVariable String token, @RequestBody Company company) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
 		try {
-			((AdminFacade)session.getFacade()).updateCompany(company);
+			facade.updateCompany(company);
 		} catch (CompanyUpdateException e) {
 			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
 		} catch (NoSuchElementException e) {
@@ -235,10 +272,8 @@ public class AdminController extends ClientController{
 	 */
 	@PutMapping ("/customers/{token}")
 	public ResponseEntity<?> updateCustomer(@PathVariable String token, @RequestBody Customer customer) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
 		try {
-			((AdminFacade)session.getFacade()).updateCustomer(customer);
+			facade.updateCustomer(customer);
 		} catch (CustomerExistsException e) {
 			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
 		} catch (NoSuchElementException e) {
@@ -247,6 +282,37 @@ public class AdminController extends ClientController{
 		return ResponseEntity.ok("Customer updated!");
 	}
 
+	/**
+	 * Get session statistics method.
+	 * @param token
+	 * @return Number of live sessions, and sessions created and expired since startup.
+	 */
+	@GetMapping("/sessionStats/{token}")
+	public ResponseEntity<?> getSessionStats(@PathVariable String token) {
+		Map<String, Long> stats = new LinkedHashMap<String, Long>();
+		stats.put("live", sessionStore.getLiveSessions());
+		stats.put("created", sessionStore.getCreatedSessions());
+		stats.put("expired", sessionStore.getExpiredSessions());
+		return ResponseEntity.ok(stats);
+	}
+
+	/**
+	 * Get coupon catalog cache statistics method.
+	 * @param token
+	 * @return Number of cached entries, and hits, misses, evictions, expirations and invalidations since startup.
+	 */
+	@GetMapping("/couponCacheStats/{token}")
+	public ResponseEntity<?> getCouponCacheStats(@PathVariable String token) {
+		Map<String, Long> stats = new LinkedHashMap<String, Long>();
+		stats.put("size", (long) catalog.getSize());
+		stats.put("hits", catalog.getHits());
+		stats.put("misses", catalog.getMisses());
+		stats.put("evictions", catalog.getEvictions());
+		stats.put("expirations", catalog.getExpirations());
+		stats.put("invalidations", catalog.getInvalidations());
+		return ResponseEntity.ok(stats);
+	}
+
 	/**
 	 * To comply with specification - ClientController is an abstract class with a boolean login method.
 	 * Method is not used in the system implementation, login is managed by the LoginController 
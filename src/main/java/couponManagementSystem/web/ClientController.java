@@ -1,15 +1,31 @@
 package couponManagementSystem.web;
 
-import java.util.Map;
-
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
 public abstract class ClientController {
 
+	/**
+	 * Maximum number of elements in one page of a paginated list endpoint.
+	 */
+	public static final int MAX_PAGE_SIZE = 1000;
+
+	@Autowired
+	protected SessionStore sessionStore;
 	@Autowired
-	protected Map<String, Session> sessionMap;
+	protected NdjsonStreamer ndjson;
 	
 	public abstract boolean login (String email, String password);
+
+	/**
+	 * @return the session of the token in the 0 ordinal argument, already authenticated by the aspect in WebConfig.
+	 */
+	protected static Session currentSession() {
+		return RequestSession.get();
+	}
+
+	protected static int pageSize(int requestedSize) {
+		return Math.max(1, Math.min(requestedSize, MAX_PAGE_SIZE));
+	}
 }
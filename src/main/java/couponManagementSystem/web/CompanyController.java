@@ -1,9 +1,19 @@
 package couponManagementSystem.web;
 
+import java.io.IOException;
+import java.sql.Date;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.NoSuchElementException;
 
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Slice;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -12,14 +22,21 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import couponManagementSystem.beans.CategoryType;
 import couponManagementSystem.beans.Company;
 import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.beans.CouponView;
 import couponManagementSystem.exceptions.CouponExistsException;
 import couponManagementSystem.exceptions.CouponUpdateException;
 import couponManagementSystem.facades.CompanyFacade;
+import couponManagementSystem.facades.CouponImporter;
+import couponManagementSystem.facades.ImportReport;
 
 /**
  * The CompanyController class is RestController that handles HTTP requests. All token authentications of sessions are
@@ -32,6 +49,13 @@ import couponManagementSystem.facades.CompanyFacade;
 @RequestMapping("/company")
 public class CompanyController extends ClientController{
 
+	@Autowired
+	private CompanyFacade facade;
+	@Autowired
+	private CouponImporter importer;
+	@Autowired
+	private ObjectMapper mapper;
+
 	/**
 	 * Add coupon method.
 	 * @param token
@@ -41,18 +65,58 @@ public class CompanyController extends ClientController{
 	 */
 	@PostMapping("/{token}")
 	public ResponseEntity<?> addCoupon(@PathVariable String token, @RequestBody Coupon coupon) {
-		Session session = sessionMap.get(token);
-		CompanyFacade facade = (CompanyFacade) session.getFacade();
-		coupon.setCompany(facade.getLoggedInCompany());
+		Session session = currentSession();
+		coupon.setCompany(facade.getCompanyById(session.getClientId()));
 		try {
 			facade.addCoupon(coupon);
-			session.setLastLoginTime(System.currentTimeMillis());
 			return ResponseEntity.ok("Coupon added!");
 		} catch (CouponExistsException e) {
 			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
 		}
 	}
 
+	/**
+	 * Bulk import coupons method, from a JSON array of coupons.
+	 * @param token
+	 * @param request - the request body is read as a stream, one coupon at a time.
+	 * @return ImportReport with the number of imported and rejected coupons and the errors of the rejected rows.
+	 *         Http status 400 (BAD_REQUEST) if the document is not a JSON array or is malformed.
+	 */
+	@PostMapping(value = "/import/{token}", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<?> importCouponsJson(@PathVariable String token, HttpServletRequest request) {
+		Session session = currentSession();
+		try {
+			return importReport(importer.importCoupons(session.getClientId(),
+					new JsonCouponReader(mapper, request.getInputStream())));
+		} catch (IOException e) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+		}
+	}
+
+	/**
+	 * Bulk import coupons method, from CSV with a header line (see CsvCouponReader for the columns).
+	 * @param token
+	 * @param request - the request body is read as a stream, one line at a time.
+	 * @return ImportReport with the number of imported and rejected coupons and the errors of the rejected rows.
+	 *         Http status 400 (BAD_REQUEST) if the header line is missing or incomplete.
+	 */
+	@PostMapping(value = "/import/{token}", consumes = "text/csv")
+	public ResponseEntity<?> importCouponsCsv(@PathVariable String token, HttpServletRequest request) {
+		Session session = currentSession();
+		try {
+			return importReport(importer.importCoupons(session.getClientId(),
+					new CsvCouponReader(request.getReader())));
+		} catch (IOException e) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+		}
+	}
+
+	private static ResponseEntity<?> importReport(ImportReport report) {
+		if (report.getAborted() != null)
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(report);
+		return ResponseEntity.ok(report);
+	}
+
 	/**
 	 * Get all company coupons.
 	 * @param token
@@ -60,12 +124,38 @@ public class CompanyController extends ClientController{
 	 */
 	@GetMapping("/{token}")
 	public ResponseEntity<?> getAllCompanyCoupons(@PathVariable String token) {	
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
-		List<Coupon> companyCoupons = ((CompanyFacade) session.getFacade()).getAllCompanyCoupons();
+		Session session = currentSession();
+		List<Coupon> companyCoupons = facade.getAllCompanyCoupons(session.getClientId());
 		return ResponseEntity.ok(companyCoupons);
 	}
 	
+	/**
+	 * Get a page of company coupons method (keyset pagination by id).
+	 * @param token
+	 * @param after - the id of the last coupon of the previous page, 0 for the first page.
+	 * @param size - page size, at most MAX_PAGE_SIZE.
+	 * @return CursorPage of company coupons ordered by id.
+	 */
+	@GetMapping("/couponsPage/{token}")
+	public ResponseEntity<?> getCompanyCouponsPage(@PathVariable String token, @RequestParam(defaultValue = "0") int after,
+			@RequestParam(defaultValue = "100") int size) {
+		Session session = currentSession();
+		Slice<CouponView> companyCoupons = facade.getCompanyCouponsPage(session.getClientId(), after, pageSize(size));
+		return ResponseEntity.ok(CursorPage.of(companyCoupons, CouponView::getId));
+	}
+
+	/**
+	 * Stream all company coupons method.
+	 * @param token
+	 * @return All company coupons as newline delimited JSON, written while they are read from a database cursor.
+	 */
+	@GetMapping("/couponsStream/{token}")
+	public ResponseEntity<StreamingResponseBody> streamAllCompanyCoupons(@PathVariable String token) {
+		Session session = currentSession();
+		int companyId = session.getClientId();
+		return ndjson.<CouponView>stream(consumer -> facade.streamAllCompanyCoupons(companyId, consumer));
+	}
+
 	/**
 	 * Get all company coupons by category.
 	 * @param token
@@ -75,13 +165,12 @@ public class CompanyController extends ClientController{
 	@GetMapping("/companyCouponsByCategory/{category}/{token}")
 	public ResponseEntity<?> getAllCompanyCouponsByCategory(@PathVariable String token, 
 			@PathVariable CategoryType category) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
+		Session session = currentSession();
 		List<Coupon> companyCouponsByCategory;
 		if (category != null) {
-			companyCouponsByCategory = ((CompanyFacade) session.getFacade()).getAllCompanyCouponsByCategory(category);
+			companyCouponsByCategory = facade.getAllCompanyCouponsByCategory(session.getClientId(), category);
 		} else {
-			companyCouponsByCategory = ((CompanyFacade) session.getFacade()).getAllCompanyCoupons();
+			companyCouponsByCategory = facade.getAllCompanyCoupons(session.getClientId());
 		}
 		return ResponseEntity.ok(companyCouponsByCategory);
 	}
@@ -95,13 +184,34 @@ public class CompanyController extends ClientController{
 	@GetMapping("/companyCouponsByMaxPrice/{maxPrice}/{token}")
 	public ResponseEntity<?> getAllCompanyCouponsByMaxPrice(@PathVariable String token, 
 			@PathVariable double maxPrice) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
+		Session session = currentSession();
 		List<Coupon> companyCouponsByMaxPrice;
-		companyCouponsByMaxPrice= ((CompanyFacade) session.getFacade()).getAllCompanyCouponsByMaxPrice(maxPrice);
+		companyCouponsByMaxPrice= facade.getAllCompanyCouponsByMaxPrice(session.getClientId(), maxPrice);
 		return ResponseEntity.ok(companyCouponsByMaxPrice);
 	}
 	
+	/**
+	 * Get company coupons by combined filter method. All filters are optional and applied together in one query.
+	 * @param token
+	 * @param category
+	 * @param minPrice
+	 * @param maxPrice
+	 * @param from - coupons that end on or after this date (yyyy-MM-dd).
+	 * @param to - coupons that start on or before this date (yyyy-MM-dd).
+	 * @return A list of company coupons matching all given filters, or an empty list.
+	 */
+	@GetMapping("/couponsByFilter/{token}")
+	public ResponseEntity<?> getCompanyCouponsByFilter(@PathVariable String token,
+			@RequestParam(required = false) CategoryType category, @RequestParam(required = false) Double minPrice,
+			@RequestParam(required = false) Double maxPrice,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE) LocalDate from,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE) LocalDate to) {
+		Session session = currentSession();
+		List<Coupon> coupons = facade.getCompanyCouponsByFilter(session.getClientId(), category,
+				minPrice, maxPrice, from == null ? null : Date.valueOf(from), to == null ? null : Date.valueOf(to));
+		return ResponseEntity.ok(coupons);
+	}
+
 	/**
 	 * Get one company coupon by coupon id. 
 	 * @param token
@@ -111,10 +221,9 @@ public class CompanyController extends ClientController{
 	 */
 	@GetMapping("/coupons/{token}/{id}")
 	public ResponseEntity<?> getOneCoupon(@PathVariable String token, @PathVariable int id) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
+		Session session = currentSession();
 		try {
-			return ResponseEntity.ok(((CompanyFacade) session.getFacade()).getOneCompanyCoupon(id));
+			return ResponseEntity.ok(facade.getOneCompanyCoupon(session.getClientId(), id));
 		} catch (NoSuchElementException e) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Cannot find a coupon with id: " + id);
 		}
@@ -129,10 +238,9 @@ public class CompanyController extends ClientController{
 	 */
 	@PutMapping("/coupons/{token}")
 	public ResponseEntity<?> updateCoupon(@PathVariable String token, @RequestBody Coupon coupon) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
+		Session session = currentSession();
 		try {
-			((CompanyFacade) session.getFacade()).updateCoupon(coupon);
+			facade.updateCoupon(session.getClientId(), coupon);
 		} catch (CouponUpdateException | CouponExistsException e) {
 			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
 		} catch (NoSuchElementException e) {
@@ -151,10 +259,8 @@ public class CompanyController extends ClientController{
 	 */
 	@DeleteMapping("/coupons/{token}/{id}")
 	public ResponseEntity<?> deleteCoupon (@PathVariable String token, @PathVariable int id) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
 		try {
-			((CompanyFacade) session.getFacade()).deleteCoupon(id);
+			facade.deleteCoupon(id);
 			return ResponseEntity.ok("Coupon deleted!");			
 		} catch (NoSuchElementException e) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Cannot find a coupon with id: " + id);
@@ -169,20 +275,17 @@ public class CompanyController extends ClientController{
 	 */
 	@GetMapping("/getCompanyCouponsByCompanyId/{id}/{token}")
 	public ResponseEntity<?> getCompanyCouponsByCompanyId(@PathVariable String token, @PathVariable int id) {	
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
 		List<Coupon> companyCoupons = null;
-			 companyCoupons = ((CompanyFacade) session.getFacade()).getAllCompanyCouponsByCompanyId(id);
+			 companyCoupons = facade.getAllCompanyCoupons(id);
 		return ResponseEntity.ok(companyCoupons);
 	}
 
 	
 	@GetMapping("/getLoggedInCompany/{token}")
 	public ResponseEntity<?> getLoggedInCompany(@PathVariable String token) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
+		Session session = currentSession();
 		try {
-			Company company =  ((CompanyFacade) session.getFacade()).getLoggedInCompany();
+			Company company =  facade.getCompanyById(session.getClientId());
 			return ResponseEntity.ok(company);
 		} catch (NoSuchElementException e) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Cannot find logged in company...");
@@ -0,0 +1,120 @@
+package couponManagementSystem.web;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Limits the requests processed at the same time to request.concurrency.limit. Above the limit requests wait here, up
+ * to request.concurrency.wait ms, instead of piling up on the database connection pool, where every waiting request
+ * holds a thread until the pool's connection timeout (30 seconds). Requests that don't get in are rejected with 503 and
+ * a Retry-After header, so an overloaded server answers quickly and keeps the latency of the admitted requests. When
+ * the limit is 0 it is derived from the connection pool with virtual threads (maximum pool size *
+ * request.concurrency.per-connection), while the platform threads are already bounded by server.tomcat.max-threads
+ * and are not limited. Streamed responses hold their permit until they are written. The actuator endpoints are never
+ * limited.
+ */
+
+@Component
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+	private static final Logger log = LoggerFactory.getLogger(ConcurrencyLimitFilter.class);
+
+	private final Semaphore permits;
+	private final int limit;
+	private final long waitMillis;
+	private final Counter rejected;
+
+	public ConcurrencyLimitFilter(DataSource dataSource, MeterRegistry registry,
+			@Value("${request.execution-mode:platform}") String executionMode,
+			@Value("${request.concurrency.limit:0}") int limit,
+			@Value("${request.concurrency.per-connection:4}") int perConnection,
+			@Value("${request.concurrency.wait:1000}") long waitMillis) {
+		if (limit <= 0 && executionMode.equals("virtual") && dataSource instanceof HikariDataSource)
+			limit = ((HikariDataSource) dataSource).getMaximumPoolSize() * perConnection;
+		this.limit = limit;
+		this.waitMillis = waitMillis;
+		this.permits = limit > 0 ? new Semaphore(limit) : null;
+		this.rejected = Counter.builder("coupon.requests.rejected").register(registry);
+		if (permits != null) {
+			Gauge.builder("coupon.requests.active", permits, semaphore -> this.limit - semaphore.availablePermits())
+					.register(registry);
+			log.info("At most {} concurrent requests, waiting up to {} ms", limit, waitMillis);
+		}
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return permits == null || request.getRequestURI().startsWith(request.getContextPath() + "/actuator");
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		boolean acquired;
+		try {
+			acquired = permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			acquired = false;
+		}
+		if (!acquired) {
+			rejected.increment();
+			log.debug("Rejected {} {}, {} requests in progress", request.getMethod(), request.getRequestURI(), limit);
+			response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+			response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+			response.getWriter().write("Server busy, try again later...");
+			return;
+		}
+		boolean async = false;
+		try {
+			chain.doFilter(request, response);
+			async = request.isAsyncStarted();
+		} finally {
+			if (async)
+				// a streamed response keeps its connection until it is written, release the permit then
+				request.getAsyncContext().addListener(new AsyncListener() {
+					@Override
+					public void onComplete(AsyncEvent event) {
+						permits.release();
+					}
+
+					@Override
+					public void onTimeout(AsyncEvent event) {
+					}
+
+					@Override
+					public void onError(AsyncEvent event) {
+					}
+
+					@Override
+					public void onStartAsync(AsyncEvent event) {
+					}
+				});
+			else
+				permits.release();
+		}
+	}
+}
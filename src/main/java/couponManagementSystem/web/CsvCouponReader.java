@@ -0,0 +1,123 @@
+package couponManagementSystem.web;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import couponManagementSystem.beans.CategoryType;
+import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.facades.ImportRow;
+
+/**
+ * Reads coupons one line at a time from CSV. The first line is a header naming the columns, in any order: category,
+ * title, description, startDate, endDate (yyyy-MM-dd), amount, price and image. Values may be quoted with double
+ * quotes, a quote inside a quoted value is written twice. Blank lines are skipped. A line that cannot be parsed
+ * becomes an invalid row.
+ */
+
+class CsvCouponReader implements Iterator<ImportRow> {
+
+	private static final String[] COLUMNS = { "category", "title", "description", "startDate", "endDate", "amount",
+			"price", "image" };
+
+	private final BufferedReader reader;
+	private final int[] columnIndex = new int[COLUMNS.length];
+	private String line;
+	private long rowNumber;
+
+	CsvCouponReader(BufferedReader reader) throws IOException {
+		this.reader = reader;
+		String header = reader.readLine();
+		if (header == null)
+			throw new IOException("Missing CSV header line");
+		List<String> names = split(header);
+		for (int i = 0; i < COLUMNS.length; i++) {
+			columnIndex[i] = names.indexOf(COLUMNS[i]);
+			if (columnIndex[i] < 0 && !COLUMNS[i].equals("description") && !COLUMNS[i].equals("image"))
+				throw new IOException("Missing CSV column: " + COLUMNS[i]);
+		}
+		advance();
+	}
+
+	@Override
+	public boolean hasNext() {
+		return line != null;
+	}
+
+	@Override
+	public ImportRow next() {
+		if (line == null)
+			throw new NoSuchElementException();
+		rowNumber++;
+		String current = line;
+		advance();
+		try {
+			List<String> values = split(current);
+			Coupon coupon = new Coupon();
+			coupon.setCategory(CategoryType.valueOf(value(values, 0)));
+			coupon.setTitle(value(values, 1));
+			coupon.setDescription(value(values, 2));
+			coupon.setStartDate(Date.valueOf(value(values, 3)));
+			coupon.setEndDate(Date.valueOf(value(values, 4)));
+			coupon.setAmount(Integer.parseInt(value(values, 5)));
+			coupon.setPrice(Double.parseDouble(value(values, 6)));
+			coupon.setImage(value(values, 7));
+			return ImportRow.of(rowNumber, coupon);
+		} catch (IllegalArgumentException | NullPointerException e) {
+			return ImportRow.invalid(rowNumber, "Invalid CSV line: " + e.getMessage());
+		}
+	}
+
+	private String value(List<String> values, int column) {
+		int index = columnIndex[column];
+		if (index < 0)
+			return null;
+		if (index >= values.size())
+			throw new IllegalArgumentException("missing " + COLUMNS[column]);
+		return values.get(index).trim();
+	}
+
+	private void advance() {
+		try {
+			do {
+				line = reader.readLine();
+			} while (line != null && line.trim().isEmpty());
+		} catch (IOException e) {
+			line = null;
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	static List<String> split(String line) {
+		List<String> values = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					value.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					value.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+			} else {
+				value.append(c);
+			}
+		}
+		values.add(value.toString());
+		return values;
+	}
+}
@@ -0,0 +1,43 @@
+package couponManagementSystem.web;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import org.springframework.data.domain.Slice;
+
+/**
+ * The CursorPage class is the response body of the keyset (cursor) paginated list endpoints. The next cursor is the id
+ * of the last element in the page, and is sent back as the "after" request parameter to get the next page. The next
+ * cursor is null on the last page.
+ */
+
+public class CursorPage<T> {
+
+	private List<T> content;
+	private Integer nextCursor;
+
+	public CursorPage(List<T> content, Integer nextCursor) {
+		this.content = content;
+		this.nextCursor = nextCursor;
+	}
+
+	public static <T> CursorPage<T> of(Slice<T> slice, ToIntFunction<T> idOf) {
+		List<T> content = slice.getContent();
+		Integer nextCursor = null;
+		if (slice.hasNext() && !content.isEmpty())
+			nextCursor = idOf.applyAsInt(content.get(content.size() - 1));
+		return new CursorPage<T>(content, nextCursor);
+	}
+
+	public List<T> getContent() {
+		return content;
+	}
+
+	public Integer getNextCursor() {
+		return nextCursor;
+	}
+
+	public boolean isHasNext() {
+		return nextCursor != null;
+	}
+}
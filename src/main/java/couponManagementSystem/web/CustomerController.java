@@ -1,18 +1,30 @@
 package couponManagementSystem.web;
 
+import java.sql.Date;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Slice;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import couponManagementSystem.beans.CategoryType;
 import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.beans.CouponView;
 import couponManagementSystem.beans.Customer;
 import couponManagementSystem.exceptions.CouponExpiredException;
 import couponManagementSystem.exceptions.DoubleCouponPurchseException;
@@ -30,23 +42,95 @@ import couponManagementSystem.facades.CustomerFacade;
 @RequestMapping("/customer")
 public class CustomerController extends ClientController{
 
+	private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
 	/**
-	 * Purchase coupon by coupon id method.
+	 * Maximum offset + size of a search page, the search keeps that many of the best matches to rank a page.
+	 */
+	private static final int MAX_SEARCH_DEPTH = 10 * MAX_PAGE_SIZE;
+
+	@Autowired
+	private CustomerFacade facade;
+	@Autowired
+	private PurchaseAdmission admission;
+	@Autowired
+	private IdempotencyStore idempotency;
+
+	/**
+	 * Purchase coupon by coupon id method. The purchase is admitted by the PurchaseAdmission first: a sold out coupon
+	 * is answered without reaching the facade, a customer above the purchase rate gets 429 (Too Many Requests) and a
+	 * buyer that doesn't get in the coupon's queue gets 503, both with a Retry-After header.
 	 * @param token
 	 * @param couponId
-	 * @return Http status 200 (OK) with String notice.
+	 * @return Http status 200 (OK) with String notice, 404 (Not Found) if there is no such coupon.
 	 * @handles InsufficientAmountException | CouponExpiredException | DoubleCouponPurchseException
 	 */
 	@GetMapping("/purchase/{couponId}/{token}")
 	public ResponseEntity<?> purchaseCouponByCouponId(@PathVariable String token, @PathVariable int couponId) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
-		Coupon coupon = ((CustomerFacade) session.getFacade()).getCouponByCouponId(couponId);
+		Session session = currentSession();
+		try (PurchaseAdmission.Ticket ticket = admission.admit(session.getClientId(), couponId)) {
+			if (!ticket.isAdmitted())
+				return notAdmitted(ticket.getDecision());
+			Coupon coupon = facade.getCouponByCouponId(couponId);
+			try {
+				facade.purchaseCoupon(session.getClientId(), coupon);
+				ticket.purchased();
+				return ResponseEntity.ok("Coupon purchased");
+			} catch (InsufficientAmountException e) {
+				ticket.soldOut();
+				return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+			} catch (CouponExpiredException | DoubleCouponPurchseException e) {
+				return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+			}
+		} catch (NoSuchElementException e) {
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Cannot find coupon with id: " + couponId);
+		}
+	}
+
+	/**
+	 * Idempotent purchase coupon by coupon id method. A retry of the request with the same Idempotency-Key header gets
+	 * the result of the original request (marked with an Idempotent-Replayed header) without purchasing again, while
+	 * the original request runs it gets 409 (Conflict). A key that was used for another coupon gets 422.
+	 * @param token
+	 * @param couponId
+	 * @param idempotencyKey - unique per purchase attempt of the customer, up to 64 characters.
+	 * @return Http status 200 (OK) with String notice.
+	 * @handles InsufficientAmountException | CouponExpiredException | DoubleCouponPurchseException
+	 */
+	@PostMapping("/purchase/{couponId}/{token}")
+	public ResponseEntity<?> purchaseCouponIdempotent(@PathVariable String token, @PathVariable int couponId,
+			@RequestHeader(IDEMPOTENCY_KEY) String idempotencyKey) {
+		if (idempotencyKey.isEmpty() || idempotencyKey.length() > 64)
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid " + IDEMPOTENCY_KEY + " header");
+		String key = currentSession().getClientId() + ":" + idempotencyKey;
+		IdempotencyStore.Result previous = idempotency.claim(key);
+		if (previous != null) {
+			if (previous.isInProgress())
+				return ResponseEntity.status(HttpStatus.CONFLICT).header(HttpHeaders.RETRY_AFTER, "1")
+						.body("The purchase is in progress, try again later...");
+			if (previous.getCouponId() != couponId)
+				return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+						.body(IDEMPOTENCY_KEY + " was used for another coupon");
+			return previous.toResponse();
+		}
+		ResponseEntity<?> response = null;
 		try {
-			((CustomerFacade) session.getFacade()).purchaseCoupon(coupon);
-			return ResponseEntity.ok("Coupon purchased");
-		} catch (InsufficientAmountException | CouponExpiredException | DoubleCouponPurchseException e) {
-			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+			response = purchaseCouponByCouponId(token, couponId);
+		} finally {
+			response = idempotency.complete(key, couponId, response);
+		}
+		return response;
+	}
+
+	private ResponseEntity<?> notAdmitted(PurchaseAdmission.Decision decision) {
+		switch (decision) {
+		case SOLD_OUT:
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new InsufficientAmountException().getMessage());
+		case RATE_LIMITED:
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1")
+					.body("Too many purchases, try again later...");
+		default:
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+					.body("Too many buyers, try again later...");
 		}
 	}
 
@@ -57,9 +141,8 @@ public class CustomerController extends ClientController{
 	 */
 	@GetMapping("/coupons/{token}")
 	public ResponseEntity<?> getAllCustomerCoupons(@PathVariable String token) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
-		return ResponseEntity.ok(((CustomerFacade) session.getFacade()).getAllCustomerCoupons());
+		Session session = currentSession();
+		return ResponseEntity.ok(facade.getAllCustomerCoupons(session.getClientId()));
 	}
 
 	/**
@@ -69,10 +152,9 @@ public class CustomerController extends ClientController{
 	 */
 	@GetMapping("/couponsByCategory/{category}/{token}")
 	public ResponseEntity<?> getAllCustomerCouponsByCategory(@PathVariable String token,	@PathVariable CategoryType category) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
+		Session session = currentSession();
 		Set<Coupon> customerCouponsByCategory;
-		customerCouponsByCategory = ((CustomerFacade) session.getFacade()).getAllCustomerCouponsByCategory(category);
+		customerCouponsByCategory = facade.getAllCustomerCouponsByCategory(session.getClientId(), category);
 		return ResponseEntity.ok(customerCouponsByCategory);
 	}
 
@@ -83,13 +165,34 @@ public class CustomerController extends ClientController{
 	 */
 	@GetMapping("/couponsByPrice/{maxPrice}/{token}")
 	public ResponseEntity<?> getAllCustomerCouponsByMaxPrice(@PathVariable String token, @PathVariable double maxPrice) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
+		Session session = currentSession();
 		Set<Coupon> customerCouponsByMaxPrice;
-		customerCouponsByMaxPrice = ((CustomerFacade) session.getFacade()).getAllCustomerCouponsByMaxPrice(maxPrice);
+		customerCouponsByMaxPrice = facade.getAllCustomerCouponsByMaxPrice(session.getClientId(), maxPrice);
 		return ResponseEntity.ok(customerCouponsByMaxPrice);
 	}
 
+	/**
+	 * Get customer coupons by combined filter method. All filters are optional and applied together in one query.
+	 * @param token
+	 * @param category
+	 * @param minPrice
+	 * @param maxPrice
+	 * @param from - coupons that end on or after this date (yyyy-MM-dd).
+	 * @param to - coupons that start on or before this date (yyyy-MM-dd).
+	 * @return A list of customer coupons matching all given filters, or an empty list.
+	 */
+	@GetMapping("/couponsByFilter/{token}")
+	public ResponseEntity<?> getCustomerCouponsByFilter(@PathVariable String token,
+			@RequestParam(required = false) CategoryType category, @RequestParam(required = false) Double minPrice,
+			@RequestParam(required = false) Double maxPrice,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE) LocalDate from,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE) LocalDate to) {
+		Session session = currentSession();
+		List<Coupon> coupons = facade.getCustomerCouponsByFilter(session.getClientId(), category,
+				minPrice, maxPrice, from == null ? null : Date.valueOf(from), to == null ? null : Date.valueOf(to));
+		return ResponseEntity.ok(coupons);
+	}
+
 	/**
 	 * Get one customer coupon by coupon id method.
 	 * @param token
@@ -99,10 +202,9 @@ public class CustomerController extends ClientController{
 	 */
 	@GetMapping("/couponsById/{id}/{token}")
 	public ResponseEntity<?> getOneCustomerCoupon(@PathVariable String token, @PathVariable int id) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
+		Session session = currentSession();
 		try {
-			return ResponseEntity.ok(((CustomerFacade) session.getFacade()).getOneCustomerCoupon(id));
+			return ResponseEntity.ok(facade.getOneCustomerCoupon(session.getClientId(), id));
 		} catch (NoSuchElementException e) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Cannot find coupon with id: " + id);
 		}
@@ -115,12 +217,75 @@ public class CustomerController extends ClientController{
 	 */
 	@GetMapping("/allCoupons/{token}")
 	public ResponseEntity<?> getAllCoupons(@PathVariable String token) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
-		List<Coupon> allCoupons = ((CustomerFacade) session.getFacade()).getAllCoupons();
+		List<Coupon> allCoupons = facade.getAllCoupons();
 		return ResponseEntity.ok(allCoupons);
 	}
 	
+	/**
+	 * Get a page of coupons method (keyset pagination by id).
+	 * @param token
+	 * @param after - the id of the last coupon of the previous page, 0 for the first page.
+	 * @param size - page size, at most MAX_PAGE_SIZE.
+	 * @return CursorPage of coupons ordered by id.
+	 */
+	@GetMapping("/allCouponsPage/{token}")
+	public ResponseEntity<?> getCouponsPage(@PathVariable String token, @RequestParam(defaultValue = "0") int after,
+			@RequestParam(defaultValue = "100") int size) {
+		Slice<CouponView> coupons = facade.getCouponsPage(after, pageSize(size));
+		return ResponseEntity.ok(CursorPage.of(coupons, CouponView::getId));
+	}
+
+	/**
+	 * Stream all coupons method.
+	 * @param token
+	 * @return All coupons as newline delimited JSON, written while they are read from a database cursor.
+	 */
+	@GetMapping("/allCouponsStream/{token}")
+	public ResponseEntity<StreamingResponseBody> streamAllCoupons(@PathVariable String token) {
+		return ndjson.stream(facade::streamAllCoupons);
+	}
+
+	/**
+	 * Search coupons method. Matches the coupons with all the words of q in their title or description (the last word
+	 * also as the start of a word), from the in-memory search index.
+	 * @param token
+	 * @param q - the search text, all coupons if empty.
+	 * @param category
+	 * @param companyId
+	 * @param minPrice
+	 * @param maxPrice
+	 * @param offset - the number of matches to skip, offset + size at most MAX_SEARCH_DEPTH.
+	 * @param size - page size, at most MAX_PAGE_SIZE.
+	 * @return SearchResult with the page of matches ranked by relevance, the number of matches and the number of
+	 *         matches per category, company and price range. Http status 400 (Bad Request) for a negative offset or
+	 *         a page beyond MAX_SEARCH_DEPTH.
+	 */
+	@GetMapping("/search/{token}")
+	public ResponseEntity<?> searchCoupons(@PathVariable String token, @RequestParam(defaultValue = "") String q,
+			@RequestParam(required = false) CategoryType category, @RequestParam(required = false) Integer companyId,
+			@RequestParam(required = false) Double minPrice, @RequestParam(required = false) Double maxPrice,
+			@RequestParam(defaultValue = "0") int offset, @RequestParam(defaultValue = "20") int size) {
+		if (offset < 0)
+			return ResponseEntity.badRequest().body("Offset must not be negative");
+		int pageSize = pageSize(size);
+		if ((long) offset + pageSize > MAX_SEARCH_DEPTH)
+			return ResponseEntity.badRequest().body("Offset + size must be at most " + MAX_SEARCH_DEPTH);
+		return ResponseEntity.ok(facade.searchCoupons(q, category, companyId, minPrice, maxPrice, offset, pageSize));
+	}
+
+	/**
+	 * Autocomplete search words method.
+	 * @param token
+	 * @param prefix - the start of a word.
+	 * @param size - the number of words, at most MAX_PAGE_SIZE.
+	 * @return List of words starting with the prefix, the words of the most coupons first.
+	 */
+	@GetMapping("/suggest/{token}")
+	public ResponseEntity<?> suggestSearchWords(@PathVariable String token, @RequestParam String prefix,
+			@RequestParam(defaultValue = "10") int size) {
+		return ResponseEntity.ok(facade.suggestSearchWords(prefix, pageSize(size)));
+	}
+
 	/**
 	 * Get logged in user details
 	 * @param token
@@ -130,10 +295,9 @@ public class CustomerController extends ClientController{
 	
 	@GetMapping("/getLoggedInCustomer/{token}")
 	public ResponseEntity<?> getLoggedInCustomer(@PathVariable String token) {
-		Session session = sessionMap.get(token);
-		session.setLastLoginTime(System.currentTimeMillis());
+		Session session = currentSession();
 		try {
-			Customer customer =  ((CustomerFacade) session.getFacade()).getLoggedInCustomer();
+			Customer customer =  facade.getCustomerById(session.getClientId());
 			return ResponseEntity.ok(customer);
 		} catch (NoSuchElementException e) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Cannot find logged in customer...");
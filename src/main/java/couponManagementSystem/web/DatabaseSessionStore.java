@@ -0,0 +1,178 @@
+package couponManagementSystem.web;
+
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import couponManagementSystem.beans.SessionRecord;
+import couponManagementSystem.db.SessionRecordRepository;
+import couponManagementSystem.login.ClientPrincipal;
+
+/**
+ * The DatabaseSessionStore (session.store=database) keeps the sessions in the client_sessions table, so that several
+ * application instances behind a load balancer share the logins without sticky sessions. Only the client type and id
+ * (the principal) are stored, the facades are shared singletons on every instance.
+ * To keep lookups close to in-memory latency every instance holds a small near-cache of sessions, reloaded from the
+ * database after session.near-cache.ttl milliseconds (so a logout on another instance is seen within that time).
+ * The last access time is written back at most once every session.touch-interval milliseconds per session.
+ */
+
+@Component
+@ConditionalOnProperty(name = "session.store", havingValue = "database")
+public class DatabaseSessionStore implements SessionStore {
+
+	private final SessionRecordRepository sessionRepo;
+	private final long idleTimeout;
+	private final long touchInterval;
+	private final long nearCacheTtl;
+	private final int nearCacheSize;
+
+	private final ConcurrentHashMap<String, CachedSession> nearCache = new ConcurrentHashMap<String, CachedSession>();
+	private final LongAdder createdSessions = new LongAdder();
+	private final LongAdder expiredSessions = new LongAdder();
+
+	public DatabaseSessionStore(SessionRecordRepository sessionRepo,
+			@Value("${session.idle-timeout:1800000}") long idleTimeout,
+			@Value("${session.touch-interval:30000}") long touchInterval,
+			@Value("${session.near-cache.ttl:5000}") long nearCacheTtl,
+			@Value("${session.near-cache.size:10000}") int nearCacheSize) {
+		this.sessionRepo = sessionRepo;
+		this.idleTimeout = idleTimeout;
+		this.touchInterval = touchInterval;
+		this.nearCacheTtl = nearCacheTtl;
+		this.nearCacheSize = nearCacheSize;
+	}
+
+	@Override
+	public String open(Session session) {
+		String token = UUID.randomUUID().toString();
+		sessionRepo.save(new SessionRecord(token, session.getClientType(), session.getClientId(),
+				session.getLastLoginTime()));
+		cache(token, session, session.getLastLoginTime());
+		createdSessions.increment();
+		return token;
+	}
+
+	@Override
+	public Session get(String token) {
+		if (token == null)
+			return null;
+		long now = System.currentTimeMillis();
+		CachedSession cached = nearCache.get(token);
+		if (cached != null && now - cached.loadedAt < nearCacheTtl && !isExpired(cached.session))
+			return cached.session;
+
+		SessionRecord record = sessionRepo.findById(token).orElse(null);
+		if (record == null) {
+			nearCache.remove(token);
+			return null;
+		}
+		Session session;
+		if (cached != null) {
+			session = cached.session;
+			if (record.getLastAccessTime() > session.getLastLoginTime())
+				session.setLastLoginTime(record.getLastAccessTime());
+		} else {
+			session = new Session(new ClientPrincipal(record.getClientType(), record.getClientId()),
+					record.getLastAccessTime());
+		}
+		cache(token, session, record.getLastAccessTime());
+		return session;
+	}
+
+	@Override
+	public boolean isExpired(Session session) {
+		return System.currentTimeMillis() - session.getLastLoginTime() >= idleTimeout;
+	}
+
+	@Override
+	public String touch(String token, Session session) {
+		long now = System.currentTimeMillis();
+		session.setLastLoginTime(now);
+		CachedSession cached = nearCache.get(token);
+		if (cached == null || now - cached.persistedAt >= touchInterval) {
+			sessionRepo.touch(token, now);
+			if (cached != null)
+				cached.persistedAt = now;
+		}
+		return token;
+	}
+
+	@Override
+	public void remove(String token) {
+		if (token != null) {
+			nearCache.remove(token);
+			sessionRepo.deleteSession(token);
+		}
+	}
+
+	@Override
+	public void expire(String token) {
+		if (token != null) {
+			nearCache.remove(token);
+			if (sessionRepo.deleteSession(token) > 0)
+				expiredSessions.increment();
+		}
+	}
+
+	/**
+	 * Deletes the sessions of all instances that are idle for longer than the idle timeout, in one statement, and
+	 * drops stale near-cache entries.
+	 */
+	@Scheduled(fixedDelayString = "${session.sweep-interval:10000}")
+	public void sweep() {
+		long now = System.currentTimeMillis();
+		expiredSessions.add(sessionRepo.deleteIdleSince(now - idleTimeout));
+		nearCache.values().removeIf(cached -> now - cached.loadedAt >= nearCacheTtl);
+	}
+
+	private void cache(String token, Session session, long persistedAt) {
+		if (nearCache.size() >= nearCacheSize) {
+			Iterator<String> tokens = nearCache.keySet().iterator();
+			if (tokens.hasNext()) {
+				tokens.next();
+				tokens.remove();
+			}
+		}
+		nearCache.put(token, new CachedSession(session, System.currentTimeMillis(), persistedAt));
+	}
+
+	@Override
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	@Override
+	public long getLiveSessions() {
+		return sessionRepo.count();
+	}
+
+	@Override
+	public long getCreatedSessions() {
+		return createdSessions.sum();
+	}
+
+	@Override
+	public long getExpiredSessions() {
+		return expiredSessions.sum();
+	}
+
+	private static final class CachedSession {
+
+		private final Session session;
+		private final long loadedAt;
+		private volatile long persistedAt;
+
+		CachedSession(Session session, long loadedAt, long persistedAt) {
+			this.session = session;
+			this.loadedAt = loadedAt;
+			this.persistedAt = persistedAt;
+		}
+	}
+}
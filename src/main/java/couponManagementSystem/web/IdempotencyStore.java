@@ -0,0 +1,196 @@
+package couponManagementSystem.web;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import couponManagementSystem.beans.IdempotencyRecord;
+import couponManagementSystem.db.IdempotencyRecordRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The IdempotencyStore remembers the results of purchase requests by their Idempotency-Key for idempotency.ttl
+ * milliseconds, so a retried request gets the original result without purchasing again. Results are kept in memory
+ * (the newest idempotency.max-entries) and in the idempotency_keys table, which is read when a key is not in memory, so
+ * the results survive a restart. A key is claimed in memory while its purchase runs, a retry that arrives meanwhile is
+ * told to try again later. Only final results are stored (success and the purchase errors), a request rejected by
+ * the admission or failed by the server may be retried with the same key.
+ * The keys expire in the order they were stored, the ttl is the same for all.
+ */
+
+@Component
+public class IdempotencyStore {
+
+	private static final Logger log = LoggerFactory.getLogger(IdempotencyStore.class);
+
+	private static final Result IN_PROGRESS = new Result(0, 0, null, 0);
+
+	private final IdempotencyRecordRepository recordRepo;
+	private final long ttl;
+	private final int maxEntries;
+
+	private final ConcurrentHashMap<String, Result> results = new ConcurrentHashMap<String, Result>();
+	// the stored keys, oldest first
+	private final ConcurrentLinkedQueue<String> stored = new ConcurrentLinkedQueue<String>();
+	private final Counter replays;
+
+	public IdempotencyStore(IdempotencyRecordRepository recordRepo, MeterRegistry registry,
+			@Value("${idempotency.ttl:86400000}") long ttl,
+			@Value("${idempotency.max-entries:100000}") int maxEntries) {
+		this.recordRepo = recordRepo;
+		this.ttl = ttl;
+		this.maxEntries = maxEntries;
+		this.replays = Counter.builder("coupon.idempotency.replays").register(registry);
+	}
+
+	/**
+	 * Claims a key for a request, or returns the result of the request that claimed it.
+	 * @return null if the key is claimed and the request should run, otherwise the stored result or a result that is
+	 *         in progress.
+	 */
+	public Result claim(String key) {
+		Result result = results.putIfAbsent(key, IN_PROGRESS);
+		if (result == null) {
+			IdempotencyRecord record;
+			try {
+				record = recordRepo.findById(key).orElse(null);
+				if (record != null && isExpired(record.getCreatedAt())) {
+					// the sweep may have deleted it meanwhile
+					recordRepo.deleteByIdAndCreatedAt(key, record.getCreatedAt());
+					record = null;
+				}
+			} catch (RuntimeException e) {
+				results.remove(key, IN_PROGRESS);
+				throw e;
+			}
+			if (record == null)
+				return null;
+			result = remember(key, new Result(record.getCouponId(), record.getStatus(), record.getBody(),
+					record.getCreatedAt()));
+		} else if (result != IN_PROGRESS && isExpired(result.createdAt)) {
+			// not swept yet, claim the key again, it is queued again when its new result is stored
+			if (!results.replace(key, result, IN_PROGRESS))
+				return claim(key);
+			stored.remove(key);
+			try {
+				recordRepo.deleteByIdAndCreatedAt(key, result.createdAt);
+			} catch (RuntimeException e) {
+				results.remove(key, IN_PROGRESS);
+				throw e;
+			}
+			return null;
+		}
+		if (result != IN_PROGRESS)
+			replays.increment();
+		return result;
+	}
+
+	/**
+	 * Stores the response of a claimed key. A response that is not final (or null when the request failed) releases
+	 * the key instead.
+	 * @return the response to send, the stored one if the key was stored in the meantime by another instance.
+	 */
+	public ResponseEntity<?> complete(String key, int couponId, ResponseEntity<?> response) {
+		if (response == null || !isFinal(response.getStatusCode())) {
+			results.remove(key, IN_PROGRESS);
+			return response;
+		}
+		long now = System.currentTimeMillis();
+		String body = response.getBody() == null ? null : response.getBody().toString();
+		try {
+			recordRepo.insert(key, couponId, response.getStatusCodeValue(), body, now);
+		} catch (DataIntegrityViolationException e) {
+			// stored by a request on another instance
+			IdempotencyRecord record = recordRepo.findById(key).orElse(null);
+			if (record != null) {
+				Result result = remember(key, new Result(record.getCouponId(), record.getStatus(), record.getBody(),
+						record.getCreatedAt()));
+				return result.toResponse();
+			}
+		} catch (RuntimeException e) {
+			// the purchase is done, its result is only kept in memory
+			log.warn("Storing the result of idempotency key {} failed", key, e);
+		}
+		remember(key, new Result(couponId, response.getStatusCodeValue(), body, now));
+		return response;
+	}
+
+	/**
+	 * Drops the expired results from memory and deletes them from the database.
+	 */
+	@Scheduled(fixedDelayString = "${idempotency.sweep-interval:60000}")
+	public void sweep() {
+		String key;
+		while ((key = stored.peek()) != null) {
+			Result result = results.get(key);
+			if (result != null && result != IN_PROGRESS && !isExpired(result.createdAt))
+				break;
+			stored.poll();
+			if (result != null && result != IN_PROGRESS)
+				results.remove(key, result);
+		}
+		recordRepo.deleteCreatedBefore(System.currentTimeMillis() - ttl);
+	}
+
+	private Result remember(String key, Result result) {
+		results.put(key, result);
+		stored.add(key);
+		// the oldest results are only kept in the database
+		while (results.size() > maxEntries && (key = stored.poll()) != null) {
+			Result oldest = results.get(key);
+			if (oldest != null && oldest != IN_PROGRESS)
+				results.remove(key, oldest);
+		}
+		return result;
+	}
+
+	private boolean isExpired(long createdAt) {
+		return System.currentTimeMillis() - createdAt >= ttl;
+	}
+
+	private static boolean isFinal(HttpStatus status) {
+		return status.is2xxSuccessful() || status == HttpStatus.BAD_REQUEST;
+	}
+
+	/**
+	 * The stored result of a purchase request.
+	 */
+	public static final class Result {
+
+		private final int couponId;
+		private final int status;
+		private final String body;
+		private final long createdAt;
+
+		private Result(int couponId, int status, String body, long createdAt) {
+			this.couponId = couponId;
+			this.status = status;
+			this.body = body;
+			this.createdAt = createdAt;
+		}
+
+		public boolean isInProgress() {
+			return this == IN_PROGRESS;
+		}
+
+		public int getCouponId() {
+			return couponId;
+		}
+
+		/**
+		 * @return the stored response, marked with an Idempotent-Replayed header.
+		 */
+		public ResponseEntity<?> toResponse() {
+			return ResponseEntity.status(status).header("Idempotent-Replayed", "true").body(body);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package couponManagementSystem.web;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * The InMemorySessionStore is the default SessionStore (session.store=memory). It holds all active sessions of this
+ * application instance by token. It is shared by all request threads, so the sessions live in a ConcurrentHashMap.
+ * Expired sessions are removed by a background sweeper. The sweeper uses a DelayQueue ordered by each session's
+ * deadline, so a sweep only touches sessions whose deadline has passed instead of scanning all sessions. A session that
+ * was used since it was queued gets queued again with its new deadline.
+ */
+
+@Component
+@ConditionalOnProperty(name = "session.store", havingValue = "memory", matchIfMissing = true)
+public class InMemorySessionStore implements SessionStore {
+
+	private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+	private final DelayQueue<Deadline> deadlines = new DelayQueue<Deadline>();
+	private final long idleTimeout;
+
+	private final LongAdder createdSessions = new LongAdder();
+	private final LongAdder expiredSessions = new LongAdder();
+
+	public InMemorySessionStore(@Value("${session.idle-timeout:1800000}") long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	@Override
+	public String open(Session session) {
+		String token = UUID.randomUUID().toString();
+		sessions.put(token, session);
+		deadlines.add(new Deadline(token, session.getLastLoginTime() + idleTimeout));
+		createdSessions.increment();
+		return token;
+	}
+
+	@Override
+	public Session get(String token) {
+		return token == null ? null : sessions.get(token);
+	}
+
+	@Override
+	public boolean isExpired(Session session) {
+		return System.currentTimeMillis() - session.getLastLoginTime() >= idleTimeout;
+	}
+
+	@Override
+	public String touch(String token, Session session) {
+		session.setLastLoginTime(System.currentTimeMillis());
+		return token;
+	}
+
+	@Override
+	public void remove(String token) {
+		if (token != null)
+			sessions.remove(token);
+	}
+
+	@Override
+	public void expire(String token) {
+		if (token != null && sessions.remove(token) != null)
+			expiredSessions.increment();
+	}
+
+	@Scheduled(fixedDelayString = "${session.sweep-interval:10000}")
+	public void sweep() {
+		Deadline deadline;
+		while ((deadline = deadlines.poll()) != null) {
+			Session session = sessions.get(deadline.token);
+			if (session == null)
+				continue;
+			long sessionDeadline = session.getLastLoginTime() + idleTimeout;
+			if (sessionDeadline <= System.currentTimeMillis()) {
+				if (sessions.remove(deadline.token, session))
+					expiredSessions.increment();
+			} else {
+				deadlines.add(new Deadline(deadline.token, sessionDeadline));
+			}
+		}
+	}
+
+	@Override
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	@Override
+	public long getLiveSessions() {
+		return sessions.size();
+	}
+
+	@Override
+	public long getCreatedSessions() {
+		return createdSessions.sum();
+	}
+
+	@Override
+	public long getExpiredSessions() {
+		return expiredSessions.sum();
+	}
+
+	private static final class Deadline implements Delayed {
+
+		private final String token;
+		private final long time;
+
+		Deadline(String token, long time) {
+			this.token = token;
+			this.time = time;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(time - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			return Long.compare(time, ((Deadline) other).time);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package couponManagementSystem.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.facades.ImportRow;
+
+/**
+ * Reads coupons one at a time from a JSON array, so that the whole document is never held in memory. An element that
+ * cannot be mapped to a coupon becomes an invalid row, malformed JSON stops the reading with an UncheckedIOException.
+ */
+
+class JsonCouponReader implements Iterator<ImportRow> {
+
+	private final ObjectMapper mapper;
+	private final JsonParser parser;
+	private JsonToken token;
+	private long rowNumber;
+
+	JsonCouponReader(ObjectMapper mapper, InputStream in) throws IOException {
+		this.mapper = mapper;
+		this.parser = mapper.getFactory().createParser(in);
+		if (parser.nextToken() != JsonToken.START_ARRAY)
+			throw new JsonParseException(parser, "Expected a JSON array of coupons");
+		token = parser.nextToken();
+	}
+
+	@Override
+	public boolean hasNext() {
+		return token != null && token != JsonToken.END_ARRAY;
+	}
+
+	@Override
+	public ImportRow next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		rowNumber++;
+		try {
+			JsonNode node = mapper.readTree(parser);
+			token = parser.nextToken();
+			try {
+				return ImportRow.of(rowNumber, mapper.treeToValue(node, Coupon.class));
+			} catch (JsonProcessingException e) {
+				return ImportRow.invalid(rowNumber, e.getOriginalMessage());
+			}
+		} catch (IOException e) {
+			token = null;
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -1,8 +1,7 @@
 package couponManagementSystem.web;
 
-import java.util.Map;
-import java.util.UUID;
-
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -11,13 +10,13 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import couponManagementSystem.exceptions.InvalidLoginExcepction;
-import couponManagementSystem.facades.ClientFacade;
+import couponManagementSystem.login.ClientPrincipal;
 import couponManagementSystem.login.ClientType;
 import couponManagementSystem.login.LoginManager;
 
 /**
- * The LoginController is RestController class to handle all login attempt by users. The controller works with the Login Manager to handle all sessions 
- * and facade allocations to users. When a valid login is given, the login method will generate and return a UUID to be used as an authentication token
+ * The LoginController is RestController class to handle all login attempt by users. The controller works with the Login Manager to check the credentials
+ * of users and open their sessions. When a valid login is given, the login method will generate and return a UUID to be used as an authentication token
  * and saved on the client side to be used when sending requests to the server. Company and customer users will receive their id concatenated to the
  * generated UUID, with a hash sign (#) as a separator to be parsed by the relevant user and stored on the client side.   
  *
@@ -25,20 +24,20 @@ import couponManagementSystem.login.LoginManager;
 @RestController
 public class LoginController {
 
+	private static final Logger log = LoggerFactory.getLogger(LoginController.class);
+
 	@Autowired
 	private LoginManager manager;
 	@Autowired
-	private Map<String, Session> sessionMap;
+	private SessionStore sessionStore;
 
 	@PostMapping("/login/{email}/{password}/{clientType}")
 	public ResponseEntity<?> login(@PathVariable String email, @PathVariable String password, 
 			@PathVariable ClientType clientType) {
 		try {
-			ClientFacade facade = manager.ClientLogin(email, password, clientType);
-			if (facade instanceof ClientFacade) {
-				String token = UUID.randomUUID().toString();
-				Session session = new Session(facade, System.currentTimeMillis());
-				sessionMap.put(token, session);
+			ClientPrincipal principal = manager.ClientLogin(email, password, clientType);
+			if (principal != null) {
+				String token = sessionStore.open(new Session(principal, System.currentTimeMillis()));
 				return ResponseEntity.ok(token);
 			}
 		} catch (InvalidLoginExcepction e) {
@@ -51,8 +50,8 @@ public class LoginController {
 	
 	@PostMapping("/logout/{token}")
 	public String logout (@PathVariable String token) {
-		sessionMap.remove(token);
-		System.out.println("logged out");
+		sessionStore.remove(token);
+		log.debug("Logged out");
 		return "Logged out...";
 	}
 		
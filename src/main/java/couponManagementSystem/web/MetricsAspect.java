@@ -0,0 +1,108 @@
+package couponManagementSystem.web;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import couponManagementSystem.db.QueryCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * AOP based metrics of the controllers, facades and repositories, published on /actuator/prometheus:
+ * <ul>
+ * <li>coupon.controller - a timer per controller method and response status. It runs before the authentication
+ * aspects of WebConfig, so rejected tokens are timed too.</li>
+ * <li>coupon.request.repository.calls and coupon.request.statements - the number of repository calls and Hibernate SQL
+ * statements of each controller call, to spot N+1 queries.</li>
+ * <li>coupon.facade and coupon.repository - a timer per facade and repository method.</li>
+ * </ul>
+ * The percentile histograms of the timers are enabled in application.properties.
+ */
+
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class MetricsAspect {
+
+	private final MeterRegistry registry;
+	private final Map<Method, Timer> facadeTimers = new ConcurrentHashMap<Method, Timer>();
+	private final Map<Class<?>, Map<Method, Timer>> repositoryTimers = new ConcurrentHashMap<Class<?>, Map<Method, Timer>>();
+
+	public MetricsAspect(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Around("execution(* couponManagementSystem.web.*Controller.*(..))")
+	public Object timeController(ProceedingJoinPoint point) throws Throwable {
+		String controller = point.getSignature().getDeclaringType().getSimpleName();
+		String method = point.getSignature().getName();
+		String status = "exception";
+		long start = System.nanoTime();
+		QueryCounter.start();
+		try {
+			Object result = point.proceed();
+			status = result instanceof ResponseEntity ? String.valueOf(((ResponseEntity<?>) result).getStatusCodeValue())
+					: "200";
+			return result;
+		} finally {
+			long duration = System.nanoTime() - start;
+			int[] counts = QueryCounter.stop();
+			registry.timer("coupon.controller", "controller", controller, "method", method, "status", status)
+					.record(duration, TimeUnit.NANOSECONDS);
+			registry.summary("coupon.request.repository.calls", "controller", controller, "method", method)
+					.record(counts[0]);
+			registry.summary("coupon.request.statements", "controller", controller, "method", method).record(counts[1]);
+		}
+	}
+
+	@Around("execution(public * couponManagementSystem.facades.*.*(..))")
+	public Object timeFacade(ProceedingJoinPoint point) throws Throwable {
+		Method method = ((MethodSignature) point.getSignature()).getMethod();
+		Timer timer = facadeTimers.computeIfAbsent(method, m -> Timer.builder("coupon.facade")
+				.tag("facade", point.getTarget().getClass().getSimpleName()).tag("method", m.getName())
+				.register(registry));
+		return record(timer, point);
+	}
+
+	/**
+	 * Repository methods are declared by the repository interfaces and by the Spring Data interfaces they extend
+	 * (findById, save...), the repository is told apart by the interface of its proxy.
+	 */
+	@Around("execution(* org.springframework.data.repository.Repository+.*(..))")
+	public Object timeRepository(ProceedingJoinPoint point) throws Throwable {
+		QueryCounter.repositoryCall();
+		Class<?> proxy = point.getThis().getClass();
+		Method method = ((MethodSignature) point.getSignature()).getMethod();
+		Timer timer = repositoryTimers.computeIfAbsent(proxy, p -> new ConcurrentHashMap<Method, Timer>())
+				.computeIfAbsent(method, m -> Timer.builder("coupon.repository").tag("repository", repositoryName(proxy))
+						.tag("method", m.getName()).register(registry));
+		return record(timer, point);
+	}
+
+	private static Object record(Timer timer, ProceedingJoinPoint point) throws Throwable {
+		long start = System.nanoTime();
+		try {
+			return point.proceed();
+		} finally {
+			timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private static String repositoryName(Class<?> proxy) {
+		for (Class<?> type : proxy.getInterfaces())
+			if (type.getName().startsWith("couponManagementSystem."))
+				return type.getSimpleName();
+		return proxy.getSimpleName();
+	}
+}
@@ -0,0 +1,48 @@
+package couponManagementSystem.web;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The NdjsonStreamer writes list responses as newline delimited JSON, one element per line, while the elements are
+ * read from the database. Nothing is collected in memory, so memory use stays constant regardless of table size.
+ * The source is called on the response writing thread, so facade methods used as a source open their own transaction.
+ */
+
+@Component
+public class NdjsonStreamer {
+
+	public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+	private ObjectMapper mapper;
+
+	public NdjsonStreamer(ObjectMapper mapper) {
+		this.mapper = mapper;
+	}
+
+	public <T> ResponseEntity<StreamingResponseBody> stream(Consumer<Consumer<T>> source) {
+		StreamingResponseBody body = out -> {
+			OutputStream buffered = new BufferedOutputStream(out, 16 * 1024);
+			source.accept(element -> {
+				try {
+					buffered.write(mapper.writeValueAsBytes(element));
+					buffered.write('\n');
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			buffered.flush();
+		};
+		return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
+	}
+}
@@ -0,0 +1,276 @@
+package couponManagementSystem.web;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import couponManagementSystem.db.CouponCatalogCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The PurchaseAdmission decides which purchase requests reach CustomerFacade.purchaseCoupon, so that a flash sale
+ * doesn't send every buyer to the database. Each coupon on sale keeps an estimate of its remaining stock: the amount of
+ * the catalog, less the purchases admitted here, 0 once a purchase found it sold out. It is reloaded after a change to
+ * that coupon in the catalog (a restock), see CouponCatalogCache.invalidate(couponId). While the estimate is 0, purchases are answered as sold out right away. At most
+ * admission.concurrency purchases of a coupon are processed at once, the others wait in a fair (first come, first
+ * served) queue of up to admission.waiting-room buyers for up to admission.wait ms, and are rejected when the queue is
+ * full or the wait is over. A buyer that gets its turn after the stock ran out is answered as sold out. Each customer
+ * may try admission.customer-rate purchases per second, in bursts of up to admission.customer-burst (a token bucket).
+ * admission.enabled=false admits all purchases.
+ */
+
+@Component
+public class PurchaseAdmission {
+
+	private static final Logger log = LoggerFactory.getLogger(PurchaseAdmission.class);
+
+	public enum Decision {
+		ADMITTED, SOLD_OUT, RATE_LIMITED, QUEUE_FULL, TIMED_OUT
+	}
+
+	private final CouponCatalogCache catalog;
+	private final boolean enabled;
+	private final int concurrency;
+	private final int waitingRoom;
+	private final long waitMillis;
+	private final double customerRate;
+	private final double customerBurst;
+
+	private final ConcurrentHashMap<Integer, Sale> sales = new ConcurrentHashMap<Integer, Sale>();
+	private final ConcurrentHashMap<Integer, Bucket> buckets = new ConcurrentHashMap<Integer, Bucket>();
+	private final Counter[] decisions = new Counter[Decision.values().length];
+
+	public PurchaseAdmission(CouponCatalogCache catalog, MeterRegistry registry,
+			@Value("${admission.enabled:true}") boolean enabled,
+			@Value("${admission.concurrency:4}") int concurrency,
+			@Value("${admission.waiting-room:100}") int waitingRoom,
+			@Value("${admission.wait:2000}") long waitMillis,
+			@Value("${admission.customer-rate:5}") double customerRate,
+			@Value("${admission.customer-burst:10}") double customerBurst) {
+		this.catalog = catalog;
+		this.enabled = enabled;
+		this.concurrency = Math.max(1, concurrency);
+		this.waitingRoom = waitingRoom;
+		this.waitMillis = waitMillis;
+		this.customerRate = customerRate;
+		this.customerBurst = Math.max(1, customerBurst);
+		for (Decision decision : Decision.values())
+			decisions[decision.ordinal()] = Counter.builder("coupon.admission")
+					.tag("decision", decision.name().toLowerCase().replace('_', '-')).register(registry);
+		catalog.addCouponListener(this::couponChanged);
+		Gauge.builder("coupon.admission.queued", sales, all -> all.values().stream().mapToInt(sale -> sale.waiting.get())
+				.sum()).register(registry);
+	}
+
+	/**
+	 * Admits a purchase of a coupon by a customer, waiting for its turn if the coupon is busy. The ticket must be
+	 * closed when the purchase is done. The coupon must exist, see CouponCatalogCache.getCoupon.
+	 */
+	public Ticket admit(int customerId, int couponId) {
+		if (!enabled)
+			return new Ticket(Decision.ADMITTED, null, false);
+		Sale sale = sale(couponId);
+		if (sale.remaining.get() <= 0)
+			return decide(Decision.SOLD_OUT, sale, false);
+		if (!buckets.computeIfAbsent(customerId, id -> new Bucket(customerBurst)).tryTake(customerRate, customerBurst))
+			return decide(Decision.RATE_LIMITED, sale, false);
+		try {
+			while (true) {
+				// a timed tryAcquire keeps the queue order of the fair semaphore, unlike tryAcquire()
+				if (!sale.slots.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+					if (sale.waiting.incrementAndGet() > waitingRoom) {
+						sale.waiting.decrementAndGet();
+						return decide(Decision.QUEUE_FULL, sale, false);
+					}
+					try {
+						if (!sale.slots.tryAcquire(waitMillis, TimeUnit.MILLISECONDS))
+							return decide(Decision.TIMED_OUT, sale, false);
+					} finally {
+						sale.waiting.decrementAndGet();
+					}
+				}
+				if (!sale.removed)
+					break;
+				// swept before the slot was taken, queue on the coupon's new sale
+				sale.slots.release();
+				sale = sale(couponId);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return decide(Decision.TIMED_OUT, sale, false);
+		}
+		if (sale.remaining.get() <= 0)
+			return decide(Decision.SOLD_OUT, sale, true);
+		return decide(Decision.ADMITTED, sale, true);
+	}
+
+	/**
+	 * Removes the token buckets of customers that didn't purchase lately and the sales that nobody is buying. A sale is
+	 * only removed while all its slots are free, see Sale.retire.
+	 */
+	@Scheduled(fixedDelayString = "${admission.sweep-interval:60000}")
+	public void sweep() {
+		long now = System.nanoTime();
+		buckets.values().removeIf(bucket -> bucket.isFull(now, customerRate, customerBurst));
+		for (Integer couponId : sales.keySet())
+			sales.computeIfPresent(couponId, (id, sale) -> sale.idle && sale.waiting.get() == 0
+					&& sale.retire(concurrency) ? null : sale);
+		for (Sale sale : sales.values())
+			sale.idle = true;
+		log.debug("{} coupons on sale, {} customers rate limited", sales.size(), buckets.size());
+	}
+
+	/**
+	 * @throws NoSuchElementException if there is no such coupon, before a sale is created for it.
+	 */
+	private Sale sale(int couponId) {
+		Sale sale = sales.get(couponId);
+		if (sale == null) {
+			catalog.getCoupon(couponId);
+			sale = sales.computeIfAbsent(couponId, id -> new Sale(concurrency));
+		}
+		sale.idle = false;
+		if (sale.stale) {
+			synchronized (sale) {
+				if (sale.stale) {
+					// cleared before the read, a change during the read marks it stale again
+					sale.stale = false;
+					try {
+						sale.remaining.set(catalog.getCoupon(couponId).getAmount());
+					} catch (RuntimeException e) {
+						sale.stale = true;
+						throw e;
+					}
+				}
+			}
+		}
+		return sale;
+	}
+
+	private void couponChanged(int couponId) {
+		Sale sale = sales.get(couponId);
+		if (sale != null)
+			sale.stale = true;
+	}
+
+	private Ticket decide(Decision decision, Sale sale, boolean holdsSlot) {
+		decisions[decision.ordinal()].increment();
+		if (decision == Decision.SOLD_OUT && holdsSlot) {
+			sale.slots.release();
+			holdsSlot = false;
+		}
+		return new Ticket(decision, sale, holdsSlot);
+	}
+
+	/**
+	 * The admission of one purchase. Report the outcome of an admitted purchase with purchased or soldOut, and close
+	 * the ticket to let the next buyer in.
+	 */
+	public static final class Ticket implements AutoCloseable {
+
+		private final Decision decision;
+		private final Sale sale;
+		private boolean holdsSlot;
+
+		private Ticket(Decision decision, Sale sale, boolean holdsSlot) {
+			this.decision = decision;
+			this.sale = sale;
+			this.holdsSlot = holdsSlot;
+		}
+
+		public Decision getDecision() {
+			return decision;
+		}
+
+		public boolean isAdmitted() {
+			return decision == Decision.ADMITTED;
+		}
+
+		public void purchased() {
+			if (sale != null)
+				sale.remaining.decrementAndGet();
+		}
+
+		public void soldOut() {
+			if (sale != null)
+				sale.remaining.set(0);
+		}
+
+		@Override
+		public void close() {
+			if (holdsSlot) {
+				holdsSlot = false;
+				sale.slots.release();
+			}
+		}
+	}
+
+	private static final class Sale {
+
+		private final Semaphore slots;
+		private final AtomicInteger remaining = new AtomicInteger();
+		private final AtomicInteger waiting = new AtomicInteger();
+		// remaining is loaded from the catalog on the next admission
+		private volatile boolean stale = true;
+		private volatile boolean idle;
+		private volatile boolean removed;
+
+		private Sale(int concurrency) {
+			this.slots = new Semaphore(concurrency, true);
+		}
+
+		/**
+		 * Marks the sale removed if none of its slots is taken. A buyer that takes a slot afterwards sees it removed
+		 * (the release happens before its acquire) and moves to a new sale, so the coupon never has more than
+		 * concurrency purchases running.
+		 */
+		private boolean retire(int concurrency) {
+			if (!slots.tryAcquire(concurrency))
+				return false;
+			removed = true;
+			slots.release(concurrency);
+			return true;
+		}
+	}
+
+	/**
+	 * A token bucket of a customer's purchases, refilled at rate tokens per second up to burst tokens.
+	 */
+	private static final class Bucket {
+
+		private double tokens;
+		private long refilledAt = System.nanoTime();
+
+		private Bucket(double burst) {
+			this.tokens = burst;
+		}
+
+		synchronized boolean tryTake(double rate, double burst) {
+			refill(System.nanoTime(), rate, burst);
+			if (tokens < 1)
+				return false;
+			tokens--;
+			return true;
+		}
+
+		synchronized boolean isFull(long now, double rate, double burst) {
+			refill(now, rate, burst);
+			return tokens >= burst;
+		}
+
+		private void refill(long now, double rate, double burst) {
+			tokens = Math.min(burst, tokens + (now - refilledAt) * rate / TimeUnit.SECONDS.toNanos(1));
+			refilledAt = now;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package couponManagementSystem.web;
+
+/**
+ * Holds the session that the authentication aspect in WebConfig resolved for the request being handled by the
+ * current thread, so that the controllers don't look the token up a second time.
+ */
+
+final class RequestSession {
+
+	private static final ThreadLocal<Session> CURRENT = new ThreadLocal<>();
+
+	private RequestSession() {
+	}
+
+	static Session get() {
+		return CURRENT.get();
+	}
+
+	static void set(Session session) {
+		CURRENT.set(session);
+	}
+
+	static void clear() {
+		CURRENT.remove();
+	}
+}
@@ -1,29 +1,35 @@
 package couponManagementSystem.web;
 
-import couponManagementSystem.facades.ClientFacade;
+import couponManagementSystem.login.ClientPrincipal;
+import couponManagementSystem.login.ClientType;
 
 /**
- * The session class is used to handle multiple login requests and to allocate multiple facades to users.
+ * The session class is used to handle multiple login requests. It holds the principal of the logged in client, the
+ * facades are shared by all sessions and take the client id from the principal.
  * The last login time variable is used by the system to limit login duration.
  *
  */
 
 public class Session {
 
-	private ClientFacade facade;
-	private long lastLoginTime;
+	private final ClientPrincipal principal;
+	private volatile long lastLoginTime;
 
-	public Session(ClientFacade facade, long lastLoginTime) {
-		this.facade = facade;
+	public Session(ClientPrincipal principal, long lastLoginTime) {
+		this.principal = principal;
 		this.lastLoginTime = lastLoginTime;
 	}
 
-	public ClientFacade getFacade() {
-		return facade;
+	public ClientPrincipal getPrincipal() {
+		return principal;
 	}
 
-	public void setFacade(ClientFacade facade) {
-		this.facade = facade;
+	public ClientType getClientType() {
+		return principal.getClientType();
+	}
+
+	public int getClientId() {
+		return principal.getClientId();
 	}
 
 	public long getLastLoginTime() {
@@ -0,0 +1,49 @@
+package couponManagementSystem.web;
+
+/**
+ * The SessionStore interface is used by the LoginController and the authentication aspects in WebConfig to register
+ * and find the sessions of logged in users by token. The implementation is selected with the session.store property:
+ * memory (default) keeps the sessions in this application instance (InMemorySessionStore), database keeps them in the
+ * database so that several instances behind a load balancer share the logins (DatabaseSessionStore), signed issues
+ * stateless tokens that carry the session themselves and are verified by signature (SignedTokenSessionStore).
+ */
+
+public interface SessionStore {
+
+	/**
+	 * Registers a new session and returns its generated token.
+	 */
+	String open(Session session);
+
+	/**
+	 * @return the session of the given token, or null if the token is unknown. The session may be expired, check with
+	 *         isExpired.
+	 */
+	Session get(String token);
+
+	boolean isExpired(Session session);
+
+	/**
+	 * Marks the session as used now, resetting its idle timeout.
+	 * @return the token the client should use from now on. This is the given token unless the store renewed it.
+	 */
+	String touch(String token, Session session);
+
+	/**
+	 * Removes a session, on logout or token mismatch.
+	 */
+	void remove(String token);
+
+	/**
+	 * Removes a session that was found expired by a request.
+	 */
+	void expire(String token);
+
+	long getIdleTimeout();
+
+	long getLiveSessions();
+
+	long getCreatedSessions();
+
+	long getExpiredSessions();
+}
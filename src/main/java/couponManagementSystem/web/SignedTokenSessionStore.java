@@ -0,0 +1,207 @@
+package couponManagementSystem.web;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import couponManagementSystem.login.ClientType;
+import couponManagementSystem.login.ClientPrincipal;
+
+/**
+ * The SignedTokenSessionStore (session.store=signed) keeps no sessions at all. The token itself carries the client
+ * type, client id, a session id and the expiry time, signed with HMAC-SHA256 using the session.signing-key secret
+ * (base 64). A request is authenticated by checking the signature and the expiry, which needs no lookup and no shared
+ * state, so any instance holding the same key accepts the token.
+ * Sessions slide: once less than half of the idle timeout is left, touch issues a renewed token with a new expiry that
+ * the aspect in WebConfig returns in the X-Renewed-Token response header. Renewed tokens keep the session id, so a
+ * logout revokes the session id and with it every token issued for that session. The revocation list is held by this
+ * instance and each entry is dropped once no token of that session can still be valid.
+ */
+
+@Component
+@ConditionalOnProperty(name = "session.store", havingValue = "signed")
+public class SignedTokenSessionStore implements SessionStore {
+
+	private static final Logger log = LoggerFactory.getLogger(SignedTokenSessionStore.class);
+
+	private static final String ALGORITHM = "HmacSHA256";
+	private static final int PAYLOAD_LENGTH = 1 + 4 + 8 + 8;
+
+	private final long idleTimeout;
+	private final SecretKeySpec key;
+	private final ThreadLocal<Mac> macs;
+	private final SecureRandom random = new SecureRandom();
+
+	private final ConcurrentHashMap<Long, Long> revokedSessions = new ConcurrentHashMap<Long, Long>();
+	private final LongAdder createdSessions = new LongAdder();
+	private final LongAdder expiredSessions = new LongAdder();
+
+	public SignedTokenSessionStore(@Value("${session.idle-timeout:1800000}") long idleTimeout,
+			@Value("${session.signing-key:}") String signingKey) {
+		this.idleTimeout = idleTimeout;
+		byte[] keyBytes;
+		if (signingKey.isEmpty()) {
+			keyBytes = new byte[32];
+			random.nextBytes(keyBytes);
+			log.warn("No session.signing-key configured, using a random key. Tokens will not survive a restart"
+					+ " and will not be accepted by other instances.");
+		} else {
+			keyBytes = Base64.getDecoder().decode(signingKey);
+		}
+		this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+		this.macs = ThreadLocal.withInitial(this::newMac);
+	}
+
+	@Override
+	public String open(Session session) {
+		createdSessions.increment();
+		return sign(session.getClientType(), session.getClientId(), random.nextLong(),
+				session.getLastLoginTime() + idleTimeout);
+	}
+
+	@Override
+	public Session get(String token) {
+		if (token == null)
+			return null;
+		int dot = token.indexOf('.');
+		if (dot < 0)
+			return null;
+		byte[] payload;
+		byte[] signature;
+		try {
+			payload = Base64.getUrlDecoder().decode(token.substring(0, dot));
+			signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		if (payload.length != PAYLOAD_LENGTH || !MessageDigest.isEqual(signature, mac(payload)))
+			return null;
+
+		ByteBuffer buffer = ByteBuffer.wrap(payload);
+		int clientTypeOrdinal = buffer.get();
+		int clientId = buffer.getInt();
+		long sessionId = buffer.getLong();
+		long expiresAt = buffer.getLong();
+		if (clientTypeOrdinal < 0 || clientTypeOrdinal >= ClientType.values().length
+				|| revokedSessions.containsKey(sessionId))
+			return null;
+		ClientType clientType = ClientType.values()[clientTypeOrdinal];
+		return new SignedSession(new ClientPrincipal(clientType, clientId), expiresAt - idleTimeout, sessionId);
+	}
+
+	@Override
+	public boolean isExpired(Session session) {
+		return System.currentTimeMillis() - session.getLastLoginTime() >= idleTimeout;
+	}
+
+	/**
+	 * Renews the token once less than half of the idle timeout is left. Otherwise the token is kept, so most requests
+	 * don't pay for signing a new one.
+	 */
+	@Override
+	public String touch(String token, Session session) {
+		long now = System.currentTimeMillis();
+		if (session.getLastLoginTime() + idleTimeout - now >= idleTimeout / 2)
+			return token;
+		session.setLastLoginTime(now);
+		return sign(session.getClientType(), session.getClientId(), ((SignedSession) session).sessionId,
+				now + idleTimeout);
+	}
+
+	@Override
+	public void remove(String token) {
+		Session session = get(token);
+		if (session != null)
+			revokedSessions.put(((SignedSession) session).sessionId, System.currentTimeMillis() + idleTimeout);
+	}
+
+	@Override
+	public void expire(String token) {
+		expiredSessions.increment();
+	}
+
+	/**
+	 * Drops revocations of sessions that have no valid token left.
+	 */
+	@Scheduled(fixedDelayString = "${session.sweep-interval:10000}")
+	public void sweep() {
+		long now = System.currentTimeMillis();
+		revokedSessions.values().removeIf(revokedUntil -> revokedUntil <= now);
+	}
+
+	@Override
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Signed sessions are not tracked, so the number of live sessions is unknown.
+	 * @return -1
+	 */
+	@Override
+	public long getLiveSessions() {
+		return -1;
+	}
+
+	@Override
+	public long getCreatedSessions() {
+		return createdSessions.sum();
+	}
+
+	@Override
+	public long getExpiredSessions() {
+		return expiredSessions.sum();
+	}
+
+	public int getRevokedSessions() {
+		return revokedSessions.size();
+	}
+
+	private String sign(ClientType clientType, int clientId, long sessionId, long expiresAt) {
+		byte[] payload = ByteBuffer.allocate(PAYLOAD_LENGTH).put((byte) clientType.ordinal()).putInt(clientId)
+				.putLong(sessionId).putLong(expiresAt).array();
+		Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+		return encoder.encodeToString(payload) + "." + encoder.encodeToString(mac(payload));
+	}
+
+	private byte[] mac(byte[] payload) {
+		return macs.get().doFinal(payload);
+	}
+
+	/**
+	 * Mac instances are not thread safe, every request thread gets its own.
+	 */
+	private Mac newMac() {
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(key);
+			return mac;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Cannot create the " + ALGORITHM + " token signer", e);
+		}
+	}
+
+	private static final class SignedSession extends Session {
+
+		private final long sessionId;
+
+		SignedSession(ClientPrincipal principal, long lastLoginTime, long sessionId) {
+			super(principal, lastLoginTime);
+			this.sessionId = sessionId;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package couponManagementSystem.web;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Opt-in execution of the requests on virtual threads (request.execution-mode=virtual): Tomcat runs every request on
+ * a new virtual thread instead of a thread of its worker pool (server.tomcat.max-threads), so requests waiting for the
+ * database don't hold a platform thread each. The requests processed at the same time are then bounded by the
+ * ConcurrencyLimitFilter, according to the size of the connection pool. Virtual threads need Java 21 or later, the
+ * application is built for Java 11 so the executor is created by reflection, and the startup fails on older runtimes.
+ */
+
+@Configuration
+@ConditionalOnProperty(name = "request.execution-mode", havingValue = "virtual")
+public class VirtualThreadConfig implements DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+	// not a bean, an Executor bean would replace the applicationTaskExecutor of the streamed responses
+	private final ExecutorService requestExecutor;
+
+	public VirtualThreadConfig() {
+		requestExecutor = newVirtualThreadPerTaskExecutor();
+		if (requestExecutor == null)
+			throw new IllegalStateException("request.execution-mode=virtual needs Java 21 or later, running on Java "
+					+ System.getProperty("java.version"));
+	}
+
+	@Bean
+	public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+		return protocolHandler -> {
+			protocolHandler.setExecutor(requestExecutor);
+			log.info("Requests run on virtual threads");
+		};
+	}
+
+	@Override
+	public void destroy() {
+		requestExecutor.shutdownNow();
+	}
+
+	/**
+	 * @return Executors.newVirtualThreadPerTaskExecutor() or null when the runtime has no virtual threads.
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+}
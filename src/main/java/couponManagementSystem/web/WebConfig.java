@@ -1,11 +1,9 @@
 package couponManagementSystem.web;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.web.server.ErrorPage;
 import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.boot.web.servlet.server.ConfigurableServletWebServerFactory;
@@ -16,9 +14,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
-import couponManagementSystem.facades.AdminFacade;
-import couponManagementSystem.facades.CompanyFacade;
-import couponManagementSystem.facades.CustomerFacade;
+import couponManagementSystem.login.ClientType;
 import springfox.documentation.builders.PathSelectors;
 import springfox.documentation.builders.RequestHandlerSelectors;
 import springfox.documentation.spi.DocumentationType;
@@ -26,18 +22,20 @@ import springfox.documentation.spring.web.plugins.Docket;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
 /**
- * This is web configuration class. The class defines two beans, one to hold the
- * singleton HashMap to register all active sessions, the relevant facade and
- * login time. and another bean to enable Swagger 2 User Interface. AOP based
+ * This is web configuration class. The class defines a bean to enable Swagger 2
+ * User Interface. All active sessions, the logged in client and login time are
+ * registered in the SessionStore. AOP based
  * methods wrap around all methods executed by the Administrator, Company and Customer
  * controllers. The purpose of these wrapper methods is to authenticate the
  * validity of the login of each request sent by users. The system is designed so
  * that the methods in the controllers have a token variable that in the 0
  * ordinal place. the ProceedingJoinPoint object takes that token and verifies
- * its validity using the session map. Login will time out after 30 minutes of
- * no requests. Invalid tokens will be removed from the session map. Once the
+ * its validity using the session store. Login will time out after
+ * session.idle-timeout (30 minutes by default) of no requests. Expired and
+ * mismatched tokens will be removed from the session store. Once the
  * validity of the token has been authenticated the JoinPoint continues to the
- * method in the relevant web controller.
+ * method in the relevant web controller, which gets the resolved session from
+ * currentSession() instead of looking the token up again.
  *
  */
 
@@ -64,39 +62,21 @@ public class WebConfig implements WebMvcConfigurer{
         };
     }
     
-    /**
-     * A single session map to hold all tokens and live user facades.
-     */
-	@Bean
-	public Map<String, Session> sessionMap() {
-		return new HashMap<String, Session>();
-	}
+	/**
+	 * Response header carrying a renewed token, see SessionStore.touch.
+	 */
+	public static final String RENEWED_TOKEN_HEADER = "X-Renewed-Token";
+
+	@Autowired
+	private SessionStore sessionStore;
 	
 	/**
 	 * User authentication method for Administrator facade. Will run before all method in the AdminController. 
 	 */
 	@Around("execution(* couponManagementSystem.web.AdminController.*(..))")
 	public ResponseEntity<?> adminAuthenticate(ProceedingJoinPoint point) throws Throwable {
-		String token = (String) point.getArgs()[0];
-		if (sessionMap().containsKey(token)) {
-			Session currentSession = sessionMap().get(token);
-			if (currentSession.getFacade() instanceof AdminFacade) {
-				if (System.currentTimeMillis() - currentSession.getLastLoginTime() < 1000 * 60 * 30) {
-					return (ResponseEntity<?>) point.proceed();
-				} else {
-					sessionMap().remove(token);
-					return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Login timeout...");
-				}
-			} else {
-				sessionMap().remove(token);
-				return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-						.body("Unauthorized login, token and facade mismatch...");
-			}
-		} else {
-			sessionMap().remove(token);
-			return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-					.body("Unauthorized login, token expired or is invalid...");
-		}
+		return authenticate(point, ClientType.Adminisrtator, "Unauthorized login, token and facade mismatch...",
+				"Unauthorized login, token expired or is invalid...");
 	}
 
 	/**
@@ -104,24 +84,8 @@ public class WebConfig implements WebMvcConfigurer{
 	 */
 	@Around("execution(* couponManagementSystem.web.CompanyController.*(..))")
 	public ResponseEntity<?> CompanyAuthenticate(ProceedingJoinPoint point) throws Throwable {
-		String token = (String) point.getArgs()[0];
-		if (sessionMap().containsKey(token)) {
-			Session currentSession = sessionMap().get(token);
-			if (currentSession.getFacade() instanceof CompanyFacade) {
-				if (System.currentTimeMillis() - currentSession.getLastLoginTime() < 1000 * 60 * 30) {
-					return (ResponseEntity<?>) point.proceed();
-				} else {
-					sessionMap().remove(token);
-					return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Login timeout...");
-				}
-			} else {
-				sessionMap().remove(token);
-				return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized login, token mismatch...");
-			}
-		} else {
-			sessionMap().remove(token);
-			return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized login, invalid token...");
-		}
+		return authenticate(point, ClientType.Company, "Unauthorized login, token mismatch...",
+				"Unauthorized login, invalid token...");
 	}
 
 	/**
@@ -129,25 +93,50 @@ public class WebConfig implements WebMvcConfigurer{
 	 */
 	@Around("execution(* couponManagementSystem.web.CustomerController.*(..))")
 	public ResponseEntity<?> CustomerAuthenticate(ProceedingJoinPoint point) throws Throwable {
+		return authenticate(point, ClientType.Customer, "Unauthorized login, token mismatch...",
+				"Unauthorized login, invalid token...");
+	}
+
+	/**
+	 * Verifies that the token in the 0 ordinal argument belongs to a live session of the given client type. Expired
+	 * sessions and sessions used with the wrong controller are removed from the session store.
+	 */
+	private ResponseEntity<?> authenticate(ProceedingJoinPoint point, ClientType clientType,
+			String mismatchMessage, String invalidMessage) throws Throwable {
 		String token = (String) point.getArgs()[0];
-		if (sessionMap().containsKey(token)) {
-			Session currentSession = sessionMap().get(token);
-			if (currentSession.getFacade() instanceof CustomerFacade) {
-				if (System.currentTimeMillis() - currentSession.getLastLoginTime() < 1000 * 60 * 30) {
-					return (ResponseEntity<?>) point.proceed();
+		Session currentSession = sessionStore.get(token);
+		if (currentSession != null) {
+			if (currentSession.getClientType() == clientType) {
+				if (!sessionStore.isExpired(currentSession)) {
+					String currentToken = sessionStore.touch(token, currentSession);
+					RequestSession.set(currentSession);
+					try {
+						ResponseEntity<?> response = (ResponseEntity<?>) point.proceed();
+						return currentToken.equals(token) ? response : renewed(response, currentToken);
+					} finally {
+						RequestSession.clear();
+					}
 				} else {
-					sessionMap().remove(token);
+					sessionStore.expire(token);
 					return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Login timeout...");
 				}
 			} else {
-				sessionMap().remove(token);
-				return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized login, token mismatch...");
+				sessionStore.remove(token);
+				return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(mismatchMessage);
 			}
 		} else {
-			sessionMap().remove(token);
-			return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized login, invalid token...");
+			return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(invalidMessage);
 		}
 	}
+
+	/**
+	 * Adds the renewed token of a sliding session to the response. The client should send it instead of the old
+	 * token from now on.
+	 */
+	private static ResponseEntity<?> renewed(ResponseEntity<?> response, String renewedToken) {
+		return ResponseEntity.status(response.getStatusCode()).headers(response.getHeaders())
+				.header(RENEWED_TOKEN_HEADER, renewedToken).body(response.getBody());
+	}
 	
 	/**
 	 * To enable Swagger 2
@@ -0,0 +1,105 @@
+package couponManagementSystem.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import couponManagementSystem.DataGenerator;
+import couponManagementSystem.DataGenerator.GeneratedData;
+import couponManagementSystem.beans.Coupon;
+import couponManagementSystem.exceptions.DoubleCouponPurchseException;
+import couponManagementSystem.exceptions.InsufficientAmountException;
+import couponManagementSystem.facades.CustomerFacade;
+
+/**
+ * Thousands of concurrent purchases of one coupon, every customer tries to buy it twice. Whatever the inventory.mode of
+ * the subclass, exactly the initial amount is sold, once per customer, and the amount never goes below 0. Runs against
+ * an in-memory H2 database in MySQL mode, one per inventory mode.
+ */
+
+@SpringBootTest(webEnvironment = WebEnvironment.NONE, properties = {
+		"spring.datasource.url=jdbc:h2:mem:purchase-${inventory.mode};MODE=MySQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=30000",
+		"spring.datasource.driver-class-name=org.h2.Driver", "spring.datasource.username=sa",
+		"spring.datasource.password=", "spring.jpa.hibernate.ddl-auto=create",
+		"coupon.expiration.initial-delay=86400000", "inventory.log.dir=target/test-inventory-log" })
+abstract class ConcurrentPurchaseTest {
+
+	private static final int CUSTOMERS = 4000;
+	private static final int INITIAL_AMOUNT = 1000;
+	private static final int THREADS = 32;
+
+	@Autowired
+	private DataGenerator dataGenerator;
+	@Autowired
+	private CustomerFacade customerFacade;
+	@Autowired
+	private CouponRepository coupRepo;
+	@Autowired
+	private Inventory inventory;
+	@Autowired
+	private JdbcTemplate jdbc;
+
+	@Test
+	void concurrentPurchasesSellTheInitialAmount() throws Exception {
+		GeneratedData data = dataGenerator.generate(1, CUSTOMERS, 1, 0, INITIAL_AMOUNT);
+		Coupon coupon = coupRepo.findById(data.getCouponIds().get(0)).get();
+
+		AtomicInteger purchased = new AtomicInteger();
+		AtomicInteger soldOut = new AtomicInteger();
+		AtomicInteger doubles = new AtomicInteger();
+		List<Callable<Void>> purchases = new ArrayList<Callable<Void>>(2 * CUSTOMERS);
+		for (int customerId : data.getCustomerIds())
+			for (int attempt = 0; attempt < 2; attempt++)
+				purchases.add(() -> {
+					try {
+						customerFacade.purchaseCoupon(customerId, coupon);
+						purchased.incrementAndGet();
+					} catch (InsufficientAmountException e) {
+						soldOut.incrementAndGet();
+					} catch (DoubleCouponPurchseException e) {
+						doubles.incrementAndGet();
+					}
+					return null;
+				});
+		Collections.shuffle(purchases, new Random(42));
+
+		ExecutorService buyers = Executors.newFixedThreadPool(THREADS);
+		try {
+			for (Future<Void> purchase : buyers.invokeAll(purchases))
+				purchase.get();
+		} finally {
+			buyers.shutdown();
+		}
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (inventory.getPendingPurchases() > 0 && System.nanoTime() < deadline)
+			Thread.sleep(10);
+
+		assertEquals(INITIAL_AMOUNT, purchased.get());
+		assertEquals(2 * CUSTOMERS, purchased.get() + soldOut.get() + doubles.get());
+		assertEquals(0, inventory.getPendingPurchases());
+		int amount = coupRepo.findAmountById(coupon.getId());
+		assertTrue(amount >= 0, "amount " + amount);
+		assertEquals(0, amount);
+		assertEquals(INITIAL_AMOUNT, (int) jdbc.queryForObject(
+				"select count(*) from customers_vs_coupons where coupons_id = ?", Integer.class, coupon.getId()));
+		assertEquals(INITIAL_AMOUNT, (int) jdbc.queryForObject(
+				"select count(distinct customer_id) from customers_vs_coupons where coupons_id = ?", Integer.class,
+				coupon.getId()));
+	}
+}
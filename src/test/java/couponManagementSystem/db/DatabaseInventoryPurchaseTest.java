@@ -0,0 +1,11 @@
+package couponManagementSystem.db;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Concurrent purchases with the DatabaseInventory (inventory.mode=database).
+ */
+
+@TestPropertySource(properties = "inventory.mode=database")
+class DatabaseInventoryPurchaseTest extends ConcurrentPurchaseTest {
+}
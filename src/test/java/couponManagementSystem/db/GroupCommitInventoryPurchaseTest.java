@@ -0,0 +1,11 @@
+package couponManagementSystem.db;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Concurrent purchases with the GroupCommitInventory (inventory.mode=batch).
+ */
+
+@TestPropertySource(properties = "inventory.mode=batch")
+class GroupCommitInventoryPurchaseTest extends ConcurrentPurchaseTest {
+}
@@ -0,0 +1,11 @@
+package couponManagementSystem.db;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Concurrent purchases with the WriteBehindInventory (inventory.mode=memory).
+ */
+
+@TestPropertySource(properties = "inventory.mode=memory")
+class WriteBehindInventoryPurchaseTest extends ConcurrentPurchaseTest {
+}
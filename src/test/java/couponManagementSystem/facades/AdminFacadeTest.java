@@ -0,0 +1,70 @@
+package couponManagementSystem.facades;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+
+import couponManagementSystem.beans.Company;
+import couponManagementSystem.beans.Customer;
+import couponManagementSystem.exceptions.InvalidLoginExcepction;
+
+/**
+ * Updates of companies and customers as a client sends them back from the lists, which don't return the passwords: a
+ * missing password keeps the stored one, a new password replaces it. Runs against an in-memory H2 database in MySQL
+ * mode.
+ */
+
+@SpringBootTest(webEnvironment = WebEnvironment.NONE, properties = {
+		"spring.datasource.url=jdbc:h2:mem:admin-facade;MODE=MySQL;DB_CLOSE_DELAY=-1",
+		"spring.datasource.driver-class-name=org.h2.Driver", "spring.datasource.username=sa",
+		"spring.datasource.password=", "spring.jpa.hibernate.ddl-auto=create",
+		"coupon.expiration.initial-delay=86400000", "password.hash.iterations=1000" })
+class AdminFacadeTest {
+
+	@Autowired
+	private AdminFacade adminFacade;
+	@Autowired
+	private CompanyFacade companyFacade;
+	@Autowired
+	private CustomerFacade customerFacade;
+
+	@Test
+	void updateCompanyWithoutPasswordKeepsThePassword() throws Exception {
+		Company company = adminFacade.addCompany(new Company("keep", "keep@company.com", "secret"));
+
+		company.setEmail("kept@company.com");
+		company.setPassword(null);
+		adminFacade.updateCompany(company);
+		assertEquals(company.getId(), companyFacade.login("kept@company.com", "secret"));
+		company.setPassword(" ");
+		adminFacade.updateCompany(company);
+		assertEquals(company.getId(), companyFacade.login("kept@company.com", "secret"));
+
+		company.setPassword("changed");
+		adminFacade.updateCompany(company);
+		assertEquals(company.getId(), companyFacade.login("kept@company.com", "changed"));
+		assertThrows(InvalidLoginExcepction.class, () -> companyFacade.login("kept@company.com", "secret"));
+	}
+
+	@Test
+	void updateCustomerWithoutPasswordKeepsThePassword() throws Exception {
+		Customer customer = adminFacade.addCustomer(new Customer("keep", "me", "keep@customer.com", "secret"));
+
+		customer.setFirstName("kept");
+		customer.setPassword(null);
+		adminFacade.updateCustomer(customer);
+		assertEquals(customer.getId(), customerFacade.login("keep@customer.com", "secret"));
+		customer.setPassword("");
+		adminFacade.updateCustomer(customer);
+		assertEquals(customer.getId(), customerFacade.login("keep@customer.com", "secret"));
+
+		customer.setPassword("changed");
+		adminFacade.updateCustomer(customer);
+		assertEquals(customer.getId(), customerFacade.login("keep@customer.com", "changed"));
+		assertThrows(InvalidLoginExcepction.class, () -> customerFacade.login("keep@customer.com", "secret"));
+	}
+}
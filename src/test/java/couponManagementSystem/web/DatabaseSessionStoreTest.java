@@ -0,0 +1,120 @@
+package couponManagementSystem.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+
+import couponManagementSystem.db.SessionRecordRepository;
+import couponManagementSystem.login.ClientPrincipal;
+import couponManagementSystem.login.ClientType;
+
+/**
+ * Two DatabaseSessionStore instances on one datasource, as two application instances behind a load balancer: a login
+ * on one is valid on the other, a logout is seen by the other within the near-cache ttl, the last access time is
+ * written at most once per touch interval and the sweep deletes the idle sessions of all instances. Runs against an
+ * in-memory H2 database in MySQL mode.
+ */
+
+@SpringBootTest(webEnvironment = WebEnvironment.NONE, properties = {
+		"spring.datasource.url=jdbc:h2:mem:sessions;MODE=MySQL;DB_CLOSE_DELAY=-1",
+		"spring.datasource.driver-class-name=org.h2.Driver", "spring.datasource.username=sa",
+		"spring.datasource.password=", "spring.jpa.hibernate.ddl-auto=create",
+		"coupon.expiration.initial-delay=86400000" })
+class DatabaseSessionStoreTest {
+
+	private static final long IDLE_TIMEOUT = 60000;
+	private static final long TOUCH_INTERVAL = 1000;
+	private static final long NEAR_CACHE_TTL = 1000;
+
+	@Autowired
+	private SessionRecordRepository sessionRepo;
+
+	private DatabaseSessionStore first;
+	private DatabaseSessionStore second;
+
+	@BeforeEach
+	void stores() {
+		first = new DatabaseSessionStore(sessionRepo, IDLE_TIMEOUT, TOUCH_INTERVAL, NEAR_CACHE_TTL, 100);
+		second = new DatabaseSessionStore(sessionRepo, IDLE_TIMEOUT, TOUCH_INTERVAL, NEAR_CACHE_TTL, 100);
+	}
+
+	@Test
+	void sessionOpenedOnOneInstanceResolvesOnTheOther() {
+		String token = first.open(session(7, System.currentTimeMillis()));
+
+		Session session = second.get(token);
+		assertNotNull(session);
+		assertEquals(ClientType.Customer, session.getClientType());
+		assertEquals(7, session.getClientId());
+		assertFalse(second.isExpired(session));
+		assertNull(second.get("unknown"));
+	}
+
+	@Test
+	void logoutIsSeenByTheOtherInstanceAfterTheNearCacheTtl() throws InterruptedException {
+		String token = first.open(session(8, System.currentTimeMillis()));
+		assertNotNull(second.get(token));
+
+		first.remove(token);
+		assertNull(first.get(token));
+		// still cached by the other instance
+		assertNotNull(second.get(token));
+		Thread.sleep(NEAR_CACHE_TTL + 100);
+		assertNull(second.get(token));
+	}
+
+	@Test
+	void touchWritesAtMostOncePerTouchInterval() throws InterruptedException {
+		long loggedIn = System.currentTimeMillis();
+		String token = first.open(session(9, loggedIn));
+		Session session = second.get(token);
+
+		Thread.sleep(10);
+		second.touch(token, session);
+		assertEquals(loggedIn, lastAccessTime(token));
+		assertTrue(session.getLastLoginTime() > loggedIn);
+
+		Thread.sleep(TOUCH_INTERVAL);
+		second.touch(token, session);
+		long touched = lastAccessTime(token);
+		assertTrue(touched > loggedIn);
+
+		Thread.sleep(10);
+		second.touch(token, session);
+		assertEquals(touched, lastAccessTime(token));
+	}
+
+	@Test
+	void sweepDeletesTheIdleSessionsOfAllInstances() {
+		long now = System.currentTimeMillis();
+		String idle = first.open(session(10, now - IDLE_TIMEOUT - 1));
+		String otherIdle = second.open(session(11, now - IDLE_TIMEOUT - 1000));
+		String live = second.open(session(12, now));
+
+		long expired = first.getExpiredSessions();
+		first.sweep();
+
+		assertEquals(expired + 2, first.getExpiredSessions());
+		assertFalse(sessionRepo.existsById(idle));
+		assertFalse(sessionRepo.existsById(otherIdle));
+		assertTrue(sessionRepo.existsById(live));
+		assertNull(first.get(idle));
+		assertNotNull(second.get(live));
+	}
+
+	private long lastAccessTime(String token) {
+		return sessionRepo.findById(token).get().getLastAccessTime();
+	}
+
+	private static Session session(int customerId, long lastLoginTime) {
+		return new Session(new ClientPrincipal(ClientType.Customer, customerId), lastLoginTime);
+	}
+}